@@ -0,0 +1,44 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx;
+
+import eu.ill.webx.relay.WebXClient;
+import eu.ill.webx.relay.WebXHost;
+
+/**
+ * Builds tunnels for relay objects that are not connected to a WebX Router (see RelayFixtures) so that the benchmarks can read and write
+ * through the public API of the relay.
+ */
+public class TunnelFixtures {
+
+    /**
+     * Private constructor: static helpers only
+     */
+    private TunnelFixtures() {
+    }
+
+    /**
+     * Creates a tunnel for a client that has already been created
+     * @param host the host of the client
+     * @param client the client
+     * @return the tunnel
+     */
+    public static WebXTunnel newTunnel(final WebXHost host, final WebXClient client) {
+        return new WebXTunnel(host, client);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.model;
+
+import eu.ill.webx.relay.RelayFixtures;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the creation of a Message from raw message data (header parsing) and the priority comparison of messages used by the client queues.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageBenchmark {
+
+    @Param({"6", "7", "4"})
+    private int type;
+
+    private byte[] messageData;
+    private Message first;
+    private Message second;
+
+    /**
+     * Creates the message data and the messages to compare
+     */
+    @Setup
+    public void setup() {
+        final SessionId sessionId = RelayFixtures.randomSessionId(new Random(1));
+        this.messageData = RelayFixtures.messageData(sessionId, 1, this.type, 1, 1024);
+        this.first = new Message(RelayFixtures.messageData(sessionId, 1, this.type, 1, 1024));
+        this.second = new Message(RelayFixtures.messageData(sessionId, 1, 4, 2, 1024));
+    }
+
+    /**
+     * Creates a message from raw message data
+     * @return the message
+     */
+    @Benchmark
+    public Message construct() {
+        return new Message(this.messageData);
+    }
+
+    /**
+     * Compares the priorities of two messages
+     * @param blackhole the blackhole consuming the results
+     */
+    @Benchmark
+    public void compareTo(final Blackhole blackhole) {
+        blackhole.consume(this.first.compareTo(this.second));
+        blackhole.consume(this.second.compareTo(this.first));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.model;
+
+import eu.ill.webx.relay.RelayFixtures;
+import eu.ill.webx.utils.HexString;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the parsing of session Ids: from the header of a message (done for every message received) and from the hex string
+ * representation (done for every client connection to an existing session), and the hex conversions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SessionIdBenchmark {
+
+    private byte[] messageData;
+    private String hexString;
+    private byte[] sessionIdBytes;
+    private SessionId sessionId;
+
+    /**
+     * Creates the session Id data
+     */
+    @Setup
+    public void setup() {
+        final SessionId sessionId = RelayFixtures.randomSessionId(new Random(1));
+        this.messageData = RelayFixtures.messageData(sessionId, 1, 4, 1, 1024);
+        this.sessionIdBytes = sessionId.bytes();
+        this.hexString = HexString.fromByteArray(this.sessionIdBytes);
+        this.sessionId = new SessionId(this.hexString);
+    }
+
+    /**
+     * Creates a session Id from the header of a message
+     * @return the session Id
+     */
+    @Benchmark
+    public SessionId fromMessageData() {
+        return new SessionId(this.messageData);
+    }
+
+    /**
+     * Creates a session Id from its hex string representation
+     * @return the session Id
+     */
+    @Benchmark
+    public SessionId fromHexString() {
+        return new SessionId(this.hexString);
+    }
+
+    /**
+     * Compares a session Id created from a message header with a known session Id (the session lookup of the host)
+     * @return true if equal
+     */
+    @Benchmark
+    public boolean equalsFromMessageData() {
+        return this.sessionId.equals(new SessionId(this.messageData));
+    }
+
+    /**
+     * Converts a hex string to bytes
+     * @return the bytes
+     */
+    @Benchmark
+    public byte[] hexToBytes() {
+        return HexString.toByteArray(this.hexString, 16);
+    }
+
+    /**
+     * Converts bytes to a hex string
+     * @return the hex string
+     */
+    @Benchmark
+    public String bytesToHex() {
+        return HexString.fromByteArray(this.sessionIdBytes);
+    }
+}
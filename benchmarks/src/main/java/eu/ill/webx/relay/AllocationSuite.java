@@ -0,0 +1,180 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.relay;
+
+import eu.ill.webx.TunnelFixtures;
+import eu.ill.webx.WebXTunnel;
+import eu.ill.webx.model.SessionId;
+import eu.ill.webx.simulator.SuiteOptions;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Allocation regression suite for the message path: in-memory frames are passed to WebXHost.onMessages, routed to the sessions, fanned out
+ * to the clients and read from the tunnels with WebXTunnel.read, all from a single thread. The bytes allocated by the thread (measured with the
+ * thread allocation counter of the JVM) are divided by the number of messages read. Each scenario has a budget of bytes per message: the
+ * suite exits with status 1 if a scenario exceeds its budget so that it can fail a build when allocation on the hot path regresses.
+ * Options (name=value):
+ *  - messages: number of messages read in each scenario, after the same number read as a warmup (default 500000)
+ *  - scale: factor applied to the budgets (default 1.0)
+ */
+public class AllocationSuite {
+
+    private static final int MESSAGE_SIZE = 1024;
+
+    /**
+     * A scenario of the suite
+     * @param name the name of the scenario
+     * @param sessionCount the number of sessions of the host
+     * @param clientsPerSession the number of clients of each session
+     * @param batchSize the number of frames passed in each call to the host
+     * @param budget the maximum number of bytes allocated for each message read
+     */
+    private record Scenario(String name, int sessionCount, int clientsPerSession, int batchSize, int budget) {
+    }
+
+    private static final List<Scenario> SCENARIOS = List.of(
+        new Scenario("single", 1, 1, 1, 450),
+        new Scenario("batch", 1, 1, 32, 200),
+        new Scenario("fan-out", 1, 8, 32, 40),
+        new Scenario("routing", 100, 1, 32, 640)
+    );
+
+    private final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Main method of the suite
+     * @param args the options (name=value)
+     * @throws Exception thrown if the suite fails
+     */
+    public static void main(String[] args) throws Exception {
+        final SuiteOptions options = new SuiteOptions(args);
+        final boolean passed = new AllocationSuite().run(options);
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Default constructor
+     */
+    public AllocationSuite() {
+    }
+
+    /**
+     * Runs all the scenarios of the suite
+     * @param options the options of the suite
+     * @return true if all scenarios are within their budget
+     * @throws Exception thrown if a scenario fails
+     */
+    public boolean run(final SuiteOptions options) throws Exception {
+        if (!this.threadBean.isThreadAllocatedMemorySupported()) {
+            throw new IllegalStateException("Thread allocation counters are not supported by this JVM");
+        }
+        this.threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        final int messageCount = options.getInt("messages", 500000);
+        final double scale = options.getDouble("scale", 1.0);
+
+        boolean passed = true;
+        for (Scenario scenario : SCENARIOS) {
+            final double bytesPerMessage = this.measure(scenario, messageCount);
+            final double budget = scenario.budget() * scale;
+            final boolean scenarioPassed = bytesPerMessage <= budget;
+            System.out.printf("%-10s %4d sessions, %2d clients, batch %2d: %7.1f bytes/message (budget %.0f) %s%n",
+                scenario.name(), scenario.sessionCount(), scenario.clientsPerSession(), scenario.batchSize(), bytesPerMessage, budget, scenarioPassed ? "OK" : "FAILED");
+            passed &= scenarioPassed;
+        }
+        return passed;
+    }
+
+    /**
+     * Measures the bytes allocated for each message read in a scenario
+     * @param scenario the scenario
+     * @param messageCount the number of messages to read for the warmup and for the measurement
+     * @return the bytes allocated for each message read
+     * @throws Exception thrown if a tunnel fails
+     */
+    private double measure(final Scenario scenario, int messageCount) throws Exception {
+        final Random random = new Random(1);
+        final WebXHost host = RelayFixtures.newHost();
+        final List<WebXClient> clients = new ArrayList<>();
+        final List<WebXTunnel> tunnels = new ArrayList<>();
+        final List<byte[]> frames = new ArrayList<>();
+        final long clientIndexMask = scenario.clientsPerSession() == 64 ? -1L : (1L << scenario.clientsPerSession()) - 1;
+        for (int i = 0; i < scenario.sessionCount(); i++) {
+            final SessionId sessionId = RelayFixtures.randomSessionId(random);
+            final WebXSession session = RelayFixtures.addSession(host, sessionId, scenario.clientsPerSession());
+            for (WebXClient client : session.getClients()) {
+                clients.add(client);
+                tunnels.add(TunnelFixtures.newTunnel(host, client));
+            }
+            frames.add(RelayFixtures.messageData(sessionId, clientIndexMask, 4, 0, MESSAGE_SIZE));
+        }
+
+        // Each batch holds frames of consecutive sessions so that all sessions receive frames
+        final List<List<byte[]>> batches = new ArrayList<>();
+        final int batchCount = (frames.size() + scenario.batchSize() - 1) / scenario.batchSize();
+        for (int i = 0; i < batchCount; i++) {
+            final List<byte[]> batch = new ArrayList<>(scenario.batchSize());
+            for (int j = 0; j < scenario.batchSize(); j++) {
+                batch.add(frames.get((i * scenario.batchSize() + j) % frames.size()));
+            }
+            batches.add(batch);
+        }
+
+        this.route(host, clients, tunnels, batches, messageCount);
+
+        final long threadId = Thread.currentThread().getId();
+        final long allocatedBytes = this.threadBean.getThreadAllocatedBytes(threadId);
+        final long messagesRead = this.route(host, clients, tunnels, batches, messageCount);
+        final long measuredBytes = this.threadBean.getThreadAllocatedBytes(threadId) - allocatedBytes;
+
+        return (double) measuredBytes / messagesRead;
+    }
+
+    /**
+     * Passes batches of frames to the host and reads all the messages queued in the tunnels until the given number of messages has been read
+     * @param host the host
+     * @param clients all the clients of the host
+     * @param tunnels the tunnels of the clients
+     * @param batches the batches of frames
+     * @param messageCount the minimum number of messages to read
+     * @return the number of messages read
+     * @throws Exception thrown if a tunnel fails
+     */
+    private long route(final WebXHost host, final List<WebXClient> clients, final List<WebXTunnel> tunnels, final List<List<byte[]>> batches, int messageCount) throws Exception {
+        long messagesRead = 0;
+        int batchIndex = 0;
+        while (messagesRead < messageCount) {
+            host.onMessages(batches.get(batchIndex));
+            batchIndex = (batchIndex + 1) % batches.size();
+
+            for (int i = 0; i < tunnels.size(); i++) {
+                final WebXClient client = clients.get(i);
+                final WebXTunnel tunnel = tunnels.get(i);
+                while (client.getQueueDepth() > 0) {
+                    tunnel.read();
+                    messagesRead++;
+                }
+            }
+        }
+        return messagesRead;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.relay;
+
+import eu.ill.webx.model.Message;
+import eu.ill.webx.model.SessionId;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the message queue of a client under contention: a producer thread (the message subscriber) queues messages while a consumer
+ * thread (the client application) reads them. The producer backs off when the queue exceeds a maximum depth and the consumer only reads
+ * when a message is available so that neither thread can block at the end of an iteration.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class ClientQueueBenchmark {
+
+    private static final int MAX_QUEUE_DEPTH = 1024;
+
+    private WebXClient client;
+    private byte[] messageData;
+
+    /**
+     * Creates the client and the message data
+     */
+    @Setup
+    public void setup() {
+        final SessionId sessionId = RelayFixtures.randomSessionId(new Random(1));
+        final WebXSession session = RelayFixtures.newSession(sessionId);
+        this.client = RelayFixtures.addClient(session, 0);
+        this.messageData = RelayFixtures.messageData(sessionId, 1, 4, 0, 1024);
+    }
+
+    /**
+     * Queues a message in the client queue
+     * @return true if the message has been queued
+     */
+    @Benchmark
+    @Group("queue")
+    @GroupThreads(1)
+    public boolean enqueue() {
+        if (this.client.getQueueDepth() < MAX_QUEUE_DEPTH) {
+            this.client.onMessage(new Message(this.messageData));
+            return true;
+        }
+        Thread.onSpinWait();
+        return false;
+    }
+
+    /**
+     * Reads a message from the client queue
+     * @param blackhole the blackhole consuming the messages
+     * @throws Exception if the client fails
+     */
+    @Benchmark
+    @Group("queue")
+    @GroupThreads(1)
+    public void dequeue(final Blackhole blackhole) throws Exception {
+        if (this.client.getQueueDepth() > 0) {
+            blackhole.consume(this.client.getMessage());
+
+        } else {
+            Thread.onSpinWait();
+        }
+    }
+}
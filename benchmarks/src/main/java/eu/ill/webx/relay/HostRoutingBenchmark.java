@@ -0,0 +1,79 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.relay;
+
+import eu.ill.webx.model.SessionId;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the routing of a batch of messages from the message subscriber to the sessions of a host (WebXHost.onMessages) with
+ * an increasing number of sessions. The messages are spread randomly over the sessions and have an empty client index mask so that
+ * the cost of the routing and of the session message handling is measured without the growth of the client queues.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HostRoutingBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    private int sessionCount;
+
+    @Param({"1", "64"})
+    private int batchSize;
+
+    private WebXHost host;
+    private List<byte[]> batch;
+
+    /**
+     * Creates the host, its sessions (with one client each) and the batch of messages
+     */
+    @Setup
+    public void setup() {
+        final Random random = new Random(1);
+        this.host = RelayFixtures.newHost();
+
+        final List<SessionId> sessionIds = new ArrayList<>();
+        for (int i = 0; i < this.sessionCount; i++) {
+            final SessionId sessionId = RelayFixtures.randomSessionId(random);
+            RelayFixtures.addSession(this.host, sessionId, 1);
+            sessionIds.add(sessionId);
+        }
+
+        this.batch = new ArrayList<>();
+        for (int i = 0; i < this.batchSize; i++) {
+            final SessionId sessionId = sessionIds.get(random.nextInt(sessionIds.size()));
+            this.batch.add(RelayFixtures.messageData(sessionId, 0, 4, 0, 1024));
+        }
+    }
+
+    /**
+     * Routes the batch of messages to the sessions
+     */
+    @Benchmark
+    public void route() {
+        this.host.onMessages(this.batch);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.relay;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the sending of a client instruction (WebXClient.sendInstruction): the instruction is stamped with the session Id and client Id
+ * prefix and passed to the transport. The transport is not connected so the instruction is not queued for publication.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InstructionBenchmark {
+
+    @Param({"32", "1024"})
+    private int size;
+
+    private WebXClient client;
+    private byte[] instructionData;
+
+    /**
+     * Creates the client and the instruction data
+     */
+    @Setup
+    public void setup() {
+        final WebXSession session = RelayFixtures.newSession(RelayFixtures.randomSessionId(new Random(1)));
+        this.client = RelayFixtures.addClient(session, 0);
+        this.instructionData = RelayFixtures.instructionData(this.size);
+    }
+
+    /**
+     * Stamps and sends an instruction
+     */
+    @Benchmark
+    public void sendInstruction() {
+        this.client.sendInstruction(this.instructionData);
+    }
+}
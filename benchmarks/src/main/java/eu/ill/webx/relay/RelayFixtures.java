@@ -0,0 +1,149 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.relay;
+
+import eu.ill.webx.WebXHostConfiguration;
+import eu.ill.webx.model.ClientIdentifier;
+import eu.ill.webx.model.SessionCreation;
+import eu.ill.webx.model.SessionId;
+import eu.ill.webx.transport.Transport;
+import eu.ill.webx.watchdog.StallWatchdog;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+
+/**
+ * Builds relay objects (hosts, sessions and clients) that are not connected to a WebX Router, and message data with valid headers, for the
+ * benchmarks. Sessions are created in the STARTING state so that clients are created without any request to a router: clients are then
+ * given an identifier directly.
+ */
+public class RelayFixtures {
+
+    /**
+     * The client version given to the clients created by the fixtures
+     */
+    public static final String CLIENT_VERSION = "1.8.6";
+
+    private static final StallWatchdog NO_WATCHDOG = new StallWatchdog("benchmark", 0, Thread::new, null);
+
+    /**
+     * Private constructor: static helpers only
+     */
+    private RelayFixtures() {
+    }
+
+    /**
+     * Returns a host configuration that doesn't require any connection
+     * @return the host configuration
+     */
+    public static WebXHostConfiguration hostConfiguration() {
+        return new WebXHostConfiguration("localhost", 5555).withStallThresholdMs(0);
+    }
+
+    /**
+     * Creates a host that is not connected
+     * @return the host
+     */
+    public static WebXHost newHost() {
+        return new WebXHost(hostConfiguration());
+    }
+
+    /**
+     * Creates a session that is not connected: the session validator is not started
+     * @param sessionId the session Id
+     * @return the session
+     */
+    public static WebXSession newSession(final SessionId sessionId) {
+        return new WebXSession(new SessionCreation(sessionId, SessionCreation.CreationStatus.STARTING), new Transport(), null, null, null, NO_WATCHDOG, hostConfiguration());
+    }
+
+    /**
+     * Creates a session, adds it to a host and creates clients in the session with the client indexes 1, 2, 4, ...
+     * @param host the host
+     * @param sessionId the session Id
+     * @param clientCount the number of clients to create (at most 64)
+     * @return the session
+     */
+    public static WebXSession addSession(final WebXHost host, final SessionId sessionId, int clientCount) {
+        final WebXSession session = newSession(sessionId);
+        for (int i = 0; i < clientCount; i++) {
+            addClient(session, i);
+        }
+        host.addSession(session);
+        return session;
+    }
+
+    /**
+     * Creates a client in a session with the given index (the client index mask bit)
+     * @param session the session
+     * @param index the index of the client, between 0 and 63
+     * @return the client
+     */
+    public static WebXClient addClient(final WebXSession session, int index) {
+        try {
+            final WebXClient client = session.createClient(CLIENT_VERSION);
+            client.setClientIdentifier(new ClientIdentifier(1L << index, index + 1));
+            return client;
+
+        } catch (Exception exception) {
+            throw new IllegalStateException("Failed to create client", exception);
+        }
+    }
+
+    /**
+     * Creates a random session Id
+     * @param random the random generator
+     * @return the session Id
+     */
+    public static SessionId randomSessionId(final Random random) {
+        final byte[] sessionId = new byte[16];
+        random.nextBytes(sessionId);
+        return new SessionId(sessionId);
+    }
+
+    /**
+     * Creates the raw data of a message from a WebX Engine
+     * @param sessionId the session Id
+     * @param clientIndexMask the client index mask (a bit for each client the message is destined to)
+     * @param type the message type Id
+     * @param sequence the sequence number of the message (0 for none)
+     * @param size the total size of the message (at least the header length)
+     * @return the message data
+     */
+    public static byte[] messageData(final SessionId sessionId, long clientIndexMask, int type, int sequence, int size) {
+        final byte[] data = new byte[Math.max(48, size)];
+        final ByteBuffer buffer = ByteBuffer.wrap(data).order(LITTLE_ENDIAN);
+        buffer.put(0, sessionId.bytes(), 0, 16);
+        buffer.putLong(16, clientIndexMask);
+        buffer.putLong(24, System.currentTimeMillis());
+        buffer.putInt(32, type);
+        buffer.putInt(44, sequence);
+        return data;
+    }
+
+    /**
+     * Creates the raw data of a client instruction (the session Id and client Id are stamped by the client)
+     * @param size the size of the instruction (at least the instruction header length)
+     * @return the instruction data
+     */
+    public static byte[] instructionData(int size) {
+        return new byte[Math.max(32, size)];
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.relay;
+
+import eu.ill.webx.model.SessionId;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the fan-out of a batch of messages by a session (WebXSession.onMessages) to an increasing number of clients. Every message
+ * is destined to all clients. The client queues are drained after each batch (by reading the messages as a client application would) so
+ * that the queues don't grow: the read cost is included in the measurement.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SessionFanOutBenchmark {
+
+    @Param({"1", "8", "64"})
+    private int clientCount;
+
+    @Param({"1", "64"})
+    private int batchSize;
+
+    private WebXSession session;
+    private List<WebXClient> clients;
+    private List<byte[]> batch;
+
+    /**
+     * Creates the session, its clients and the batch of messages
+     */
+    @Setup
+    public void setup() {
+        final SessionId sessionId = RelayFixtures.randomSessionId(new Random(1));
+        this.session = RelayFixtures.newSession(sessionId);
+        for (int i = 0; i < this.clientCount; i++) {
+            RelayFixtures.addClient(this.session, i);
+        }
+        this.clients = this.session.getClients();
+
+        this.batch = new ArrayList<>();
+        for (int i = 0; i < this.batchSize; i++) {
+            this.batch.add(RelayFixtures.messageData(sessionId, -1L, 4, 0, 1024));
+        }
+    }
+
+    /**
+     * Fans out the batch of messages to the clients and reads all the messages
+     * @param blackhole the blackhole consuming the messages
+     * @throws Exception if a client fails
+     */
+    @Benchmark
+    public void fanOut(final Blackhole blackhole) throws Exception {
+        this.session.onMessages(this.batch);
+        for (int i = 0; i < this.clients.size(); i++) {
+            final WebXClient client = this.clients.get(i);
+            while (client.getQueueDepth() > 0) {
+                blackhole.consume(client.getMessage());
+            }
+        }
+    }
+}
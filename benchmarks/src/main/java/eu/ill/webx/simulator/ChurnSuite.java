@@ -0,0 +1,257 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.simulator;
+
+import eu.ill.webx.WebXClientConfiguration;
+import eu.ill.webx.WebXHostConfiguration;
+import eu.ill.webx.WebXTunnel;
+import eu.ill.webx.exceptions.WebXConnectionException;
+import eu.ill.webx.metrics.Histogram;
+import eu.ill.webx.relay.RelayFixtures;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Churn suite measuring the connect and disconnect throughput of the relay against a simulated router: worker threads repeatedly connect a
+ * tunnel (creating the session and client in the relay) and disconnect it, as in a login storm. The suite reports the connect and disconnect
+ * operations per second and latency percentiles. It then checks that the number of threads, the number of open file descriptors (the ZMQ
+ * sockets) and the used heap return to their baseline once the tunnels are disconnected: the suite exits with status 1 if a resource has leaked.
+ * By default a tunnel is kept connected for the duration of the suite so that the host (and its transport) stays connected: with keepHost=false
+ * the transport is also created and closed by the cycles when no other tunnel is connected.
+ * Options (name=value):
+ *  - cycles: total number of connect/disconnect cycles (default 1000)
+ *  - workers: number of threads running cycles concurrently (default 8)
+ *  - users: number of distinct users (sessions) used by the cycles (default 100)
+ *  - hold: time in milliseconds a tunnel stays connected (default 0)
+ *  - keepHost: keep a tunnel connected to the host for the duration of the suite (default true)
+ *  - settle: maximum time in milliseconds to wait for the resources to return to their baseline (default 10000)
+ *  - threadTolerance: number of threads above the baseline accepted (default 0)
+ *  - fileTolerance: number of file descriptors above the baseline accepted (default 0)
+ *  - heapTolerance: heap growth in MB above the baseline accepted (default 16)
+ */
+public class ChurnSuite {
+
+    private static final int WARMUP_CYCLES = 20;
+
+    private final Histogram connectTimes = Histogram.exponential(100, 1.2, 80);
+    private final Histogram disconnectTimes = Histogram.exponential(10, 1.2, 80);
+    private final AtomicLong connectFailures = new AtomicLong();
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+    private final OperatingSystemMXBean operatingSystemBean = ManagementFactory.getOperatingSystemMXBean();
+
+    /**
+     * Main method of the suite
+     * @param args the options (name=value)
+     * @throws Exception thrown if the suite fails
+     */
+    public static void main(String[] args) throws Exception {
+        final SuiteOptions options = new SuiteOptions(args);
+        final boolean passed = new ChurnSuite().run(options);
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Default constructor
+     */
+    public ChurnSuite() {
+    }
+
+    /**
+     * Runs the suite
+     * @param options the options of the suite
+     * @return true if the resources have returned to their baseline
+     * @throws Exception thrown if the suite fails
+     */
+    public boolean run(final SuiteOptions options) throws Exception {
+        final int cycleCount = options.getInt("cycles", 1000);
+        final int workerCount = options.getInt("workers", 8);
+        final int userCount = options.getInt("users", 100);
+        final int holdMs = options.getInt("hold", 0);
+        final boolean keepHost = Boolean.parseBoolean(options.getString("keepHost", "true"));
+        final int settleMs = options.getInt("settle", 10000);
+
+        // The simulated router doesn't publish any frames: only the lifecycle of the tunnels is measured
+        final SimulatedRouter router = new SimulatedRouter()
+            .withFrameProfile(new FrameProfile().withFramesPerSecond(0));
+        final int port = router.start();
+        System.out.printf("Simulated router listening on port %d%n", port);
+
+        final WebXHostConfiguration hostConfiguration = new WebXHostConfiguration("localhost", port);
+        final WebXTunnel hostTunnel = keepHost ? WebXTunnel.Connect(hostConfiguration, WebXClientConfiguration.ForLogin("churn-host", "password", RelayFixtures.CLIENT_VERSION)) : null;
+
+        // Warm up the relay (class loading, first session creations) before taking the baseline
+        this.runCycles(hostConfiguration, WARMUP_CYCLES, 1, userCount, 0);
+        this.connectTimes.reset();
+        this.disconnectTimes.reset();
+        this.connectFailures.set(0);
+        final Resources baseline = this.waitForBaseline(null, 0, 0, 0, settleMs);
+        System.out.printf("Baseline: %s%n", baseline);
+
+        final long startTime = System.nanoTime();
+        this.runCycles(hostConfiguration, cycleCount, workerCount, userCount, holdMs);
+        final double elapsedS = (System.nanoTime() - startTime) / 1.0e9;
+
+        System.out.printf("%d cycles with %d workers in %.1f s: %.1f cycles/s, %d connection failures%n", cycleCount, workerCount, elapsedS, cycleCount / elapsedS, this.connectFailures.get());
+        System.out.printf("Connect (ms): p50 %.2f, p90 %.2f, p99 %.2f, max %.2f%n",
+            this.connectTimes.getPercentile(50) / 1000.0, this.connectTimes.getPercentile(90) / 1000.0, this.connectTimes.getPercentile(99) / 1000.0, this.connectTimes.getPercentile(100) / 1000.0);
+        System.out.printf("Disconnect (ms): p50 %.2f, p90 %.2f, p99 %.2f, max %.2f%n",
+            this.disconnectTimes.getPercentile(50) / 1000.0, this.disconnectTimes.getPercentile(90) / 1000.0, this.disconnectTimes.getPercentile(99) / 1000.0, this.disconnectTimes.getPercentile(100) / 1000.0);
+
+        final int threadTolerance = options.getInt("threadTolerance", 0);
+        final int fileTolerance = options.getInt("fileTolerance", 0);
+        final long heapTolerance = options.getInt("heapTolerance", 16) * 1024L * 1024L;
+        final Resources after = this.waitForBaseline(baseline, threadTolerance, fileTolerance, heapTolerance, settleMs);
+        System.out.printf("After churn: %s%n", after);
+
+        boolean passed = true;
+        if (after.threadCount() > baseline.threadCount() + threadTolerance) {
+            System.out.printf("FAILED: %d threads leaked%n", after.threadCount() - baseline.threadCount());
+            passed = false;
+        }
+        if (baseline.fileCount() >= 0 && after.fileCount() > baseline.fileCount() + fileTolerance) {
+            System.out.printf("FAILED: %d file descriptors leaked%n", after.fileCount() - baseline.fileCount());
+            passed = false;
+        }
+        if (after.heapUsed() > baseline.heapUsed() + heapTolerance) {
+            System.out.printf("FAILED: heap grew by %.1f MB (%.0f bytes per cycle)%n", (after.heapUsed() - baseline.heapUsed()) / 1.0e6, (double) (after.heapUsed() - baseline.heapUsed()) / cycleCount);
+            passed = false;
+        }
+        if (passed) {
+            System.out.println("Resources returned to baseline");
+        }
+
+        if (hostTunnel != null) {
+            hostTunnel.disconnect();
+        }
+        router.stop();
+        return passed;
+    }
+
+    /**
+     * Runs connect/disconnect cycles from a number of worker threads
+     * @param hostConfiguration the host configuration
+     * @param cycleCount the total number of cycles
+     * @param workerCount the number of worker threads
+     * @param userCount the number of distinct users
+     * @param holdMs the time a tunnel stays connected
+     * @throws InterruptedException thrown if the thread is interrupted
+     */
+    private void runCycles(final WebXHostConfiguration hostConfiguration, int cycleCount, int workerCount, int userCount, int holdMs) throws InterruptedException {
+        final AtomicInteger nextCycle = new AtomicInteger();
+        final List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < workerCount; i++) {
+            final Thread worker = new Thread(() -> {
+                int cycle;
+                while ((cycle = nextCycle.getAndIncrement()) < cycleCount) {
+                    this.runCycle(hostConfiguration, "churn" + (cycle % userCount), holdMs);
+                }
+            }, "webx-churn-worker-" + i);
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    /**
+     * Connects a tunnel and disconnects it, recording the connect and disconnect times
+     * @param hostConfiguration the host configuration
+     * @param username the user of the session
+     * @param holdMs the time the tunnel stays connected
+     */
+    private void runCycle(final WebXHostConfiguration hostConfiguration, final String username, int holdMs) {
+        try {
+            long startTime = System.nanoTime();
+            final WebXTunnel tunnel = WebXTunnel.Connect(hostConfiguration, WebXClientConfiguration.ForLogin(username, "password", RelayFixtures.CLIENT_VERSION));
+            this.connectTimes.record((System.nanoTime() - startTime) / 1000);
+
+            if (holdMs > 0) {
+                Thread.sleep(holdMs);
+            }
+
+            startTime = System.nanoTime();
+            tunnel.disconnect();
+            this.disconnectTimes.record((System.nanoTime() - startTime) / 1000);
+
+        } catch (WebXConnectionException exception) {
+            this.connectFailures.incrementAndGet();
+
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for the resources to return to a baseline (or, without a baseline, for the thread count to be stable)
+     * @param baseline the baseline (null to measure the baseline)
+     * @param threadTolerance the number of threads above the baseline accepted
+     * @param fileTolerance the number of file descriptors above the baseline accepted
+     * @param heapTolerance the heap growth accepted in bytes
+     * @param settleMs the maximum time to wait
+     * @return the resources in use
+     * @throws InterruptedException thrown if the thread is interrupted
+     */
+    private Resources waitForBaseline(final Resources baseline, int threadTolerance, int fileTolerance, long heapTolerance, int settleMs) throws InterruptedException {
+        final long endTime = System.nanoTime() + settleMs * 1000000L;
+        Resources previous = null;
+        while (true) {
+            final Resources resources = this.measureResources();
+            final boolean settled = baseline != null
+                ? resources.threadCount() <= baseline.threadCount() + threadTolerance && resources.fileCount() <= baseline.fileCount() + fileTolerance && resources.heapUsed() <= baseline.heapUsed() + heapTolerance
+                : previous != null && resources.threadCount() == previous.threadCount();
+            if (settled || System.nanoTime() - endTime > 0) {
+                return resources;
+            }
+            previous = resources;
+            Thread.sleep(500);
+        }
+    }
+
+    /**
+     * Measures the resources in use after a garbage collection
+     * @return the resources in use
+     */
+    private Resources measureResources() {
+        System.gc();
+        final long fileCount = this.operatingSystemBean instanceof com.sun.management.UnixOperatingSystemMXBean unixBean ? unixBean.getOpenFileDescriptorCount() : -1;
+        return new Resources(this.threadBean.getThreadCount(), fileCount, this.memoryBean.getHeapMemoryUsage().getUsed());
+    }
+
+    /**
+     * The resources used by the process
+     * @param threadCount the number of live threads
+     * @param fileCount the number of open file descriptors (-1 if not available)
+     * @param heapUsed the used heap in bytes
+     */
+    private record Resources(int threadCount, long fileCount, long heapUsed) {
+
+        @Override
+        public String toString() {
+            return String.format("%d threads, %d open files, %.1f MB heap used", this.threadCount, this.fileCount, this.heapUsed / 1.0e6);
+        }
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.simulator;
+
+import eu.ill.webx.WebXClientConfiguration;
+import eu.ill.webx.WebXHostConfiguration;
+import eu.ill.webx.WebXTunnel;
+import eu.ill.webx.exceptions.WebXConnectionException;
+import eu.ill.webx.model.FrameLossData;
+import eu.ill.webx.model.PingStatistics;
+import eu.ill.webx.relay.RelayFixtures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Suite injecting faults in a simulated router and measuring the time taken by the relay (session validator, transport and tunnel)
+ * to detect each fault and to recover from it. Each measurement has a budget derived from the ping interval of the session validator
+ * and the socket timeout of the host: the suite fails (exit code 1) if any measurement exceeds its budget so that regressions of the
+ * detection and recovery times are caught.
+ * A tunnel of a separate session is kept connected for the whole suite: it keeps the host (and its request sockets) alive between
+ * scenarios and must not be affected by the faults of the other sessions (except by the loss of all sessions in the last scenario).
+ * Scenarios:
+ *  - ping-latency: latency added to the ping replies is reflected in the ping statistics without interrupting the tunnel
+ *  - ping-drop: the ping replies of a session are dropped (request timeout): its tunnel is interrupted and a new connection succeeds
+ *    once the fault is removed (the request socket of the host must not stay blocked waiting for the lost reply)
+ *  - session-lost: the engine of the session terminates (pang reply): the tunnel is interrupted, a new connection succeeds
+ *  - create-invalid: the session creation reply is invalid: the connection fails without waiting for a timeout
+ *  - create-timeout: the session creation reply is dropped: the connection fails after the socket timeout, then succeeds once the fault is removed
+ *  - create-empty: a legacy router answers create_async with an empty reply: the connection falls back to synchronous creation
+ *  - publisher-pause: the router stops publishing frames: the tunnel stays connected and frames are read as soon as publication resumes
+ *  - restart: the router restarts and the sessions survive: the frame loss is notified and frames are read again
+ *  - restart-lost-sessions: the router restarts without its sessions: the tunnel is interrupted
+ * Options (name=value):
+ *  - scenarios: comma-separated list of the scenarios to run (default all)
+ *  - socketTimeout: socket timeout of the host in milliseconds (default 2000)
+ *  - pingInterval: interval between the pings of the session validator in milliseconds (default 15000)
+ *  - margin: margin added to the budgets in milliseconds (default 1000)
+ */
+public class FaultSuite {
+
+    private static final long PING_LATENCY_MS = 500;
+    private static final long PAUSE_MS = 3000;
+    private static final long RESTART_DOWNTIME_MS = 1000;
+    private static final int HOST_CONNECTION_ATTEMPTS = 3;
+
+    /**
+     * A scenario of the suite
+     */
+    private interface Scenario {
+        /**
+         * Runs the scenario
+         * @throws Exception thrown if the scenario fails
+         */
+        void run() throws Exception;
+    }
+
+    /**
+     * A measured detection or recovery time
+     * @param scenario the name of the scenario
+     * @param name the name of the measurement
+     * @param valueMs the measured time in milliseconds (-1 if the event did not occur)
+     * @param budgetMs the maximum allowed time in milliseconds
+     */
+    private record Measurement(String scenario, String name, long valueMs, long budgetMs) {
+        boolean passed() {
+            return valueMs >= 0 && valueMs <= budgetMs;
+        }
+    }
+
+    private final SimulatedRouter router;
+    private final WebXHostConfiguration hostConfiguration;
+    private final long socketTimeoutMs;
+    private final long pingIntervalMs;
+    private final long marginMs;
+    private final List<Measurement> measurements = new ArrayList<>();
+    private final List<String> errors = new ArrayList<>();
+    private final List<TunnelProbe> probes = new ArrayList<>();
+    private TunnelProbe hostProbe;
+    private String currentScenario;
+    private int userCount = 0;
+
+    /**
+     * Main method of the suite
+     * @param args the options (name=value)
+     * @throws Exception thrown if the suite fails
+     */
+    public static void main(String[] args) throws Exception {
+        final SuiteOptions options = new SuiteOptions(args);
+        final FaultSuite suite = new FaultSuite(options.getInt("socketTimeout", 2000), options.getInt("pingInterval", 15000), options.getInt("margin", 1000));
+        final boolean passed = suite.run(options.getString("scenarios", null));
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Constructor taking the parameters used to calculate the budgets
+     * @param socketTimeoutMs the socket timeout of the host
+     * @param pingIntervalMs the interval between the pings of the session validator
+     * @param marginMs the margin added to the budgets
+     */
+    public FaultSuite(long socketTimeoutMs, long pingIntervalMs, long marginMs) {
+        this.socketTimeoutMs = socketTimeoutMs;
+        this.pingIntervalMs = pingIntervalMs;
+        this.marginMs = marginMs;
+        this.router = new SimulatedRouter().withFrameProfile(new FrameProfile().withFramesPerSecond(50).withSizes(SizeDistribution.fixed(1024)));
+        this.hostConfiguration = new WebXHostConfiguration("localhost", this.router.start(), (int) socketTimeoutMs);
+    }
+
+    /**
+     * Runs the scenarios and prints the measurements
+     * @param scenarioNames comma-separated names of the scenarios to run (null to run all scenarios)
+     * @return true if all measurements are within their budgets
+     * @throws InterruptedException thrown if the suite is interrupted
+     * @throws WebXConnectionException thrown if the host cannot be connected
+     */
+    public boolean run(final String scenarioNames) throws InterruptedException, WebXConnectionException {
+        final Map<String, Scenario> scenarios = new LinkedHashMap<>();
+        scenarios.put("ping-latency", this::pingLatency);
+        scenarios.put("ping-drop", this::pingDrop);
+        scenarios.put("session-lost", this::sessionLost);
+        scenarios.put("create-invalid", this::createInvalid);
+        scenarios.put("create-timeout", this::createTimeout);
+        scenarios.put("create-empty", this::createEmpty);
+        scenarios.put("publisher-pause", this::publisherPause);
+        scenarios.put("restart", this::restart);
+        scenarios.put("restart-lost-sessions", this::restartLostSessions);
+
+        final List<String> selected = scenarioNames == null ? new ArrayList<>(scenarios.keySet()) : Arrays.asList(scenarioNames.split(","));
+        this.hostProbe = this.connectHost();
+        for (String name : selected) {
+            final Scenario scenario = scenarios.get(name);
+            if (scenario == null) {
+                this.errors.add(String.format("%s: unknown scenario", name));
+                continue;
+            }
+
+            System.out.printf("Running %s...%n", name);
+            this.currentScenario = name;
+            try {
+                scenario.run();
+
+            } catch (Exception exception) {
+                this.errors.add(String.format("%s: %s", name, exception));
+
+            } finally {
+                this.router.clearFaults();
+                for (TunnelProbe probe : this.probes) {
+                    probe.close();
+                }
+                this.probes.clear();
+            }
+
+            if (!name.equals("restart-lost-sessions")) {
+                this.expect(this.hostProbe == null || this.hostProbe.getFailureTime() == 0, "tunnel of another session of the host interrupted");
+            }
+        }
+        if (this.hostProbe != null) {
+            this.hostProbe.close();
+        }
+        this.router.stop();
+
+        return this.report();
+    }
+
+    /**
+     * Latency added to the ping replies: the round-trip time is reported in the ping statistics and the tunnel is not interrupted
+     * @throws Exception thrown if the scenario fails
+     */
+    private void pingLatency() throws Exception {
+        final TunnelProbe probe = this.connect(this.nextUser());
+        this.router.setReplyFault("ping," + probe.getTunnel().getConnectionId(), ReplyFault.delay(PING_LATENCY_MS));
+
+        final long endTime = System.nanoTime() + (this.pingIntervalMs + this.socketTimeoutMs + this.marginMs) * 1000000;
+        PingStatistics statistics = probe.getTunnel().getPingStatistics();
+        while (statistics.sampleCount() == 0 && System.nanoTime() - endTime < 0 && probe.getFailureTime() == 0) {
+            Thread.sleep(100);
+            statistics = probe.getTunnel().getPingStatistics();
+        }
+
+        this.measure("ping round-trip time with " + PING_LATENCY_MS + " ms latency", statistics.sampleCount() > 0 ? statistics.lastNs() / 1000000 : -1, PING_LATENCY_MS + this.marginMs);
+        this.expect(probe.getFailureTime() == 0, "tunnel interrupted by a slow ping");
+    }
+
+    /**
+     * Ping replies of a session dropped: the request times out, the session is removed and its tunnel interrupted. Once the fault is
+     * removed a new connection must succeed (the request socket of the host must not stay blocked waiting for the lost reply).
+     * @throws Exception thrown if the scenario fails
+     */
+    private void pingDrop() throws Exception {
+        final String user = this.nextUser();
+        final TunnelProbe probe = this.connect(user);
+        final String pingCommand = "ping," + probe.getTunnel().getConnectionId();
+        final long faultTime = System.nanoTime();
+        this.router.setReplyFault(pingCommand, ReplyFault.drop());
+
+        final long failureTime = probe.awaitFailure(this.pingIntervalMs + this.socketTimeoutMs + 2 * this.marginMs);
+        this.measure("detection", elapsedMs(faultTime, failureTime), this.pingIntervalMs + this.socketTimeoutMs + this.marginMs);
+
+        this.router.setReplyFault(pingCommand, null);
+        this.measureReconnection(user);
+    }
+
+    /**
+     * The engine of the session terminates: the ping reply is a pang and the tunnel is interrupted
+     * @throws Exception thrown if the scenario fails
+     */
+    private void sessionLost() throws Exception {
+        final String user = this.nextUser();
+        final TunnelProbe probe = this.connect(user);
+        final long faultTime = System.nanoTime();
+        this.router.removeSession(probe.getTunnel().getConnectionId());
+
+        final long failureTime = probe.awaitFailure(this.pingIntervalMs + 2 * this.marginMs);
+        this.measure("detection", elapsedMs(faultTime, failureTime), this.pingIntervalMs + this.marginMs);
+
+        this.measureReconnection(user);
+    }
+
+    /**
+     * Legacy router answering create_async with an empty reply: the connection falls back to the synchronous creation
+     * @throws Exception thrown if the scenario fails
+     */
+    private void createEmpty() throws Exception {
+        this.router.setReplyFault("create_async", ReplyFault.empty());
+        this.measureReconnection(this.nextUser());
+    }
+
+    /**
+     * Invalid session creation reply: the connection fails immediately
+     * @throws Exception thrown if the scenario fails
+     */
+    private void createInvalid() throws Exception {
+        this.setCreationFault(ReplyFault.invalid());
+        this.measure("connection failure", this.measureConnectionFailure(this.nextUser()), this.marginMs);
+    }
+
+    /**
+     * Dropped session creation reply: the connection fails after the socket timeout. Once the fault is removed a new connection must succeed.
+     * @throws Exception thrown if the scenario fails
+     */
+    private void createTimeout() throws Exception {
+        final String user = this.nextUser();
+        this.setCreationFault(ReplyFault.drop());
+        this.measure("connection failure", this.measureConnectionFailure(user), this.socketTimeoutMs + this.marginMs);
+
+        this.setCreationFault(null);
+        this.measureReconnection(user);
+    }
+
+    /**
+     * Publication paused: the tunnel stays connected and frames are read as soon as the publication resumes
+     * @throws Exception thrown if the scenario fails
+     */
+    private void publisherPause() throws Exception {
+        final TunnelProbe probe = this.connect(this.nextUser());
+        this.router.setPublisherPaused(true);
+        Thread.sleep(PAUSE_MS);
+
+        final long resumeTime = System.nanoTime();
+        this.router.setPublisherPaused(false);
+        final long frameTime = probe.awaitFrameAfter(resumeTime, 2 * this.marginMs);
+        this.measure("first frame after resume", elapsedMs(resumeTime, frameTime), this.marginMs / 2);
+        this.expect(probe.getFailureTime() == 0, "tunnel interrupted during the pause");
+    }
+
+    /**
+     * Router restart with the sessions surviving: the reconnection of the subscriber is notified as a frame loss and frames are read again
+     * @throws Exception thrown if the scenario fails
+     */
+    private void restart() throws Exception {
+        final TunnelProbe probe = this.connect(this.nextUser());
+        this.router.restart(RESTART_DOWNTIME_MS, true);
+        final long restartTime = System.nanoTime();
+
+        final long frameLossTime = probe.awaitFrameLoss(FrameLossData.Cause.SUBSCRIBER_RECONNECTION, 3 * this.marginMs);
+        this.measure("frame loss notification", elapsedMs(restartTime, frameLossTime), 2 * this.marginMs);
+
+        final long frameTime = probe.awaitFrameAfter(restartTime, 3 * this.marginMs);
+        this.measure("first frame after restart", elapsedMs(restartTime, frameTime), 2 * this.marginMs);
+        this.expect(probe.getFailureTime() == 0, "tunnel interrupted by the restart");
+    }
+
+    /**
+     * Router restart with the sessions lost: the next ping fails and the tunnel is interrupted. The ping may also time out if the
+     * request socket has not reconnected.
+     * @throws Exception thrown if the scenario fails
+     */
+    private void restartLostSessions() throws Exception {
+        final TunnelProbe probe = this.connect(this.nextUser());
+        final long faultTime = System.nanoTime();
+        this.router.restart(RESTART_DOWNTIME_MS, false);
+
+        final long budgetMs = this.pingIntervalMs + RESTART_DOWNTIME_MS + this.socketTimeoutMs + this.marginMs;
+        final long failureTime = probe.awaitFailure(budgetMs + this.marginMs);
+        this.measure("detection", elapsedMs(faultTime, failureTime), budgetMs);
+    }
+
+    /**
+     * Injects a fault in the replies to both the asynchronous and synchronous session creation requests
+     * @param fault the fault (null to remove it)
+     */
+    private void setCreationFault(final ReplyFault fault) {
+        this.router.setReplyFault("create_async", fault);
+        this.router.setReplyFault("create", fault);
+    }
+
+    /**
+     * Connects a new tunnel and measures the time until the first frame is read
+     * @param user the user of the session
+     * @throws Exception thrown if the connection fails
+     */
+    private void measureReconnection(final String user) throws Exception {
+        final long startTime = System.nanoTime();
+        final TunnelProbe probe = this.connect(user);
+        final long frameTime = probe.awaitFrameAfter(startTime, this.socketTimeoutMs + 2 * this.marginMs);
+        this.measure("connection to first frame", elapsedMs(startTime, frameTime), this.marginMs);
+    }
+
+    /**
+     * Measures the time taken by a connection to fail
+     * @param user the user of the session
+     * @return the time in milliseconds, -1 if the connection succeeded
+     * @throws Exception thrown if the scenario fails
+     */
+    private long measureConnectionFailure(final String user) throws Exception {
+        final long startTime = System.nanoTime();
+        try {
+            this.connect(user);
+            return -1;
+
+        } catch (WebXConnectionException exception) {
+            return elapsedMs(startTime, System.nanoTime());
+        }
+    }
+
+    /**
+     * Connects the tunnel that keeps the host connected during the suite. The connection is attempted several times: the encryption
+     * handshake of the session channel between two JeroMQ endpoints occasionally stalls, and the request then times out.
+     * @return the probe of the tunnel
+     * @throws WebXConnectionException thrown if all the attempts fail
+     */
+    private TunnelProbe connectHost() throws WebXConnectionException {
+        final String user = this.nextUser();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                final WebXTunnel tunnel = WebXTunnel.Connect(this.hostConfiguration, WebXClientConfiguration.ForLogin(user, "password", RelayFixtures.CLIENT_VERSION));
+                return new TunnelProbe(tunnel);
+
+            } catch (WebXConnectionException exception) {
+                if (attempt == HOST_CONNECTION_ATTEMPTS) {
+                    throw exception;
+                }
+            }
+        }
+    }
+
+    /**
+     * Connects a tunnel for a user and starts a probe reading it
+     * @param user the user of the session
+     * @return the probe
+     * @throws WebXConnectionException thrown if the connection fails
+     */
+    private TunnelProbe connect(final String user) throws WebXConnectionException {
+        final WebXTunnel tunnel = WebXTunnel.Connect(this.hostConfiguration, WebXClientConfiguration.ForLogin(user, "password", RelayFixtures.CLIENT_VERSION));
+        final TunnelProbe probe = new TunnelProbe(tunnel);
+        this.probes.add(probe);
+        return probe;
+    }
+
+    /**
+     * Returns a new user name so that each scenario uses a new session
+     * @return the user name
+     */
+    private String nextUser() {
+        return "fault-user-" + (++this.userCount);
+    }
+
+    /**
+     * Records a measurement of the current scenario
+     * @param name the name of the measurement
+     * @param valueMs the measured time (-1 if the event did not occur)
+     * @param budgetMs the maximum allowed time
+     */
+    private void measure(final String name, long valueMs, long budgetMs) {
+        this.measurements.add(new Measurement(this.currentScenario, name, valueMs, budgetMs));
+    }
+
+    /**
+     * Records an error of the current scenario if a condition is not met
+     * @param condition the condition
+     * @param error the error
+     */
+    private void expect(boolean condition, final String error) {
+        if (!condition) {
+            this.errors.add(String.format("%s: %s", this.currentScenario, error));
+        }
+    }
+
+    /**
+     * Prints the measurements and errors
+     * @return true if all measurements are within their budgets and there are no errors
+     */
+    private boolean report() {
+        boolean passed = this.errors.isEmpty();
+        System.out.printf("%n%-22s %-48s %10s %10s%n", "Scenario", "Measurement", "Time (ms)", "Budget");
+        for (Measurement measurement : this.measurements) {
+            System.out.printf("%-22s %-48s %10s %10d %s%n", measurement.scenario(), measurement.name(),
+                measurement.valueMs() >= 0 ? Long.toString(measurement.valueMs()) : "-", measurement.budgetMs(), measurement.passed() ? "ok" : "FAILED");
+            passed &= measurement.passed();
+        }
+        for (String error : this.errors) {
+            System.out.printf("Error: %s%n", error);
+        }
+        return passed;
+    }
+
+    /**
+     * Returns the time elapsed between two times
+     * @param startTime the start time (System.nanoTime)
+     * @param endTime the end time (System.nanoTime), 0 if the event did not occur
+     * @return the elapsed time in milliseconds, -1 if the event did not occur
+     */
+    private static long elapsedMs(long startTime, long endTime) {
+        return endTime == 0 ? -1 : (endTime - startTime) / 1000000;
+    }
+}
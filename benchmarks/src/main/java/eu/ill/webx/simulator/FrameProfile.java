@@ -0,0 +1,88 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.simulator;
+
+/**
+ * Describes the frames published by the simulated router for each session that has connected clients: rate, sizes and message types.
+ */
+public class FrameProfile {
+
+    private double framesPerSecond = 0;
+    private SizeDistribution sizes = SizeDistribution.fixed(1024);
+    private int[] types = {4};
+
+    /**
+     * Default constructor: no frames are published
+     */
+    public FrameProfile() {
+    }
+
+    /**
+     * Returns the number of frames published per second for each session
+     * @return the frame rate
+     */
+    public double getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    /**
+     * Sets the number of frames published per second for each session (0 to publish no frames)
+     * @param framesPerSecond the frame rate
+     * @return this profile
+     */
+    public FrameProfile withFramesPerSecond(double framesPerSecond) {
+        this.framesPerSecond = framesPerSecond;
+        return this;
+    }
+
+    /**
+     * Returns the distribution of the frame sizes
+     * @return the size distribution
+     */
+    public SizeDistribution getSizes() {
+        return sizes;
+    }
+
+    /**
+     * Sets the distribution of the frame sizes (default 1024 bytes)
+     * @param sizes the size distribution
+     * @return this profile
+     */
+    public FrameProfile withSizes(final SizeDistribution sizes) {
+        this.sizes = sizes;
+        return this;
+    }
+
+    /**
+     * Returns the message type Ids of the frames
+     * @return the message type Ids
+     */
+    public int[] getTypes() {
+        return types;
+    }
+
+    /**
+     * Sets the message type Ids of the frames: each frame is given one of the types at random (default 4)
+     * @param types the message type Ids
+     * @return this profile
+     */
+    public FrameProfile withTypes(int... types) {
+        this.types = types;
+        return this;
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.simulator;
+
+import eu.ill.webx.WebXClientConfiguration;
+import eu.ill.webx.WebXHostConfiguration;
+import eu.ill.webx.WebXTunnel;
+import eu.ill.webx.exceptions.WebXClientException;
+import eu.ill.webx.exceptions.WebXConnectionInterruptException;
+import eu.ill.webx.exceptions.WebXDisconnectedException;
+import eu.ill.webx.metrics.Histogram;
+import eu.ill.webx.model.SessionId;
+import eu.ill.webx.relay.RelayFixtures;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Input latency suite measuring the round trip of an instruction through the relay: the simulated router echoes each instruction back to
+ * the client that sent it, and the suite times WebXTunnel.write, the instruction publisher, the ZMQ sockets, the echo, the message subscriber
+ * and WebXTunnel.read. Probes are written at a fixed interval (independently of the echoes) while background sessions receive frames.
+ * Probes are alternately sent through the relay and directly to the simulated router with ZMQ sockets (without the relay) so that both
+ * paths are measured under the same conditions: the difference between the two distributions is the latency added by the relay.
+ * Options (name=value):
+ *  - probes: number of probes measured on each path (default 2000)
+ *  - warmup: number of probes sent on each path before the measurement (default 200)
+ *  - interval: time in milliseconds between probes, alternating between the paths (default 5)
+ *  - sessions: number of background sessions (default 10)
+ *  - rate: frames per second published for each session, including the session of the probe (default 60)
+ *  - size: median frame size in bytes (default 16384)
+ *  - sigma: standard deviation of the logarithm of the frame size, 0 for a fixed size (default 1.0)
+ */
+public class InputLatencySuite {
+
+    /**
+     * Sends a probe instruction
+     */
+    private interface ProbeSender {
+        /**
+         * Sends a probe
+         * @param instructionData the data of the probe instruction
+         * @throws Exception thrown if the probe cannot be sent
+         */
+        void send(byte[] instructionData) throws Exception;
+    }
+
+    private static final int MAX_FRAME_SIZE = 4 * 1024 * 1024;
+    private static final int PROBE_SIZE = SimulatedRouter.INSTRUCTION_HEADER_LENGTH + 16;
+    private static final int ECHO_WAIT_MS = 1000;
+
+    private final Histogram directLatency = Histogram.exponential(10, 1.1, 150);
+    private final Histogram relayLatency = Histogram.exponential(10, 1.1, 150);
+    private final AtomicLong directEchoes = new AtomicLong();
+    private final AtomicLong relayEchoes = new AtomicLong();
+    private volatile boolean running = true;
+
+    /**
+     * Main method of the suite
+     * @param args the options (name=value)
+     * @throws Exception thrown if the suite fails
+     */
+    public static void main(String[] args) throws Exception {
+        final SuiteOptions options = new SuiteOptions(args);
+        new InputLatencySuite().run(options);
+        System.exit(0);
+    }
+
+    /**
+     * Default constructor
+     */
+    public InputLatencySuite() {
+    }
+
+    /**
+     * Runs the suite
+     * @param options the options of the suite
+     * @throws Exception thrown if the suite fails
+     */
+    public void run(final SuiteOptions options) throws Exception {
+        final int probeCount = options.getInt("probes", 2000);
+        final int warmupCount = options.getInt("warmup", 200);
+        final int intervalMs = options.getInt("interval", 5);
+        final int sessionCount = options.getInt("sessions", 10);
+        final double sigma = options.getDouble("sigma", 1.0);
+        final int size = options.getInt("size", 16384);
+
+        final SimulatedRouter router = new SimulatedRouter()
+            .withInstructionEcho(true)
+            .withFrameProfile(new FrameProfile()
+                .withFramesPerSecond(options.getDouble("rate", 60))
+                .withSizes(sigma > 0 ? SizeDistribution.logNormal(size, sigma, MAX_FRAME_SIZE) : SizeDistribution.fixed(size))
+                .withTypes(4, 5));
+        final int port = router.start();
+        System.out.printf("Simulated router listening on port %d%n", port);
+
+        // Background sessions, read (and discarded) by their own threads
+        final WebXHostConfiguration hostConfiguration = new WebXHostConfiguration("localhost", port);
+        final List<WebXTunnel> tunnels = new ArrayList<>();
+        final List<Thread> readers = new ArrayList<>();
+        for (int session = 0; session < sessionCount; session++) {
+            final WebXTunnel tunnel = WebXTunnel.Connect(hostConfiguration, WebXClientConfiguration.ForLogin("user" + session, "password", RelayFixtures.CLIENT_VERSION));
+            tunnels.add(tunnel);
+            readers.add(this.startReader(tunnel, null, null, "webx-latency-background-" + session));
+        }
+
+        final WebXTunnel probeTunnel = WebXTunnel.Connect(hostConfiguration, WebXClientConfiguration.ForLogin("probe", "password", RelayFixtures.CLIENT_VERSION));
+        tunnels.add(probeTunnel);
+        readers.add(this.startReader(probeTunnel, this.relayLatency, this.relayEchoes, "webx-latency-probe"));
+        System.out.printf("Connected %d background sessions and the probe session%n", sessionCount);
+
+        // Direct path: ZMQ sockets connected to the simulated router with a session Id that is unknown to the relay
+        try (ZContext context = new ZContext()) {
+            final SessionId directSessionId = RelayFixtures.randomSessionId(new Random());
+            final ZMQ.Socket instructionSocket = context.createSocket(SocketType.PUB);
+            instructionSocket.connect(String.format("tcp://localhost:%d", router.getCollectorPort()));
+            final ZMQ.Socket messageSocket = context.createSocket(SocketType.SUB);
+            messageSocket.subscribe(directSessionId.bytes());
+            messageSocket.setReceiveTimeOut(100);
+            messageSocket.connect(String.format("tcp://localhost:%d", router.getPublisherPort()));
+            final Thread directReader = new Thread(() -> this.readDirect(messageSocket), "webx-latency-direct");
+            directReader.start();
+            // Wait for the subscriptions to be established
+            Thread.sleep(500);
+
+            final ProbeSender directSender = instructionData -> {
+                ByteBuffer.wrap(instructionData).order(ByteOrder.LITTLE_ENDIAN).put(0, directSessionId.bytes());
+                instructionSocket.send(instructionData, 0);
+            };
+            final ProbeSender[] senders = {directSender, probeTunnel::write};
+            this.sendProbes(senders, warmupCount, intervalMs);
+            Thread.sleep(ECHO_WAIT_MS);
+            this.reset();
+
+            this.sendProbes(senders, probeCount, intervalMs);
+            final long endTime = System.nanoTime() + ECHO_WAIT_MS * 1000000L;
+            while ((this.directEchoes.get() < probeCount || this.relayEchoes.get() < probeCount) && System.nanoTime() - endTime < 0) {
+                Thread.sleep(10);
+            }
+            final long directLost = probeCount - this.directEchoes.get();
+            final long relayLost = probeCount - this.relayEchoes.get();
+            this.running = false;
+            directReader.join();
+
+            this.report("Direct (without relay)", this.directLatency, directLost);
+            this.report("Through relay", this.relayLatency, relayLost);
+            System.out.printf("Added by relay (ms): p50 %.3f, p90 %.3f, p99 %.3f, p99.9 %.3f%n",
+                this.addedMs(50), this.addedMs(90), this.addedMs(99), this.addedMs(99.9));
+        }
+
+        for (WebXTunnel tunnel : tunnels) {
+            tunnel.disconnect();
+        }
+        for (Thread reader : readers) {
+            reader.join(1000);
+        }
+        router.stop();
+    }
+
+    /**
+     * Resets the measurements of both paths
+     */
+    private void reset() {
+        this.directLatency.reset();
+        this.relayLatency.reset();
+        this.directEchoes.set(0);
+        this.relayEchoes.set(0);
+    }
+
+    /**
+     * Sends probes at a fixed interval, alternating between the senders: each probe carries the time at which it is sent
+     * @param senders the senders of the probes
+     * @param probeCount the number of probes sent by each sender
+     * @param intervalMs the time between probes
+     * @throws Exception thrown if a probe cannot be sent
+     */
+    private void sendProbes(final ProbeSender[] senders, int probeCount, int intervalMs) throws Exception {
+        final long intervalNs = intervalMs * 1000000L;
+        long nextTime = System.nanoTime();
+        for (int i = 0; i < probeCount * senders.length; i++) {
+            final long waitNs = nextTime - System.nanoTime();
+            if (waitNs > 0) {
+                Thread.sleep(waitNs / 1000000, (int) (waitNs % 1000000));
+            }
+
+            // The relay writes the session and client Ids in the instruction: a new array is needed for each write
+            final byte[] instructionData = new byte[PROBE_SIZE];
+            final ByteBuffer buffer = ByteBuffer.wrap(instructionData).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putLong(SimulatedRouter.INSTRUCTION_HEADER_LENGTH, System.nanoTime());
+            buffer.putLong(SimulatedRouter.INSTRUCTION_HEADER_LENGTH + 8, SimulatedRouter.FRAME_MAGIC);
+            senders[i % senders.length].send(instructionData);
+            nextTime += intervalNs;
+        }
+    }
+
+    /**
+     * Starts a thread reading a tunnel until it is disconnected
+     * @param tunnel the tunnel
+     * @param latency the histogram of the round-trip times of the probes (null if the tunnel doesn't receive probes)
+     * @param echoes the number of echoes received (null if the tunnel doesn't receive probes)
+     * @param threadName the name of the thread
+     * @return the reader thread
+     */
+    private Thread startReader(final WebXTunnel tunnel, final Histogram latency, final AtomicLong echoes, final String threadName) {
+        final Thread reader = new Thread(() -> {
+            try {
+                byte[] data;
+                while ((data = tunnel.read()) != null) {
+                    if (latency != null) {
+                        this.onEcho(data, latency, echoes);
+                    }
+                }
+
+            } catch (WebXDisconnectedException | WebXClientException | WebXConnectionInterruptException exception) {
+                // Tunnel closed
+            }
+        }, threadName);
+        reader.setDaemon(true);
+        reader.start();
+        return reader;
+    }
+
+    /**
+     * Reads the echoes of the direct path until the measurement of the direct path ends
+     * @param socket the subscriber socket
+     */
+    private void readDirect(final ZMQ.Socket socket) {
+        while (this.running) {
+            final byte[] data = socket.recv(0);
+            if (data != null) {
+                this.onEcho(data, this.directLatency, this.directEchoes);
+            }
+        }
+    }
+
+    /**
+     * Records the round-trip time of a probe if the message is the echo of a probe
+     * @param data the message data
+     * @param latency the histogram of the round-trip times
+     * @param echoes the number of echoes received
+     */
+    private void onEcho(final byte[] data, final Histogram latency, final AtomicLong echoes) {
+        final long readTime = System.nanoTime();
+        if (data.length >= SimulatedRouter.MIN_FRAME_SIZE && ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).getInt(32) == SimulatedRouter.ECHO_MESSAGE_TYPE) {
+            final long sendTime = SimulatedRouter.publicationTime(data);
+            if (sendTime != 0) {
+                latency.record((readTime - sendTime) / 1000);
+                echoes.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns the difference between the round-trip times through the relay and without the relay at a given percentile
+     * @param percentile the percentile
+     * @return the added latency in milliseconds
+     */
+    private double addedMs(double percentile) {
+        return (this.relayLatency.getPercentile(percentile) - this.directLatency.getPercentile(percentile)) / 1000.0;
+    }
+
+    /**
+     * Prints the round-trip times of a path
+     * @param name the name of the path
+     * @param latency the histogram of the round-trip times
+     * @param lost the number of probes that have not been echoed
+     */
+    private void report(final String name, final Histogram latency, long lost) {
+        System.out.printf("%s round trip (ms): p50 %.3f, p90 %.3f, p99 %.3f, p99.9 %.3f, max %.3f (%d probes, %d lost)%n", name,
+            latency.getPercentile(50) / 1000.0, latency.getPercentile(90) / 1000.0, latency.getPercentile(99) / 1000.0,
+            latency.getPercentile(99.9) / 1000.0, latency.getPercentile(100) / 1000.0, latency.getTotalCount(), lost);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.simulator;
+
+import eu.ill.webx.WebXClientConfiguration;
+import eu.ill.webx.WebXHostConfiguration;
+import eu.ill.webx.WebXTunnel;
+import eu.ill.webx.exceptions.WebXClientException;
+import eu.ill.webx.exceptions.WebXConnectionException;
+import eu.ill.webx.metrics.Histogram;
+import eu.ill.webx.recording.TrafficRecorder;
+import eu.ill.webx.relay.RelayFixtures;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load suite running many tunnels against a simulated router: sessions are created for a number of users, clients are connected to
+ * each session and frames are published for every session at a given rate and size distribution. Each tunnel is read by its own thread.
+ * The suite reports the connection times, the throughput through the relay and the end-to-end latency of the frames (from publication
+ * by the simulator to the read of the tunnel).
+ * Options (name=value):
+ *  - sessions: number of sessions (default 10)
+ *  - clients: number of clients per session (default 1)
+ *  - duration: duration of the measurement in seconds (default 30)
+ *  - rate: frames per second published for each session (default 60)
+ *  - size: median frame size in bytes (default 4096)
+ *  - sigma: standard deviation of the logarithm of the frame size, 0 for a fixed size (default 1.0)
+ *  - instructions: instructions per second written to each tunnel (default 0)
+ *  - startDelay: time in milliseconds for a session to start (default 0)
+ *  - record: path of a file in which the traffic of the relay is recorded (see ReplaySuite, default none)
+ */
+public class LoadSuite {
+
+    private static final int MAX_FRAME_SIZE = 4 * 1024 * 1024;
+    private static final int INSTRUCTION_SIZE = 32;
+
+    private final Histogram connectTimes = Histogram.exponential(100, 1.2, 80);
+    private final TunnelReaders readers = new TunnelReaders();
+    private final AtomicLong instructionsWritten = new AtomicLong();
+
+    /**
+     * Main method of the suite
+     * @param args the options (name=value)
+     * @throws Exception thrown if the suite fails
+     */
+    public static void main(String[] args) throws Exception {
+        final SuiteOptions options = new SuiteOptions(args);
+        new LoadSuite().run(options);
+        System.exit(0);
+    }
+
+    /**
+     * Default constructor
+     */
+    public LoadSuite() {
+    }
+
+    /**
+     * Runs the suite
+     * @param options the options of the suite
+     * @throws Exception thrown if the suite fails
+     */
+    public void run(final SuiteOptions options) throws Exception {
+        final int sessionCount = options.getInt("sessions", 10);
+        final int clientsPerSession = options.getInt("clients", 1);
+        final int durationS = options.getInt("duration", 30);
+        final double sigma = options.getDouble("sigma", 1.0);
+        final int size = options.getInt("size", 4096);
+        final double instructionRate = options.getDouble("instructions", 0);
+
+        final SimulatedRouter router = new SimulatedRouter()
+            .withSessionStartDelayMs(options.getInt("startDelay", 0))
+            .withFrameProfile(new FrameProfile()
+                .withFramesPerSecond(options.getDouble("rate", 60))
+                .withSizes(sigma > 0 ? SizeDistribution.logNormal(size, sigma, MAX_FRAME_SIZE) : SizeDistribution.fixed(size))
+                .withTypes(4, 5));
+        final int port = router.start();
+        System.out.printf("Simulated router listening on port %d%n", port);
+
+        final String recordPath = options.getString("record", null);
+        final TrafficRecorder recorder = recordPath != null ? new TrafficRecorder(Path.of(recordPath)) : null;
+        final WebXHostConfiguration hostConfiguration = new WebXHostConfiguration("localhost", port)
+            .withTrafficRecorder(recorder);
+        final List<WebXTunnel> tunnels = new ArrayList<>();
+
+        final long connectStartTime = System.nanoTime();
+        for (int session = 0; session < sessionCount; session++) {
+            for (int client = 0; client < clientsPerSession; client++) {
+                final WebXTunnel tunnel = this.connect(hostConfiguration, "user" + session);
+                tunnels.add(tunnel);
+
+                this.readers.start(tunnel, String.format("webx-load-reader-%d-%d", session, client));
+            }
+        }
+        final long connectDurationNs = System.nanoTime() - connectStartTime;
+        System.out.printf("Connected %d tunnels to %d sessions in %d ms%n", tunnels.size(), router.getSessionCount(), connectDurationNs / 1000000);
+
+        // Ignore the frames read while the tunnels were connecting
+        Thread.sleep(1000);
+        this.reset();
+        final long framesPublished = router.getFramesPublished();
+        final long bytesPublished = router.getBytesPublished();
+        final long instructionsReceived = router.getInstructionsReceived();
+
+        final long startTime = System.nanoTime();
+        final long endTime = startTime + durationS * 1000000000L;
+        if (instructionRate > 0) {
+            this.writeInstructions(tunnels, instructionRate, endTime);
+
+        } else {
+            Thread.sleep(durationS * 1000L);
+        }
+        final double elapsedS = (System.nanoTime() - startTime) / 1.0e9;
+
+        this.report(router.getFramesPublished() - framesPublished, router.getBytesPublished() - bytesPublished, router.getInstructionsReceived() - instructionsReceived, elapsedS);
+
+        for (WebXTunnel tunnel : tunnels) {
+            tunnel.disconnect();
+        }
+        this.readers.join(1000);
+        router.stop();
+
+        if (recorder != null) {
+            recorder.close();
+            System.out.printf("Recorded %d records (%d bytes, %d dropped) to %s%n", recorder.getRecordCount(), recorder.getByteCount(), recorder.getDroppedRecordCount(), recorder.getPath());
+        }
+    }
+
+    /**
+     * Connects a tunnel, recording the connection time
+     * @param hostConfiguration the host configuration
+     * @param username the user of the session
+     * @return the connected tunnel
+     * @throws WebXConnectionException thrown if the connection fails
+     */
+    private WebXTunnel connect(final WebXHostConfiguration hostConfiguration, final String username) throws WebXConnectionException {
+        final long startTime = System.nanoTime();
+        final WebXTunnel tunnel = WebXTunnel.Connect(hostConfiguration, WebXClientConfiguration.ForLogin(username, "password", RelayFixtures.CLIENT_VERSION));
+        this.connectTimes.record((System.nanoTime() - startTime) / 1000);
+        return tunnel;
+    }
+
+    /**
+     * Writes instructions to all tunnels at a given rate until the end time
+     * @param tunnels the tunnels
+     * @param instructionRate the number of instructions per second for each tunnel
+     * @param endTime the end time (System.nanoTime)
+     * @throws InterruptedException thrown if the thread is interrupted
+     * @throws WebXClientException thrown if a write fails
+     */
+    private void writeInstructions(final List<WebXTunnel> tunnels, double instructionRate, long endTime) throws InterruptedException, WebXClientException {
+        final long periodNs = (long) (1.0e9 / instructionRate);
+        long nextTime = System.nanoTime();
+        while (nextTime - endTime < 0) {
+            for (WebXTunnel tunnel : tunnels) {
+                // The relay writes the session and client Ids in the instruction: a new array is needed for each write
+                tunnel.write(new byte[INSTRUCTION_SIZE]);
+                this.instructionsWritten.incrementAndGet();
+            }
+            nextTime += periodNs;
+            final long waitNs = nextTime - System.nanoTime();
+            if (waitNs > 0) {
+                Thread.sleep(waitNs / 1000000, (int) (waitNs % 1000000));
+            }
+        }
+    }
+
+    /**
+     * Resets the measurements
+     */
+    private void reset() {
+        this.readers.reset();
+        this.instructionsWritten.set(0);
+    }
+
+    /**
+     * Prints the results of the suite
+     * @param framesPublished the number of frames published by the simulator during the measurement
+     * @param bytesPublished the number of bytes published by the simulator during the measurement
+     * @param instructionsReceived the number of instructions received by the simulator during the measurement
+     * @param elapsedS the duration of the measurement in seconds
+     */
+    private void report(long framesPublished, long bytesPublished, long instructionsReceived, double elapsedS) {
+        System.out.printf("Connection time (ms): p50 %.1f, p99 %.1f, max %.1f%n",
+            this.connectTimes.getPercentile(50) / 1000.0, this.connectTimes.getPercentile(99) / 1000.0, this.connectTimes.getPercentile(100) / 1000.0);
+        System.out.printf("Published: %.0f frames/s, %.2f MB/s%n", framesPublished / elapsedS, bytesPublished / elapsedS / 1.0e6);
+        if (this.instructionsWritten.get() > 0) {
+            System.out.printf("Instructions: %.0f/s written, %.0f/s received%n", this.instructionsWritten.get() / elapsedS, instructionsReceived / elapsedS);
+        }
+        this.readers.report(elapsedS);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.simulator;
+
+import eu.ill.webx.WebXClientConfiguration;
+import eu.ill.webx.WebXHostConfiguration;
+import eu.ill.webx.WebXTunnel;
+import eu.ill.webx.model.SessionId;
+import eu.ill.webx.recording.TrafficReader;
+import eu.ill.webx.recording.TrafficRecord;
+import eu.ill.webx.relay.RelayFixtures;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Replay suite feeding a traffic recording (see TrafficRecorder) back through the relay: the messages of the recording are published by a
+ * simulated router to every session (multiplexing the recorded traffic over many sessions) and the instructions of the recording are written
+ * to every tunnel, at the recorded times scaled by the replay speed. The suite reports the throughput, the end-to-end latency of the frames and
+ * the duration of the replay compared to the recorded duration (a replay at maximum speed gives the capacity of the relay for the recorded traffic).
+ * Options (name=value):
+ *  - file: path of the recording (required)
+ *  - speed: replay speed, a multiple of the recorded speed or "max" to replay without waiting (default 1)
+ *  - sessions: number of sessions (default 10)
+ *  - clients: number of clients per session (default 1)
+ *  - loops: number of times the recording is replayed (default 1)
+ *  - session: hex session Id of the recorded session to replay, all recorded sessions if not specified
+ */
+public class ReplaySuite {
+
+    private static final int DISCONNECT_MESSAGE_TYPE = 9;
+
+    private final TunnelReaders readers = new TunnelReaders();
+    private long instructionsWritten = 0;
+    private long recordsSkipped = 0;
+
+    /**
+     * Main method of the suite
+     * @param args the options (name=value)
+     * @throws Exception thrown if the suite fails
+     */
+    public static void main(String[] args) throws Exception {
+        final SuiteOptions options = new SuiteOptions(args);
+        new ReplaySuite().run(options);
+        System.exit(0);
+    }
+
+    /**
+     * Default constructor
+     */
+    public ReplaySuite() {
+    }
+
+    /**
+     * Runs the suite
+     * @param options the options of the suite
+     * @throws Exception thrown if the suite fails
+     */
+    public void run(final SuiteOptions options) throws Exception {
+        final String file = options.getString("file", null);
+        if (file == null) {
+            throw new IllegalArgumentException("The path of the recording must be specified (file=path)");
+        }
+        final String speedOption = options.getString("speed", "1");
+        final double speed = speedOption.equals("max") ? 0 : Double.parseDouble(speedOption);
+        final int sessionCount = options.getInt("sessions", 10);
+        final int clientsPerSession = options.getInt("clients", 1);
+        final int loops = options.getInt("loops", 1);
+        final String sessionFilter = options.getString("session", null);
+        final byte[] recordedSessionId = sessionFilter != null ? new SessionId(sessionFilter).bytes() : null;
+
+        // The simulated router only publishes the replayed frames
+        final SimulatedRouter router = new SimulatedRouter()
+            .withFrameProfile(new FrameProfile().withFramesPerSecond(0));
+        final int port = router.start();
+        System.out.printf("Simulated router listening on port %d%n", port);
+
+        final WebXHostConfiguration hostConfiguration = new WebXHostConfiguration("localhost", port);
+        final List<WebXTunnel> tunnels = new ArrayList<>();
+        for (int session = 0; session < sessionCount; session++) {
+            for (int client = 0; client < clientsPerSession; client++) {
+                final WebXTunnel tunnel = WebXTunnel.Connect(hostConfiguration, WebXClientConfiguration.ForLogin("user" + session, "password", RelayFixtures.CLIENT_VERSION));
+                tunnels.add(tunnel);
+
+                this.readers.start(tunnel, String.format("webx-replay-reader-%d-%d", session, client));
+            }
+        }
+        System.out.printf("Connected %d tunnels to %d sessions%n", tunnels.size(), router.getSessionCount());
+
+        // Ignore the messages read while the tunnels were connecting
+        Thread.sleep(1000);
+        this.readers.reset();
+        final long framesPublished = router.getFramesPublished();
+        final long bytesPublished = router.getBytesPublished();
+        final long instructionsReceived = router.getInstructionsReceived();
+
+        final long startTime = System.nanoTime();
+        long recordedDurationNs = 0;
+        for (int loop = 0; loop < loops; loop++) {
+            recordedDurationNs += this.replay(Path.of(file), router, tunnels, speed, recordedSessionId);
+        }
+        final long replayDurationNs = System.nanoTime() - startTime;
+
+        // Wait for the relay to deliver the last frames
+        Thread.sleep(500);
+        final double elapsedS = (System.nanoTime() - startTime) / 1.0e9;
+
+        this.report(router.getFramesPublished() - framesPublished, router.getBytesPublished() - bytesPublished, router.getInstructionsReceived() - instructionsReceived,
+            elapsedS, recordedDurationNs, replayDurationNs);
+
+        for (WebXTunnel tunnel : tunnels) {
+            tunnel.disconnect();
+        }
+        this.readers.join(1000);
+        router.stop();
+    }
+
+    /**
+     * Replays the recording once
+     * @param path the path of the recording
+     * @param router the simulated router publishing the messages
+     * @param tunnels the tunnels to which the instructions are written
+     * @param speed the replay speed (0 to replay without waiting)
+     * @param recordedSessionId the recorded session to replay (null for all sessions)
+     * @return the recorded duration in nanoseconds
+     * @throws Exception thrown if the recording cannot be read or the replay is interrupted
+     */
+    private long replay(final Path path, final SimulatedRouter router, final List<WebXTunnel> tunnels, double speed, final byte[] recordedSessionId) throws Exception {
+        try (TrafficReader reader = new TrafficReader(path)) {
+            final long startTime = System.nanoTime();
+            long firstRecordTime = -1;
+            long lastRecordTime = 0;
+            TrafficRecord record;
+            while ((record = reader.next()) != null) {
+                if (!this.isReplayed(record, recordedSessionId)) {
+                    this.recordsSkipped++;
+                    continue;
+                }
+
+                if (firstRecordTime < 0) {
+                    firstRecordTime = record.timeNs();
+                }
+                lastRecordTime = record.timeNs();
+
+                if (speed > 0) {
+                    final long waitNs = startTime + (long) ((record.timeNs() - firstRecordTime) / speed) - System.nanoTime();
+                    if (waitNs > 0) {
+                        Thread.sleep(waitNs / 1000000, (int) (waitNs % 1000000));
+                    }
+                }
+
+                if (record.type() == TrafficRecord.Type.MESSAGE) {
+                    router.publishToSessions(record.data());
+
+                } else {
+                    for (WebXTunnel tunnel : tunnels) {
+                        // The relay writes the session and client Ids in the instruction: a new array is needed for each write
+                        tunnel.write(Arrays.copyOf(record.data(), record.data().length));
+                        this.instructionsWritten++;
+                    }
+                }
+            }
+            return firstRecordTime < 0 ? 0 : lastRecordTime - firstRecordTime;
+        }
+    }
+
+    /**
+     * Determines whether a record is replayed: disconnect messages (which would disconnect the tunnels) and the records of other sessions
+     * are ignored
+     * @param record the record
+     * @param recordedSessionId the recorded session to replay (null for all sessions)
+     * @return true if the record is replayed
+     */
+    private boolean isReplayed(final TrafficRecord record, final byte[] recordedSessionId) {
+        final byte[] data = record.data();
+        if (record.type() == TrafficRecord.Type.MESSAGE) {
+            if (data.length < 48 || ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).getInt(32) == DISCONNECT_MESSAGE_TYPE) {
+                return false;
+            }
+        }
+        return recordedSessionId == null || (data.length >= 16 && Arrays.equals(data, 0, 16, recordedSessionId, 0, 16));
+    }
+
+    /**
+     * Prints the results of the suite
+     * @param framesPublished the number of frames published by the simulator during the replay
+     * @param bytesPublished the number of bytes published by the simulator during the replay
+     * @param instructionsReceived the number of instructions received by the simulator during the replay
+     * @param elapsedS the duration of the measurement in seconds
+     * @param recordedDurationNs the recorded duration of the replayed traffic
+     * @param replayDurationNs the duration of the replay
+     */
+    private void report(long framesPublished, long bytesPublished, long instructionsReceived, double elapsedS, long recordedDurationNs, long replayDurationNs) {
+        System.out.printf("Replayed %.1f s of recorded traffic in %.1f s (%d records skipped)%n", recordedDurationNs / 1.0e9, replayDurationNs / 1.0e9, this.recordsSkipped);
+        System.out.printf("Published: %d frames, %.0f frames/s, %.2f MB/s%n", framesPublished, framesPublished / elapsedS, bytesPublished / elapsedS / 1.0e6);
+        if (this.instructionsWritten > 0) {
+            System.out.printf("Instructions: %d written, %d received%n", this.instructionsWritten, instructionsReceived);
+        }
+        this.readers.report(elapsedS);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.simulator;
+
+/**
+ * Fault injected by the simulated router in the replies to the requests of a given command
+ * @param type the type of fault
+ * @param delayMs the delay added to the reply (DELAY faults only)
+ */
+public record ReplyFault(Type type, long delayMs) {
+
+    /**
+     * The types of reply faults
+     */
+    public enum Type {
+        /**
+         * The reply is sent after a delay (a request timeout if the delay is longer than the socket timeout of the relay)
+         */
+        DELAY,
+
+        /**
+         * No reply is sent: the request of the relay times out
+         */
+        DROP,
+
+        /**
+         * An empty reply is sent (as a legacy router does for unknown commands)
+         */
+        EMPTY,
+
+        /**
+         * A reply that cannot be parsed is sent
+         */
+        INVALID
+    }
+
+    /**
+     * Returns a fault adding latency to the replies
+     * @param delayMs the delay in milliseconds
+     * @return the reply fault
+     */
+    public static ReplyFault delay(long delayMs) {
+        return new ReplyFault(Type.DELAY, delayMs);
+    }
+
+    /**
+     * Returns a fault dropping the replies
+     * @return the reply fault
+     */
+    public static ReplyFault drop() {
+        return new ReplyFault(Type.DROP, 0);
+    }
+
+    /**
+     * Returns a fault replacing the replies by empty replies
+     * @return the reply fault
+     */
+    public static ReplyFault empty() {
+        return new ReplyFault(Type.EMPTY, 0);
+    }
+
+    /**
+     * Returns a fault replacing the replies by invalid replies
+     * @return the reply fault
+     */
+    public static ReplyFault invalid() {
+        return new ReplyFault(Type.INVALID, 0);
+    }
+}
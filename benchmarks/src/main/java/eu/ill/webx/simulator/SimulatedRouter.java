@@ -0,0 +1,771 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.simulator;
+
+import eu.ill.webx.model.SessionId;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZFrame;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMsg;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for a WebX Router and its WebX Engines, speaking the router protocol over real ZMQ sockets so that the relay
+ * can be exercised end-to-end without X11 sessions.
+ * The router answers the client connector requests (comm, connect, disconnect, ping) and the CURVE-encrypted session channel requests
+ * (create_async, create, status, connect, disconnect, ping). Sessions are created per user and become running after a configurable
+ * start delay. For every session with connected clients, frames are published with a valid header (session Id, mask of all the
+ * connected clients, timestamp, type and sequence number) at the rate and with the sizes of the frame profile.
+ * The payload of each frame carries the time of publication (System.nanoTime at FRAME_TIME_OFFSET) followed by FRAME_MAGIC so that
+ * in-process readers can measure the end-to-end latency through the relay.
+ * Instructions received from the relay on the collector socket are counted. When the instruction echo is enabled each instruction is also
+ * published back to the client that sent it as a message of type ECHO_MESSAGE_TYPE, the payload of the instruction (following its header)
+ * becoming the payload of the message: a time written by the client at offset 32 of the instruction is found at FRAME_TIME_OFFSET of the echo.
+ * Faults can be injected while the router is running to measure how the relay detects them and recovers: latency, dropped, empty or
+ * invalid replies to the requests of a given command (see ReplyFault), pauses of the frame publisher and restarts of the router.
+ */
+public class SimulatedRouter {
+
+    /**
+     * Offset in the frame data of the time of publication (System.nanoTime, little endian)
+     */
+    public static final int FRAME_TIME_OFFSET = 48;
+
+    /**
+     * Offset in the frame data of the magic number identifying frames published by the simulator
+     */
+    public static final int FRAME_MAGIC_OFFSET = 56;
+
+    /**
+     * Magic number identifying frames published by the simulator
+     */
+    public static final long FRAME_MAGIC = 0x315845424d495357L;
+
+    /**
+     * The minimum size of a published frame
+     */
+    public static final int MIN_FRAME_SIZE = 64;
+
+    /**
+     * Message type Id of the echoes of the instructions
+     */
+    public static final int ECHO_MESSAGE_TYPE = 100;
+
+    /**
+     * Length of the header of an instruction: the payload of an echoed instruction starts after the header
+     */
+    public static final int INSTRUCTION_HEADER_LENGTH = 32;
+
+    private static final String STANDALONE_SESSION_ID = "00000000000000000000000000000000";
+    private static final int POLL_TIMEOUT_MS = 100;
+    private static final int PUBLISH_QUEUE_CAPACITY = 4096;
+    private static final String INVALID_REPLY = "invalid";
+
+    /**
+     * A reply held back by a DELAY fault
+     * @param dueTime the time at which the reply is sent (System.nanoTime)
+     * @param socket the socket of the request
+     * @param reply the reply message (including the routing envelope)
+     */
+    private record PendingReply(long dueTime, ZMQ.Socket socket, ZMsg reply) {
+    }
+
+    private int connectorPort = 0;
+    private boolean standalone = false;
+    private boolean asyncCreation = true;
+    private boolean engineTimeInPing = true;
+    private long sessionStartDelayMs = 0;
+    private FrameProfile frameProfile = new FrameProfile();
+
+    private final Map<String, SimulatedSession> sessions = new ConcurrentHashMap<>();
+    private final Map<String, SimulatedSession> sessionsByUser = new ConcurrentHashMap<>();
+    private final Random random = new Random();
+    private final Map<String, ReplyFault> replyFaults = new ConcurrentHashMap<>();
+    private final PriorityQueue<PendingReply> pendingReplies = new PriorityQueue<>(Comparator.comparingLong(PendingReply::dueTime));
+    private volatile boolean publisherPaused = false;
+    private boolean instructionEcho = false;
+    private final LinkedBlockingQueue<byte[]> publishQueue = new LinkedBlockingQueue<>(PUBLISH_QUEUE_CAPACITY);
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong framesPublished = new AtomicLong();
+    private final AtomicLong bytesPublished = new AtomicLong();
+    private final AtomicLong instructionsReceived = new AtomicLong();
+
+    private ZContext context;
+    private ZMQ.Socket connectorSocket;
+    private ZMQ.Socket sessionSocket;
+    private ZMQ.Socket publisherSocket;
+    private ZMQ.Socket collectorSocket;
+    private ZMQ.Curve.KeyPair keyPair;
+    private int publisherPort;
+    private int collectorPort;
+    private int sessionPort;
+    private Thread requestThread;
+    private Thread publisherThread;
+    private volatile boolean running = false;
+
+    /**
+     * Default constructor
+     */
+    public SimulatedRouter() {
+    }
+
+    /**
+     * Sets the port of the client connector socket (default 0: a free port is chosen when the router starts)
+     * @param connectorPort the connector port
+     * @return this router
+     */
+    public SimulatedRouter withConnectorPort(int connectorPort) {
+        this.connectorPort = connectorPort;
+        return this;
+    }
+
+    /**
+     * Simulates a standalone WebX Engine rather than a WebX Router: no session channel, a single session with a null session Id
+     * @param standalone true to simulate a standalone engine
+     * @return this router
+     */
+    public SimulatedRouter withStandalone(boolean standalone) {
+        this.standalone = standalone;
+        return this;
+    }
+
+    /**
+     * Specifies whether the router supports asynchronous session creation (default true). If false the router answers create_async
+     * requests with an empty response, as legacy routers do.
+     * @param asyncCreation true if asynchronous creation is supported
+     * @return this router
+     */
+    public SimulatedRouter withAsyncCreation(boolean asyncCreation) {
+        this.asyncCreation = asyncCreation;
+        return this;
+    }
+
+    /**
+     * Specifies whether the ping responses include the time of the engine (default true)
+     * @param engineTimeInPing true to include the engine time
+     * @return this router
+     */
+    public SimulatedRouter withEngineTimeInPing(boolean engineTimeInPing) {
+        this.engineTimeInPing = engineTimeInPing;
+        return this;
+    }
+
+    /**
+     * Sets the time taken by a new session to start (default 0: sessions are running immediately)
+     * @param sessionStartDelayMs the start delay in milliseconds
+     * @return this router
+     */
+    public SimulatedRouter withSessionStartDelayMs(long sessionStartDelayMs) {
+        this.sessionStartDelayMs = sessionStartDelayMs;
+        return this;
+    }
+
+    /**
+     * Specifies whether the instructions received from the relay are published back as echo messages (default false)
+     * @param instructionEcho true to echo the instructions
+     * @return this router
+     */
+    public SimulatedRouter withInstructionEcho(boolean instructionEcho) {
+        this.instructionEcho = instructionEcho;
+        return this;
+    }
+
+    /**
+     * Sets the profile of the frames published for each session with connected clients (default: no frames)
+     * @param frameProfile the frame profile
+     * @return this router
+     */
+    public SimulatedRouter withFrameProfile(final FrameProfile frameProfile) {
+        this.frameProfile = frameProfile;
+        return this;
+    }
+
+    /**
+     * Binds the sockets and starts the request and publisher threads
+     * @return the port of the client connector socket
+     */
+    public synchronized int start() {
+        if (!this.running) {
+            this.context = new ZContext();
+
+            this.connectorSocket = this.createSocket(SocketType.ROUTER);
+            this.connectorPort = this.bind(this.connectorSocket, this.connectorPort);
+
+            this.publisherSocket = this.createSocket(SocketType.PUB);
+            this.publisherPort = this.bind(this.publisherSocket, this.publisherPort);
+
+            this.collectorSocket = this.createSocket(SocketType.SUB);
+            this.collectorSocket.subscribe(ZMQ.SUBSCRIPTION_ALL);
+            this.collectorPort = this.bind(this.collectorSocket, this.collectorPort);
+
+            if (!this.standalone) {
+                if (this.keyPair == null) {
+                    this.keyPair = ZMQ.Curve.generateKeyPair();
+                }
+                this.sessionSocket = this.createSocket(SocketType.ROUTER);
+                this.sessionSocket.setCurveServer(true);
+                this.sessionSocket.setCurveSecretKey(this.keyPair.secretKey.getBytes());
+                this.sessionPort = this.bind(this.sessionSocket, this.sessionPort);
+            }
+
+            this.running = true;
+
+            this.requestThread = new Thread(this::requestLoop, "webx-simulator-requests");
+            this.requestThread.setDaemon(true);
+            this.requestThread.start();
+
+            this.publisherThread = new Thread(this::publisherLoop, "webx-simulator-publisher");
+            this.publisherThread.setDaemon(true);
+            this.publisherThread.start();
+        }
+
+        return this.connectorPort;
+    }
+
+    /**
+     * Stops the threads and closes the sockets. Sessions are kept so that a restarted router (on the same ports) continues to serve them.
+     */
+    public synchronized void stop() {
+        if (this.running) {
+            this.running = false;
+            try {
+                this.requestThread.join();
+                this.publisherThread.join();
+
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            this.pendingReplies.clear();
+            this.context.close();
+            this.context = null;
+        }
+    }
+
+    /**
+     * Simulates a restart of the router: the sockets are closed and bound again on the same ports (with the same encryption keys) after a downtime
+     * @param downtimeMs the time during which the router is stopped
+     * @param keepSessions true if the sessions survive the restart, false if all sessions are lost
+     * @throws InterruptedException thrown if the downtime is interrupted
+     */
+    public void restart(long downtimeMs, boolean keepSessions) throws InterruptedException {
+        this.stop();
+        if (!keepSessions) {
+            this.clearSessions();
+        }
+        Thread.sleep(downtimeMs);
+        this.start();
+    }
+
+    /**
+     * Injects a fault in the replies to the requests of a command (for example "ping", "create_async" or "connect"). The fault can
+     * be limited to the requests of a single session by appending the session Id to the command (for example "ping,&lt;sessionId&gt;").
+     * @param command the request command (optionally followed by a session Id)
+     * @param fault the fault (null to remove the fault of the command)
+     */
+    public void setReplyFault(final String command, final ReplyFault fault) {
+        if (fault == null) {
+            this.replyFaults.remove(command);
+
+        } else {
+            this.replyFaults.put(command, fault);
+        }
+    }
+
+    /**
+     * Removes all reply faults and resumes the publisher
+     */
+    public void clearFaults() {
+        this.replyFaults.clear();
+        this.publisherPaused = false;
+    }
+
+    /**
+     * Pauses or resumes the publication of frames. Frames are not accumulated during the pause.
+     * @param publisherPaused true to pause the publisher
+     */
+    public void setPublisherPaused(boolean publisherPaused) {
+        this.publisherPaused = publisherPaused;
+    }
+
+    /**
+     * Returns true if the publication of frames is paused
+     * @return true if paused
+     */
+    public boolean isPublisherPaused() {
+        return publisherPaused;
+    }
+
+    /**
+     * Returns the port of the client connector socket
+     * @return the connector port (0 if the router has not been started)
+     */
+    public int getPort() {
+        return connectorPort;
+    }
+
+    /**
+     * Returns the port of the message publisher socket
+     * @return the publisher port (0 if the router has not been started)
+     */
+    public int getPublisherPort() {
+        return publisherPort;
+    }
+
+    /**
+     * Returns the port of the instruction collector socket
+     * @return the collector port (0 if the router has not been started)
+     */
+    public int getCollectorPort() {
+        return collectorPort;
+    }
+
+    /**
+     * Returns true if the router is running
+     * @return true if running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Returns the number of sessions
+     * @return the number of sessions
+     */
+    public int getSessionCount() {
+        return this.sessions.size();
+    }
+
+    /**
+     * Returns the total number of clients connected to all sessions
+     * @return the number of clients
+     */
+    public int getClientCount() {
+        int clientCount = 0;
+        for (SimulatedSession session : this.sessions.values()) {
+            clientCount += session.getClientCount();
+        }
+        return clientCount;
+    }
+
+    /**
+     * Returns the number of requests received on the connector and session sockets
+     * @return the request count
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Returns the number of frames published
+     * @return the frame count
+     */
+    public long getFramesPublished() {
+        return framesPublished.get();
+    }
+
+    /**
+     * Returns the number of bytes published
+     * @return the byte count
+     */
+    public long getBytesPublished() {
+        return bytesPublished.get();
+    }
+
+    /**
+     * Returns the number of instructions received from the relay
+     * @return the instruction count
+     */
+    public long getInstructionsReceived() {
+        return instructionsReceived.get();
+    }
+
+    /**
+     * Removes a session (as if its WebX Engine had terminated): subsequent pings of the session fail
+     * @param sessionId the session Id (hexadecimal)
+     */
+    public void removeSession(final String sessionId) {
+        final SimulatedSession session = this.sessions.remove(sessionId.toUpperCase());
+        if (session != null && session.getUsername() != null) {
+            this.sessionsByUser.remove(session.getUsername(), session);
+        }
+    }
+
+    /**
+     * Removes all sessions (as if all WebX Engines had terminated): subsequent pings of the sessions fail
+     */
+    public void clearSessions() {
+        this.sessions.clear();
+        this.sessionsByUser.clear();
+    }
+
+    /**
+     * Returns the response to a request from the relay. Called from the request thread.
+     * @param request the request
+     * @return the response
+     */
+    String handleRequest(final String request) {
+        final String[] elements = request.split(",");
+        final String command = elements[0];
+
+        if (command.equals("comm")) {
+            if (this.standalone) {
+                return String.format("%d,%d", this.publisherPort, this.collectorPort);
+            }
+            return String.format("%d,%d,%d,%s", this.publisherPort, this.collectorPort, this.sessionPort, this.keyPair.publicKey);
+
+        } else if (command.equals("create_async")) {
+            if (!this.asyncCreation || elements.length < 3) {
+                return "";
+            }
+            final SimulatedSession session = this.createSession(elements[1]);
+            return String.format("0,%s,%d", session.getSessionId().hexString(), session.isRunning() ? 1 : 0);
+
+        } else if (command.equals("create")) {
+            if (elements.length < 3) {
+                return "1,Invalid request parameters";
+            }
+            final SimulatedSession session = this.createSession(elements[1]);
+            return String.format("0,%s", session.getSessionId().hexString());
+
+        } else if (command.equals("status") && elements.length > 1) {
+            final SimulatedSession session = this.sessions.get(elements[1]);
+            if (session == null) {
+                return "error";
+            }
+            return String.format("%s,%d", elements[1], session.isRunning() ? 1 : 0);
+
+        } else if (command.equals("connect") && elements.length > 1) {
+            SimulatedSession session = this.sessions.get(elements[1]);
+            if (session == null && this.standalone && elements[1].equals(STANDALONE_SESSION_ID)) {
+                session = this.sessions.computeIfAbsent(STANDALONE_SESSION_ID, id -> new SimulatedSession(new SessionId(id), null, 0));
+            }
+            if (session == null || !session.isRunning()) {
+                return "";
+            }
+            final long[] client = session.connectClient();
+            if (client == null) {
+                return "";
+            }
+            return String.format("%08x,%016x", (int) client[0], client[1]);
+
+        } else if (command.equals("disconnect") && elements.length > 2) {
+            final SimulatedSession session = this.sessions.get(elements[1]);
+            if (session != null) {
+                session.disconnectClient(Integer.parseUnsignedInt(elements[2], 16));
+            }
+            return "0";
+
+        } else if (command.equals("ping") && elements.length > 1) {
+            final SimulatedSession session = this.sessions.get(elements[1]);
+            if (session == null) {
+                return String.format("pang,%s,Unknown session", elements[1]);
+            }
+            return this.engineTimeInPing ? String.format("pong,%s,%d", elements[1], System.currentTimeMillis()) : String.format("pong,%s", elements[1]);
+        }
+
+        return "";
+    }
+
+    /**
+     * Returns the session of a user, creating it if necessary
+     * @param usernameBase64 the base64 encoded username
+     * @return the session
+     */
+    private SimulatedSession createSession(final String usernameBase64) {
+        final String username = new String(Base64.getDecoder().decode(usernameBase64), StandardCharsets.UTF_8);
+        return this.sessionsByUser.computeIfAbsent(username, name -> {
+            final byte[] sessionIdData = new byte[16];
+            synchronized (this.random) {
+                this.random.nextBytes(sessionIdData);
+            }
+            final SimulatedSession session = new SimulatedSession(new SessionId(sessionIdData), name, this.sessionStartDelayMs);
+            this.sessions.put(session.getSessionId().hexString(), session);
+            return session;
+        });
+    }
+
+    /**
+     * Loop receiving the requests of the connector and session sockets, and the instructions of the collector socket
+     */
+    private void requestLoop() {
+        final ZMQ.Poller poller = this.context.createPoller(3);
+        final int connectorIndex = poller.register(this.connectorSocket, ZMQ.Poller.POLLIN);
+        final int collectorIndex = poller.register(this.collectorSocket, ZMQ.Poller.POLLIN);
+        final int sessionIndex = this.sessionSocket != null ? poller.register(this.sessionSocket, ZMQ.Poller.POLLIN) : -1;
+
+        while (this.running) {
+            final PendingReply nextReply = this.pendingReplies.peek();
+            poller.poll(nextReply == null ? POLL_TIMEOUT_MS : Math.max(0, Math.min(POLL_TIMEOUT_MS, (nextReply.dueTime() - System.nanoTime()) / 1000000)));
+            this.sendPendingReplies();
+
+            if (poller.pollin(connectorIndex)) {
+                this.handleRequests(this.connectorSocket);
+            }
+            if (sessionIndex >= 0 && poller.pollin(sessionIndex)) {
+                this.handleRequests(this.sessionSocket);
+            }
+            if (poller.pollin(collectorIndex)) {
+                byte[] instructionData;
+                while ((instructionData = this.collectorSocket.recv(ZMQ.DONTWAIT)) != null) {
+                    this.instructionsReceived.incrementAndGet();
+                    if (this.instructionEcho) {
+                        this.echo(instructionData);
+                    }
+                }
+            }
+        }
+        poller.close();
+    }
+
+    /**
+     * Handles all the requests immediately available on a router socket, applying the reply fault of the command if there is one
+     * @param socket the socket
+     */
+    private void handleRequests(final ZMQ.Socket socket) {
+        ZMsg message;
+        while ((message = ZMsg.recvMsg(socket, ZMQ.DONTWAIT)) != null) {
+            // The message is the routing envelope (identity, request Id of correlated requests and delimiter) followed by the request
+            final ZFrame data = message.removeLast();
+            final String request = data == null ? "" : data.getString(ZMQ.CHARSET);
+            this.requestCount.incrementAndGet();
+
+            final ReplyFault fault = this.findReplyFault(request);
+            final ReplyFault.Type faultType = fault == null ? null : fault.type();
+            if (faultType == ReplyFault.Type.DROP) {
+                continue;
+            }
+
+            final String response = this.handleRequest(request);
+            final ZMsg reply = message;
+            reply.add(faultType == ReplyFault.Type.EMPTY ? "" : faultType == ReplyFault.Type.INVALID ? INVALID_REPLY : response);
+
+            if (faultType == ReplyFault.Type.DELAY) {
+                this.pendingReplies.add(new PendingReply(System.nanoTime() + fault.delayMs() * 1000000, socket, reply));
+
+            } else {
+                reply.send(socket);
+            }
+        }
+    }
+
+    /**
+     * Returns the fault injected for a request: the fault of the command and session Id of the request if there is one, otherwise the fault of the command
+     * @param request the request
+     * @return the reply fault, null if no fault is injected
+     */
+    private ReplyFault findReplyFault(final String request) {
+        if (this.replyFaults.isEmpty()) {
+            return null;
+        }
+        final String[] elements = request.split(",");
+        final ReplyFault sessionFault = elements.length > 1 ? this.replyFaults.get(elements[0] + "," + elements[1]) : null;
+        return sessionFault != null ? sessionFault : this.replyFaults.get(elements[0]);
+    }
+
+    /**
+     * Sends the delayed replies that are due
+     */
+    private void sendPendingReplies() {
+        PendingReply pendingReply;
+        while ((pendingReply = this.pendingReplies.peek()) != null && pendingReply.dueTime() - System.nanoTime() <= 0) {
+            this.pendingReplies.poll();
+            pendingReply.reply().send(pendingReply.socket());
+        }
+    }
+
+    /**
+     * Loop publishing the frames of all sessions with connected clients at the rate of the frame profile
+     */
+    private void publisherLoop() {
+        final Random frameRandom = new Random();
+        long lastTime = System.nanoTime();
+        while (this.running) {
+            final long time = System.nanoTime();
+            final double elapsedSeconds = (time - lastTime) / 1.0e9;
+            lastTime = time;
+
+            final FrameProfile profile = this.frameProfile;
+            if (profile.getFramesPerSecond() > 0 && !this.publisherPaused) {
+                final Collection<SimulatedSession> activeSessions = this.sessions.values();
+                for (SimulatedSession session : activeSessions) {
+                    final long clientIndexMask = session.getClientIndexMask();
+                    if (clientIndexMask != 0 && session.isRunning()) {
+                        final int frameCount = session.addFrameCredit(profile.getFramesPerSecond() * elapsedSeconds);
+                        for (int i = 0; i < frameCount; i++) {
+                            final int[] types = profile.getTypes();
+                            final int type = types[frameRandom.nextInt(types.length)];
+                            final int size = Math.max(MIN_FRAME_SIZE, profile.getSizes().nextSize(frameRandom));
+                            this.publish(createFrame(session.getSessionId(), clientIndexMask, type, session.nextSequence(), size));
+                        }
+                    }
+                }
+            }
+
+            try {
+                byte[] frame = this.publishQueue.poll(1, TimeUnit.MILLISECONDS);
+                while (frame != null) {
+                    this.publish(frame);
+                    frame = this.publishQueue.poll();
+                }
+
+            } catch (InterruptedException exception) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Queues the echo of an instruction for the publisher thread: the echo is destined to the client that sent the instruction, or to all
+     * clients if the session or the client is not known to the router. The echo is dropped if the publisher has fallen behind.
+     * @param instructionData the data of the instruction
+     */
+    private void echo(final byte[] instructionData) {
+        if (instructionData.length < 20) {
+            return;
+        }
+        final ByteBuffer instruction = ByteBuffer.wrap(instructionData).order(ByteOrder.LITTLE_ENDIAN);
+        final SessionId sessionId = new SessionId(instructionData);
+        final SimulatedSession session = this.sessions.get(sessionId.hexString());
+        final long clientIndex = session != null ? session.getClientIndex(instruction.getInt(16)) : 0;
+
+        final int payloadLength = Math.max(0, instructionData.length - INSTRUCTION_HEADER_LENGTH);
+        final byte[] frame = createFrame(sessionId, clientIndex != 0 ? clientIndex : -1L, ECHO_MESSAGE_TYPE, 0, 48 + payloadLength);
+        System.arraycopy(instructionData, INSTRUCTION_HEADER_LENGTH, frame, 48, payloadLength);
+        this.publishQueue.offer(frame);
+    }
+
+    /**
+     * Publishes the data of a frame (for example a frame of a recording) to all running sessions that have connected clients. For each session
+     * the header of a copy of the frame is rewritten with the session Id, the client index mask, the current time and the sequence number
+     * of the session. Frames that are large enough carry the time of publication so that the latency can be measured when they are read.
+     * The frames are published by the publisher thread: the call blocks if the publisher falls behind.
+     * @param frameData the data of the frame (including the message header)
+     * @return the number of sessions the frame is published to
+     * @throws InterruptedException thrown if the call is interrupted while waiting for the publisher
+     */
+    public int publishToSessions(final byte[] frameData) throws InterruptedException {
+        if (frameData.length < 48) {
+            return 0;
+        }
+
+        int sessionCount = 0;
+        for (SimulatedSession session : this.sessions.values()) {
+            final long clientIndexMask = session.getClientIndexMask();
+            if (clientIndexMask != 0 && session.isRunning()) {
+                final byte[] frame = frameData.clone();
+                final ByteBuffer buffer = ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.put(0, session.getSessionId().bytes());
+                buffer.putLong(16, clientIndexMask);
+                buffer.putLong(24, System.currentTimeMillis());
+                buffer.putInt(44, session.nextSequence());
+                if (frame.length >= MIN_FRAME_SIZE) {
+                    buffer.putLong(FRAME_TIME_OFFSET, System.nanoTime());
+                    buffer.putLong(FRAME_MAGIC_OFFSET, FRAME_MAGIC);
+                }
+                this.publishQueue.put(frame);
+                sessionCount++;
+            }
+        }
+        return sessionCount;
+    }
+
+    /**
+     * Publishes a frame to the relay
+     * @param frame the frame data
+     */
+    private void publish(final byte[] frame) {
+        this.publisherSocket.send(frame, ZMQ.DONTWAIT);
+        this.framesPublished.incrementAndGet();
+        this.bytesPublished.addAndGet(frame.length);
+    }
+
+    /**
+     * Creates the data of a frame with a valid WebX message header and the current time as time of publication
+     * @param sessionId the session Id
+     * @param clientIndexMask the mask of the clients the frame is destined to
+     * @param type the message type Id
+     * @param sequence the sequence number
+     * @param size the size of the frame
+     * @return the frame data
+     */
+    static byte[] createFrame(final SessionId sessionId, long clientIndexMask, int type, int sequence, int size) {
+        final byte[] data = new byte[Math.max(MIN_FRAME_SIZE, size)];
+        final ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(FRAME_TIME_OFFSET, System.nanoTime());
+        buffer.put(0, sessionId.bytes());
+        buffer.putLong(16, clientIndexMask);
+        buffer.putLong(24, System.currentTimeMillis());
+        buffer.putInt(32, type);
+        buffer.putInt(44, sequence);
+        buffer.putLong(FRAME_MAGIC_OFFSET, FRAME_MAGIC);
+        return data;
+    }
+
+    /**
+     * Returns the time of publication of a frame published by the simulator
+     * @param data the frame data (as read from a tunnel)
+     * @return the time of publication (System.nanoTime), 0 if the data is not a simulator frame
+     */
+    public static long publicationTime(final byte[] data) {
+        if (data == null || data.length < MIN_FRAME_SIZE) {
+            return 0;
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        return buffer.getLong(FRAME_MAGIC_OFFSET) == FRAME_MAGIC ? buffer.getLong(FRAME_TIME_OFFSET) : 0;
+    }
+
+    /**
+     * Creates a socket of the router context
+     * @param type the socket type
+     * @return the socket
+     */
+    private ZMQ.Socket createSocket(final SocketType type) {
+        final ZMQ.Socket socket = this.context.createSocket(type);
+        socket.setLinger(0);
+        return socket;
+    }
+
+    /**
+     * Binds a socket to a port on all interfaces
+     * @param socket the socket
+     * @param port the port (0 for any free port)
+     * @return the bound port
+     */
+    private int bind(final ZMQ.Socket socket, int port) {
+        if (port == 0) {
+            return socket.bindToRandomPort("tcp://*");
+        }
+        socket.bind("tcp://*:" + port);
+        return port;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.simulator;
+
+import eu.ill.webx.model.SessionId;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * State of a session of the simulated router: the simulated WebX Engine, its connected clients and the sequence number of the
+ * published frames.
+ */
+class SimulatedSession {
+
+    private final SessionId sessionId;
+    private final String username;
+    private final long creationTime;
+    private final long startDelayMs;
+    private final Map<Integer, Long> clients = new ConcurrentHashMap<>();
+    private final AtomicInteger sequence = new AtomicInteger(0);
+    private int nextClientId = 1;
+    private volatile long clientIndexMask = 0;
+    private double frameCredit = 0;
+
+    /**
+     * Constructor taking the session Id, the user of the session and the delay before the session is running
+     * @param sessionId the session Id
+     * @param username the username of the session (null for standalone sessions)
+     * @param startDelayMs the delay before the session is running
+     */
+    SimulatedSession(final SessionId sessionId, final String username, long startDelayMs) {
+        this.sessionId = sessionId;
+        this.username = username;
+        this.creationTime = System.currentTimeMillis();
+        this.startDelayMs = startDelayMs;
+    }
+
+    /**
+     * Returns the session Id
+     * @return the session Id
+     */
+    SessionId getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * Returns the username of the session
+     * @return the username
+     */
+    String getUsername() {
+        return username;
+    }
+
+    /**
+     * Returns true if the start delay of the session has elapsed
+     * @return true if the session is running
+     */
+    boolean isRunning() {
+        return System.currentTimeMillis() - this.creationTime >= this.startDelayMs;
+    }
+
+    /**
+     * Connects a new client to the session, allocating a client Id and the lowest free client index
+     * @return the client Id and client index, null if all 64 client indices are used
+     */
+    synchronized long[] connectClient() {
+        for (int bit = 0; bit < 64; bit++) {
+            final long index = 1L << bit;
+            if ((this.clientIndexMask & index) == 0) {
+                final int clientId = this.nextClientId++;
+                this.clients.put(clientId, index);
+                this.clientIndexMask |= index;
+                return new long[]{clientId, index};
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Disconnects a client from the session
+     * @param clientId the client Id
+     * @return true if the client was connected
+     */
+    synchronized boolean disconnectClient(int clientId) {
+        final Long index = this.clients.remove(clientId);
+        if (index != null) {
+            this.clientIndexMask &= ~index;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the index (client index mask bit) of a connected client
+     * @param clientId the client Id
+     * @return the client index (0 if the client is not connected)
+     */
+    long getClientIndex(int clientId) {
+        final Long index = this.clients.get(clientId);
+        return index != null ? index : 0;
+    }
+
+    /**
+     * Returns the mask of the indices of all connected clients
+     * @return the client index mask (0 if no clients are connected)
+     */
+    long getClientIndexMask() {
+        return clientIndexMask;
+    }
+
+    /**
+     * Returns the number of connected clients
+     * @return the number of clients
+     */
+    int getClientCount() {
+        return this.clients.size();
+    }
+
+    /**
+     * Returns the sequence number of the next frame of the session
+     * @return the sequence number
+     */
+    int nextSequence() {
+        return this.sequence.incrementAndGet();
+    }
+
+    /**
+     * Adds frame credit to the session (fractional number of frames to publish): only used by the publisher thread
+     * @param credit the credit to add
+     * @return the number of whole frames to publish now
+     */
+    int addFrameCredit(double credit) {
+        this.frameCredit += credit;
+        final int frames = (int) this.frameCredit;
+        this.frameCredit -= frames;
+        return frames;
+    }
+}
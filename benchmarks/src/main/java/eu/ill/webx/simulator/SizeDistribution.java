@@ -0,0 +1,64 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.simulator;
+
+import java.util.Random;
+
+/**
+ * Distribution of the sizes of the frames published by the simulated router
+ */
+public interface SizeDistribution {
+
+    /**
+     * Returns the size of the next frame
+     * @param random the random generator of the publisher
+     * @return the size of the frame in bytes (including the header)
+     */
+    int nextSize(Random random);
+
+    /**
+     * Returns a distribution where all frames have the same size
+     * @param size the size of the frames in bytes
+     * @return the size distribution
+     */
+    static SizeDistribution fixed(int size) {
+        return random -> size;
+    }
+
+    /**
+     * Returns a distribution of sizes uniformly distributed between a minimum and a maximum
+     * @param min the minimum size in bytes
+     * @param max the maximum size in bytes
+     * @return the size distribution
+     */
+    static SizeDistribution uniform(int min, int max) {
+        return random -> min + random.nextInt(Math.max(1, max - min + 1));
+    }
+
+    /**
+     * Returns a log-normal distribution of sizes (typical of image updates: mostly small with occasional very large frames)
+     * @param median the median size in bytes
+     * @param sigma the standard deviation of the logarithm of the size (eg 1.0)
+     * @param max the maximum size in bytes
+     * @return the size distribution
+     */
+    static SizeDistribution logNormal(int median, double sigma, int max) {
+        final double mu = Math.log(median);
+        return random -> (int) Math.min(max, Math.round(Math.exp(mu + sigma * random.nextGaussian())));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.simulator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Options of a suite given on the command line as name=value arguments
+ */
+public class SuiteOptions {
+
+    private final Map<String, String> values = new HashMap<>();
+
+    /**
+     * Constructor parsing the command line arguments
+     * @param args the arguments (name=value)
+     * @throws IllegalArgumentException thrown if an argument is not of the form name=value
+     */
+    public SuiteOptions(final String[] args) {
+        for (String arg : args) {
+            final int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException(String.format("Invalid argument \"%s\": expected name=value", arg));
+            }
+            this.values.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+    }
+
+    /**
+     * Returns an integer option
+     * @param name the name of the option
+     * @param defaultValue the value if the option is not given
+     * @return the option value
+     */
+    public int getInt(final String name, int defaultValue) {
+        final String value = this.values.get(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    /**
+     * Returns a decimal option
+     * @param name the name of the option
+     * @param defaultValue the value if the option is not given
+     * @return the option value
+     */
+    public double getDouble(final String name, double defaultValue) {
+        final String value = this.values.get(name);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+
+    /**
+     * Returns a string option
+     * @param name the name of the option
+     * @param defaultValue the value if the option is not given
+     * @return the option value
+     */
+    public String getString(final String name, final String defaultValue) {
+        return this.values.getOrDefault(name, defaultValue);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.simulator;
+
+import eu.ill.webx.WebXTunnel;
+import eu.ill.webx.exceptions.WebXClientException;
+import eu.ill.webx.exceptions.WebXConnectionInterruptException;
+import eu.ill.webx.exceptions.WebXDisconnectedException;
+import eu.ill.webx.model.FrameLossData;
+
+/**
+ * Reads a tunnel from a separate thread and records the times (System.nanoTime) of the events observed by the client application:
+ * frames read, interruption or disconnection of the tunnel and frame loss notifications. The waiting methods are used to measure the
+ * time taken by the relay to detect faults and recover from them.
+ */
+class TunnelProbe {
+
+    private final WebXTunnel tunnel;
+    private final Thread readerThread;
+    private long lastFrameTime = 0;
+    private long frameCount = 0;
+    private long failureTime = 0;
+    private long frameLossTime = 0;
+    private FrameLossData.Cause frameLossCause;
+
+    /**
+     * Constructor taking a connected tunnel: the reader thread is started immediately
+     * @param tunnel the tunnel
+     */
+    TunnelProbe(final WebXTunnel tunnel) {
+        this.tunnel = tunnel;
+        this.tunnel.setFrameLossHandler(this::onFrameLoss);
+        this.readerThread = new Thread(this::read, "webx-fault-probe");
+        this.readerThread.setDaemon(true);
+        this.readerThread.start();
+    }
+
+    /**
+     * Returns the tunnel
+     * @return the tunnel
+     */
+    WebXTunnel getTunnel() {
+        return tunnel;
+    }
+
+    /**
+     * Returns the number of simulator frames read
+     * @return the frame count
+     */
+    synchronized long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Returns the time of the interruption or disconnection of the tunnel
+     * @return the failure time, 0 if the tunnel has not failed
+     */
+    synchronized long getFailureTime() {
+        return failureTime;
+    }
+
+    /**
+     * Waits for the tunnel to be interrupted or disconnected
+     * @param timeoutMs the maximum time to wait
+     * @return the failure time, 0 if the tunnel has not failed before the timeout
+     * @throws InterruptedException thrown if the wait is interrupted
+     */
+    synchronized long awaitFailure(long timeoutMs) throws InterruptedException {
+        final long endTime = System.nanoTime() + timeoutMs * 1000000;
+        while (this.failureTime == 0 && this.waitUntil(endTime)) {
+            // Wait for the reader thread
+        }
+        return this.failureTime;
+    }
+
+    /**
+     * Waits for a frame to be read after a given time
+     * @param time the time (System.nanoTime)
+     * @param timeoutMs the maximum time to wait
+     * @return the time at which the frame was read, 0 if no frame was read before the timeout
+     * @throws InterruptedException thrown if the wait is interrupted
+     */
+    synchronized long awaitFrameAfter(long time, long timeoutMs) throws InterruptedException {
+        final long endTime = System.nanoTime() + timeoutMs * 1000000;
+        while (this.lastFrameTime - time <= 0 && this.failureTime == 0 && this.waitUntil(endTime)) {
+            // Wait for the reader thread
+        }
+        return this.lastFrameTime - time > 0 ? this.lastFrameTime : 0;
+    }
+
+    /**
+     * Waits for a frame loss notification with a given cause
+     * @param cause the cause of the frame loss
+     * @param timeoutMs the maximum time to wait
+     * @return the time of the notification, 0 if there was no notification before the timeout
+     * @throws InterruptedException thrown if the wait is interrupted
+     */
+    synchronized long awaitFrameLoss(final FrameLossData.Cause cause, long timeoutMs) throws InterruptedException {
+        final long endTime = System.nanoTime() + timeoutMs * 1000000;
+        while (this.frameLossCause != cause && this.waitUntil(endTime)) {
+            // Wait for the frame loss handler
+        }
+        return this.frameLossCause == cause ? this.frameLossTime : 0;
+    }
+
+    /**
+     * Disconnects the tunnel and waits for the reader thread to terminate
+     * @throws InterruptedException thrown if the wait is interrupted
+     */
+    void close() throws InterruptedException {
+        this.tunnel.disconnect();
+        this.readerThread.join(1000);
+    }
+
+    /**
+     * Waits to be notified of an event or until the end time
+     * @param endTime the end time (System.nanoTime)
+     * @return false if the end time has passed
+     * @throws InterruptedException thrown if the wait is interrupted
+     */
+    private boolean waitUntil(long endTime) throws InterruptedException {
+        final long remainingMs = (endTime - System.nanoTime()) / 1000000;
+        if (remainingMs <= 0) {
+            return false;
+        }
+        this.wait(remainingMs);
+        return true;
+    }
+
+    /**
+     * Reads the tunnel until it is disconnected. Interruptions are recorded and reading continues, as a client application does,
+     * so that the tunnel handles the disconnection that follows.
+     */
+    private void read() {
+        while (true) {
+            try {
+                final byte[] data = this.tunnel.read();
+                if (data == null) {
+                    return;
+                }
+                if (SimulatedRouter.publicationTime(data) != 0) {
+                    this.onFrame(System.nanoTime());
+                }
+
+            } catch (WebXConnectionInterruptException exception) {
+                this.onFailure(System.nanoTime());
+
+            } catch (WebXDisconnectedException | WebXClientException exception) {
+                this.onFailure(System.nanoTime());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Records a frame read from the tunnel
+     * @param time the time of the read
+     */
+    private synchronized void onFrame(long time) {
+        this.lastFrameTime = time;
+        this.frameCount++;
+        this.notifyAll();
+    }
+
+    /**
+     * Records the first failure of the tunnel
+     * @param time the time of the failure
+     */
+    private synchronized void onFailure(long time) {
+        if (this.failureTime == 0) {
+            this.failureTime = time;
+        }
+        this.notifyAll();
+    }
+
+    /**
+     * Frame loss handler of the tunnel: records the first notification of each cause
+     * @param frameLossData the frame loss data
+     */
+    private synchronized void onFrameLoss(final FrameLossData frameLossData) {
+        if (this.frameLossCause != frameLossData.cause()) {
+            this.frameLossCause = frameLossData.cause();
+            this.frameLossTime = System.nanoTime();
+            this.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.simulator;
+
+import eu.ill.webx.WebXTunnel;
+import eu.ill.webx.exceptions.WebXClientException;
+import eu.ill.webx.exceptions.WebXConnectionInterruptException;
+import eu.ill.webx.exceptions.WebXDisconnectedException;
+import eu.ill.webx.metrics.Histogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads tunnels, each from its own thread, until they are disconnected and collects the number of messages and bytes read and the
+ * end-to-end latency of the simulator frames (from publication by the simulated router to the read of the tunnel). Shared by the suites
+ * measuring the throughput of the relay.
+ */
+class TunnelReaders {
+
+    private final Histogram latency = Histogram.exponential(10, 1.2, 80);
+    private final AtomicLong messagesRead = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong readErrors = new AtomicLong();
+    private final List<Thread> threads = new ArrayList<>();
+
+    /**
+     * Starts a daemon thread reading a tunnel
+     * @param tunnel the tunnel
+     * @param threadName the name of the reader thread
+     */
+    void start(final WebXTunnel tunnel, final String threadName) {
+        final Thread reader = new Thread(() -> this.read(tunnel), threadName);
+        reader.setDaemon(true);
+        reader.start();
+        this.threads.add(reader);
+    }
+
+    /**
+     * Waits for the reader threads to terminate (once the tunnels have been disconnected)
+     * @param timeoutMs the maximum time to wait for each thread in milliseconds
+     * @throws InterruptedException thrown if the thread is interrupted
+     */
+    void join(long timeoutMs) throws InterruptedException {
+        for (Thread reader : this.threads) {
+            reader.join(timeoutMs);
+        }
+    }
+
+    /**
+     * Resets the measurements (eg to ignore the messages read while the tunnels were connecting)
+     */
+    void reset() {
+        this.latency.reset();
+        this.messagesRead.set(0);
+        this.bytesRead.set(0);
+    }
+
+    /**
+     * Prints the messages read, the end-to-end latency and the number of interrupted reads
+     * @param elapsedS the duration of the measurement in seconds
+     */
+    void report(double elapsedS) {
+        System.out.printf("Read: %d messages, %.0f messages/s, %.2f MB/s%n", this.messagesRead.get(), this.messagesRead.get() / elapsedS, this.bytesRead.get() / elapsedS / 1.0e6);
+        System.out.printf("End-to-end latency (ms): p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n",
+            this.latency.getPercentile(50) / 1000.0, this.latency.getPercentile(90) / 1000.0, this.latency.getPercentile(99) / 1000.0,
+            this.latency.getPercentile(99.9) / 1000.0, this.latency.getPercentile(100) / 1000.0);
+        if (this.readErrors.get() > 0) {
+            System.out.printf("Interrupted reads: %d%n", this.readErrors.get());
+        }
+    }
+
+    /**
+     * Reads a tunnel until it is disconnected, recording the end-to-end latency of the simulator frames
+     * @param tunnel the tunnel
+     */
+    private void read(final WebXTunnel tunnel) {
+        try {
+            byte[] data;
+            while ((data = tunnel.read()) != null) {
+                final long readTime = System.nanoTime();
+                this.messagesRead.incrementAndGet();
+                this.bytesRead.addAndGet(data.length);
+
+                final long publicationTime = SimulatedRouter.publicationTime(data);
+                if (publicationTime != 0) {
+                    this.latency.record((readTime - publicationTime) / 1000);
+                }
+            }
+
+        } catch (WebXDisconnectedException | WebXClientException exception) {
+            // Tunnel closed
+
+        } catch (WebXConnectionInterruptException exception) {
+            this.readErrors.incrementAndGet();
+        }
+    }
+}
@@ -17,6 +17,12 @@
  */
 package eu.ill.webx;
 
+import eu.ill.webx.metrics.RelayMetrics;
+import eu.ill.webx.recording.TrafficRecorder;
+import eu.ill.webx.utils.VirtualThreads;
+
+import java.util.concurrent.ThreadFactory;
+
 /**
  * Provides host configuration parameters
  */
@@ -27,6 +33,19 @@ public class WebXHostConfiguration {
     private final boolean isStandalone;
 
     private Integer socketTimeoutMs = 15000;
+    private int messageBatchSize = 64;
+    private ThreadFactory threadFactory = Thread::new;
+    private boolean sessionSubscriptionFiltering = true;
+    private WebXSocketConfiguration socketConfiguration = new WebXSocketConfiguration();
+    private RelayMetrics metrics = RelayMetrics.NOOP;
+    private boolean jmxEnabled = false;
+    private int clientQueueOverflowThreshold = 1000;
+    private int clientQueueLimit = 0;
+    private int publisherQueueLimit = 1000;
+    private boolean mouseCoalescing = false;
+    private boolean sequenceTracking = false;
+    private long stallThresholdMs = 5000;
+    private TrafficRecorder trafficRecorder;
 
     /**
      * Standard host connection parameters with hostname and port
@@ -66,6 +85,20 @@ public class WebXHostConfiguration {
         this.isStandalone = false;
     }
 
+    /**
+     * Connection parameters including override for the default socket timeout and the standalone flag
+     * @param hostname the name of the host
+     * @param port the port to connect to
+     * @param socketTimeoutMs The timeout in milliseconds for a timeout exception to be thrown when doing blocking ZMQ requests
+     * @param isStandalone True if the host is running a standalone WebX Engine
+     */
+    public WebXHostConfiguration(final String hostname, final Integer port, final Integer socketTimeoutMs, boolean isStandalone) {
+        this.hostname = hostname;
+        this.port = port;
+        this.socketTimeoutMs = socketTimeoutMs;
+        this.isStandalone = isStandalone;
+    }
+
     /**
      * Returns the hostname
      * @return the hostname
@@ -90,6 +123,268 @@ public class WebXHostConfiguration {
         return socketTimeoutMs;
     }
 
+    /**
+     * Returns the maximum number of messages that are read from the message subscriber socket and dispatched together
+     * @return the maximum message batch size
+     */
+    public int getMessageBatchSize() {
+        return messageBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of messages that are read from the message subscriber socket and dispatched together. Messages
+     * that are immediately available after a blocking read are grouped by session so that each client queue is updated once per batch.
+     * @param messageBatchSize the maximum message batch size (a value of 1 disables batching)
+     * @return this configuration
+     */
+    public WebXHostConfiguration withMessageBatchSize(int messageBatchSize) {
+        this.messageBatchSize = Math.max(1, messageBatchSize);
+        return this;
+    }
+
+    /**
+     * Returns the thread factory used to create all relay-internal threads (message subscriber, instruction publisher and session validators)
+     * @return the thread factory
+     */
+    public ThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
+    /**
+     * Sets the thread factory used to create all relay-internal threads. Threads created by the factory are renamed by the relay
+     * to identify the host and session they serve.
+     * @param threadFactory the thread factory (platform threads are used if null)
+     * @return this configuration
+     */
+    public WebXHostConfiguration withThreadFactory(final ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory != null ? threadFactory : Thread::new;
+        return this;
+    }
+
+    /**
+     * Uses virtual threads for all relay-internal threads. Blocking on socket requests and queues then costs almost nothing,
+     * which is useful when many sessions are managed by the relay.
+     * @return this configuration
+     * @throws UnsupportedOperationException thrown if the runtime does not support virtual threads (Java 21 or later is required)
+     */
+    public WebXHostConfiguration withVirtualThreads() {
+        this.threadFactory = VirtualThreads.factory();
+        return this;
+    }
+
+    /**
+     * Returns true if the message subscriber only subscribes to the messages of sessions managed by the relay
+     * @return true if subscriptions are filtered by session Id
+     */
+    public boolean isSessionSubscriptionFiltering() {
+        return sessionSubscriptionFiltering;
+    }
+
+    /**
+     * Specifies whether the message subscriber only subscribes to the messages of sessions managed by the relay (enabled by default).
+     * When enabled the WebX Router filters messages by session Id and only sends the traffic of the relay's own sessions. This is
+     * ignored when connected to a standalone WebX Engine.
+     * @param sessionSubscriptionFiltering true to filter subscriptions by session Id, false to receive all messages
+     * @return this configuration
+     */
+    public WebXHostConfiguration withSessionSubscriptionFiltering(boolean sessionSubscriptionFiltering) {
+        this.sessionSubscriptionFiltering = sessionSubscriptionFiltering;
+        return this;
+    }
+
+    /**
+     * Returns the tuning options of the ZMQ sockets (high-water marks, TCP buffers and keepalive)
+     * @return the socket configuration
+     */
+    public WebXSocketConfiguration getSocketConfiguration() {
+        return socketConfiguration;
+    }
+
+    /**
+     * Sets the tuning options of the ZMQ sockets (high-water marks, TCP buffers and keepalive). The options are applied to all the sockets of the host.
+     * @param socketConfiguration the socket configuration (ZMQ defaults are used if null)
+     * @return this configuration
+     */
+    public WebXHostConfiguration withSocketConfiguration(final WebXSocketConfiguration socketConfiguration) {
+        this.socketConfiguration = socketConfiguration != null ? socketConfiguration : new WebXSocketConfiguration();
+        return this;
+    }
+
+    /**
+     * Returns the metrics implementation notified of the host, session and client activity
+     * @return the relay metrics
+     */
+    public RelayMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics implementation notified of the host, session and client activity (disabled by default).
+     * @param metrics the relay metrics (metrics are disabled if null)
+     * @return this configuration
+     */
+    public WebXHostConfiguration withMetrics(final RelayMetrics metrics) {
+        this.metrics = metrics != null ? metrics : RelayMetrics.NOOP;
+        return this;
+    }
+
+    /**
+     * Returns the number of queued messages above which the queue of a client is considered to overflow
+     * @return the client queue overflow threshold
+     */
+    public int getClientQueueOverflowThreshold() {
+        return clientQueueOverflowThreshold;
+    }
+
+    /**
+     * Sets the number of queued messages above which the queue of a client is considered to overflow (default 1000): a client queue overflow
+     * flight recorder event is emitted when a client queue exceeds it, indicating that the client application is not reading messages quickly enough.
+     * @param clientQueueOverflowThreshold the client queue overflow threshold
+     * @return this configuration
+     */
+    public WebXHostConfiguration withClientQueueOverflowThreshold(int clientQueueOverflowThreshold) {
+        this.clientQueueOverflowThreshold = clientQueueOverflowThreshold;
+        return this;
+    }
+
+    /**
+     * Returns the maximum number of messages queued for a client
+     * @return the client queue limit (0 if the queue is unbounded)
+     */
+    public int getClientQueueLimit() {
+        return clientQueueLimit;
+    }
+
+    /**
+     * Sets the maximum number of messages queued for a client (default 0: unbounded). When the queue of a client is full, messages from the
+     * WebX Engine (other than mouse, cursor and disconnect messages) are dropped and the frame loss handler of the client is called so that
+     * the client display can be resynchronised. When messages are read with WebXTunnel.publisher and no limit is set, the publisher queue
+     * limit applies.
+     * @param clientQueueLimit the client queue limit (0 for an unbounded queue)
+     * @return this configuration
+     */
+    public WebXHostConfiguration withClientQueueLimit(int clientQueueLimit) {
+        this.clientQueueLimit = Math.max(0, clientQueueLimit);
+        return this;
+    }
+
+    /**
+     * Returns the maximum number of messages queued for a client whose messages are read with a publisher, if no client queue limit is set
+     * @return the publisher queue limit
+     */
+    public int getPublisherQueueLimit() {
+        return publisherQueueLimit;
+    }
+
+    /**
+     * Sets the maximum number of messages queued for a client whose messages are read with WebXTunnel.publisher when no client queue limit
+     * is set (default 1000). Messages are queued while the subscriber has no demand: the limit prevents a subscriber that stops requesting
+     * messages from accumulating them indefinitely. The limit only applies while the subscription is active.
+     * @param publisherQueueLimit the publisher queue limit (at least 1)
+     * @return this configuration
+     */
+    public WebXHostConfiguration withPublisherQueueLimit(int publisherQueueLimit) {
+        this.publisherQueueLimit = Math.max(1, publisherQueueLimit);
+        return this;
+    }
+
+    /**
+     * Returns true if the mouse messages queued for a client are coalesced
+     * @return true if mouse messages are coalesced
+     */
+    public boolean isMouseCoalescing() {
+        return mouseCoalescing;
+    }
+
+    /**
+     * Specifies whether the mouse messages queued for a client are coalesced (default false): a mouse message replaces the mouse message
+     * that is waiting to be read (only the latest position of the mouse is useful to the client) so that slow clients do not accumulate them.
+     * @param mouseCoalescing true to coalesce mouse messages
+     * @return this configuration
+     */
+    public WebXHostConfiguration withMouseCoalescing(boolean mouseCoalescing) {
+        this.mouseCoalescing = mouseCoalescing;
+        return this;
+    }
+
+    /**
+     * Returns true if lost messages are detected from the sequence numbers of the messages
+     * @return true if the message sequence numbers are tracked
+     */
+    public boolean isSequenceTracking() {
+        return sequenceTracking;
+    }
+
+    /**
+     * Specifies whether lost messages are detected from gaps in a per-session sequence number (default false). Current WebX Engines do not
+     * provide sequence numbers: this is only to be enabled with an engine that writes an incrementing sequence number in the last four bytes
+     * of the message header (the frame loss handler is then called with the cause SEQUENCE_GAP).
+     * @param sequenceTracking true to track the message sequence numbers
+     * @return this configuration
+     */
+    public WebXHostConfiguration withSequenceTracking(boolean sequenceTracking) {
+        this.sequenceTracking = sequenceTracking;
+        return this;
+    }
+
+    /**
+     * Returns the time in milliseconds that a relay loop can be busy before being reported as stalled
+     * @return the stall threshold in milliseconds
+     */
+    public long getStallThresholdMs() {
+        return stallThresholdMs;
+    }
+
+    /**
+     * Sets the time in milliseconds that a relay loop (message subscriber, instruction publisher or session validator) can be busy without
+     * making progress before being reported as stalled (default 5000ms, zero to disable the watchdog). Stalls are logged with the stack trace
+     * of the blocked thread, counted in the metrics and emitted as flight recorder events.
+     * @param stallThresholdMs the stall threshold in milliseconds
+     * @return this configuration
+     */
+    public WebXHostConfiguration withStallThresholdMs(long stallThresholdMs) {
+        this.stallThresholdMs = stallThresholdMs;
+        return this;
+    }
+
+    /**
+     * Returns the recorder of the traffic of the host
+     * @return the traffic recorder (null if the traffic is not recorded)
+     */
+    public TrafficRecorder getTrafficRecorder() {
+        return trafficRecorder;
+    }
+
+    /**
+     * Sets a recorder of the raw traffic of the host (disabled by default): all messages received from the WebX Router and all instructions
+     * sent by the clients are written with their timing to the recording file, to be replayed in benchmarks. The recorder is not closed by the relay.
+     * @param trafficRecorder the traffic recorder (null to disable the recording)
+     * @return this configuration
+     */
+    public WebXHostConfiguration withTrafficRecorder(final TrafficRecorder trafficRecorder) {
+        this.trafficRecorder = trafficRecorder;
+        return this;
+    }
+
+    /**
+     * Returns true if management beans of the relay, host and sessions are registered with the platform MBean server
+     * @return true if JMX is enabled
+     */
+    public boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    /**
+     * Enables the registration of management beans of the relay, host and sessions with the platform MBean server (disabled by default).
+     * The beans provide live counts, client queue depths and ping times, and allow operators to force the disconnection of clients and sessions.
+     * @param jmxEnabled true to register the management beans
+     * @return this configuration
+     */
+    public WebXHostConfiguration withJmxEnabled(boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+        return this;
+    }
+
     /**
      * Returns true if the relay is running in standalone mode
      * @return true if the relay is running in standalone mode
@@ -0,0 +1,187 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx;
+
+/**
+ * Provides tuning parameters for the ZMQ sockets connecting the relay to a WebX host.
+ * Options that are not set keep the ZMQ default values. The options are applied to all sockets of the host (client connector,
+ * message subscriber, instruction publisher and session channel): high-water marks only have an effect on the sockets that queue
+ * messages (the message subscriber for the receive high-water mark and the instruction publisher for the send high-water mark).
+ */
+public class WebXSocketConfiguration {
+
+    private Integer receiveHighWaterMark;
+    private Integer sendHighWaterMark;
+    private Integer receiveBufferSize;
+    private Integer sendBufferSize;
+    private Boolean tcpKeepAlive;
+    private Integer tcpKeepAliveIdleSeconds;
+    private Integer tcpKeepAliveIntervalSeconds;
+    private Integer tcpKeepAliveCount;
+
+    /**
+     * Default constructor: all ZMQ default values are used
+     */
+    public WebXSocketConfiguration() {
+    }
+
+    /**
+     * Returns the receive high-water mark (maximum number of queued incoming messages) or null if the default is used
+     * @return the receive high-water mark
+     */
+    public Integer getReceiveHighWaterMark() {
+        return receiveHighWaterMark;
+    }
+
+    /**
+     * Sets the receive high-water mark: the maximum number of incoming messages queued by a socket. Raising the value
+     * on the message subscriber avoids messages being dropped during large image bursts.
+     * @param receiveHighWaterMark the receive high-water mark (0 for no limit)
+     * @return this configuration
+     */
+    public WebXSocketConfiguration withReceiveHighWaterMark(int receiveHighWaterMark) {
+        this.receiveHighWaterMark = receiveHighWaterMark;
+        return this;
+    }
+
+    /**
+     * Returns the send high-water mark (maximum number of queued outgoing messages) or null if the default is used
+     * @return the send high-water mark
+     */
+    public Integer getSendHighWaterMark() {
+        return sendHighWaterMark;
+    }
+
+    /**
+     * Sets the send high-water mark: the maximum number of outgoing messages queued by a socket (eg instructions on the instruction publisher).
+     * @param sendHighWaterMark the send high-water mark (0 for no limit)
+     * @return this configuration
+     */
+    public WebXSocketConfiguration withSendHighWaterMark(int sendHighWaterMark) {
+        this.sendHighWaterMark = sendHighWaterMark;
+        return this;
+    }
+
+    /**
+     * Returns the TCP receive buffer size in bytes or null if the OS default is used
+     * @return the TCP receive buffer size
+     */
+    public Integer getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * Sets the TCP receive buffer size (SO_RCVBUF) of the sockets
+     * @param receiveBufferSize the receive buffer size in bytes
+     * @return this configuration
+     */
+    public WebXSocketConfiguration withReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+        return this;
+    }
+
+    /**
+     * Returns the TCP send buffer size in bytes or null if the OS default is used
+     * @return the TCP send buffer size
+     */
+    public Integer getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * Sets the TCP send buffer size (SO_SNDBUF) of the sockets
+     * @param sendBufferSize the send buffer size in bytes
+     * @return this configuration
+     */
+    public WebXSocketConfiguration withSendBufferSize(int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+        return this;
+    }
+
+    /**
+     * Returns whether TCP keepalive is enabled or null if the OS default is used
+     * @return true if TCP keepalive is enabled
+     */
+    public Boolean getTcpKeepAlive() {
+        return tcpKeepAlive;
+    }
+
+    /**
+     * Enables or disables TCP keepalive (SO_KEEPALIVE) on the sockets
+     * @param tcpKeepAlive true to enable TCP keepalive
+     * @return this configuration
+     */
+    public WebXSocketConfiguration withTcpKeepAlive(boolean tcpKeepAlive) {
+        this.tcpKeepAlive = tcpKeepAlive;
+        return this;
+    }
+
+    /**
+     * Returns the TCP keepalive idle time in seconds or null if the OS default is used
+     * @return the TCP keepalive idle time in seconds
+     */
+    public Integer getTcpKeepAliveIdleSeconds() {
+        return tcpKeepAliveIdleSeconds;
+    }
+
+    /**
+     * Sets the time a connection is idle before TCP keepalive probes are sent (TCP_KEEPIDLE)
+     * @param tcpKeepAliveIdleSeconds the idle time in seconds
+     * @return this configuration
+     */
+    public WebXSocketConfiguration withTcpKeepAliveIdleSeconds(int tcpKeepAliveIdleSeconds) {
+        this.tcpKeepAliveIdleSeconds = tcpKeepAliveIdleSeconds;
+        return this;
+    }
+
+    /**
+     * Returns the interval between TCP keepalive probes in seconds or null if the OS default is used
+     * @return the TCP keepalive interval in seconds
+     */
+    public Integer getTcpKeepAliveIntervalSeconds() {
+        return tcpKeepAliveIntervalSeconds;
+    }
+
+    /**
+     * Sets the interval between TCP keepalive probes (TCP_KEEPINTVL)
+     * @param tcpKeepAliveIntervalSeconds the interval in seconds
+     * @return this configuration
+     */
+    public WebXSocketConfiguration withTcpKeepAliveIntervalSeconds(int tcpKeepAliveIntervalSeconds) {
+        this.tcpKeepAliveIntervalSeconds = tcpKeepAliveIntervalSeconds;
+        return this;
+    }
+
+    /**
+     * Returns the number of unacknowledged TCP keepalive probes before the connection is dropped or null if the OS default is used
+     * @return the TCP keepalive probe count
+     */
+    public Integer getTcpKeepAliveCount() {
+        return tcpKeepAliveCount;
+    }
+
+    /**
+     * Sets the number of unacknowledged TCP keepalive probes before the connection is dropped (TCP_KEEPCNT)
+     * @param tcpKeepAliveCount the probe count
+     * @return this configuration
+     */
+    public WebXSocketConfiguration withTcpKeepAliveCount(int tcpKeepAliveCount) {
+        this.tcpKeepAliveCount = tcpKeepAliveCount;
+        return this;
+    }
+}
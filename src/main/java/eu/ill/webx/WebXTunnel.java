@@ -21,14 +21,29 @@ import eu.ill.webx.exceptions.WebXClientException;
 import eu.ill.webx.exceptions.WebXConnectionException;
 import eu.ill.webx.exceptions.WebXConnectionInterruptException;
 import eu.ill.webx.exceptions.WebXDisconnectedException;
+import eu.ill.webx.model.ClientStatistics;
+import eu.ill.webx.model.ConnectTrace;
+import eu.ill.webx.model.ConnectionProgress;
+import eu.ill.webx.model.ConnectionProgressHandler;
+import eu.ill.webx.model.FrameLossHandler;
 import eu.ill.webx.model.Message;
+import eu.ill.webx.model.MessageTypeStatistics;
 import eu.ill.webx.model.PingResponseHandler;
+import eu.ill.webx.model.PingStatistics;
 import eu.ill.webx.relay.WebXClient;
 import eu.ill.webx.relay.WebXHost;
 import eu.ill.webx.relay.WebXRelay;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * The WebXTunnel provides the main entry point to connecting to a WebX Host. Session creation and client connection is handled
  * through the connect method.
@@ -53,6 +68,7 @@ public class WebXTunnel {
 
     private WebXHost host;
     private WebXClient client;
+    private ConnectTrace connectTrace;
 
     /**
      * Static method to create a WebXTunnel, connect to the host and create a client.
@@ -81,40 +97,173 @@ public class WebXTunnel {
         return tunnel;
     }
 
+    /**
+     * Static method to create a WebXTunnel and connect it asynchronously (see connectAsync). The requests to the host are made from a thread
+     * created by the thread factory of the host configuration.
+     * @param hostConfiguration Configuration for the WebX Host (eg hostname and port)
+     * @param clientConfiguration Configuration for the client (login parameters or session Id)
+     * @param engineConfiguration Configuration for the WebX Engine (converted to environment variables by the WebX Router)
+     * @param progressHandler Handler called when the connection progresses (optional)
+     * @return a future completed with the connected WebXTunnel
+     */
+    public static CompletableFuture<WebXTunnel> ConnectAsync(final WebXHostConfiguration hostConfiguration, final WebXClientConfiguration clientConfiguration, final WebXEngineConfiguration engineConfiguration, final ConnectionProgressHandler progressHandler) {
+        final Executor executor = runnable -> {
+            final Thread thread = hostConfiguration.getThreadFactory().newThread(runnable);
+            thread.setName(String.format("webx-connect-%s:%d", hostConfiguration.getHostname(), hostConfiguration.getPort()));
+            thread.start();
+        };
+        return new WebXTunnel().connectAsync(hostConfiguration, clientConfiguration, engineConfiguration, executor, progressHandler);
+    }
+
     /**
      * Default constructor of a tunnel
      */
     public WebXTunnel() {
     }
 
+    /**
+     * Constructor of a tunnel for a client that has already been created by a host.
+     * Package-private only so that the benchmarks can drive a tunnel without a WebX Router: it is not part of the relay API.
+     * @param host the host of the client
+     * @param client the client
+     */
+    WebXTunnel(final WebXHost host, final WebXClient client) {
+        this.host = host;
+        this.client = client;
+    }
+
     /**
      * Connects to a WebX Engine on a specific host/port and connects the client to a WebX Session.
      * The connection parameters determine whether a new session is created or connection is required to a session that is already running.
+     * The duration of each phase of the connection is recorded in a connection trace (logged at debug level).
      * @param hostConfiguration Configuration for the WebX Host (eg hostname and port)
      * @param clientConfiguration Configuration for the client (login parameters or session Id)
      * @param engineConfiguration Configuration for the WebX Engine (converted to environment variables by the WebX Router)
+     * @return the trace of the connection (the trace of the previous connection if the tunnel is already connected)
      * @throws WebXConnectionException thrown if the connection fails
      */
-    public void connect(final WebXHostConfiguration hostConfiguration, final WebXClientConfiguration clientConfiguration, final WebXEngineConfiguration engineConfiguration) throws WebXConnectionException {
+    public ConnectTrace connect(final WebXHostConfiguration hostConfiguration, final WebXClientConfiguration clientConfiguration, final WebXEngineConfiguration engineConfiguration) throws WebXConnectionException {
         if (this.client == null) {
-            this.host = WebXRelay.getInstance().connectToHost(hostConfiguration);
-
+            final ConnectTrace trace = ConnectTrace.start();
+            this.connectTrace = trace;
             try {
-                logger.debug("Creating client for {}...", this.host.getHostname());
-                this.client = this.host.onClientConnection(clientConfiguration, engineConfiguration);
-
-                // Send the connection message to the client (client is running/fully connected if it has a valid client identifier)
-                this.client.onMessage(new Message.ConnectionMessage(this.client.getClientIdentifier() == null));
-                logger.info("... client created.");
-
-            } catch (WebXConnectionException error) {
-                logger.info("... client connection failed: {}", error.getMessage());
-                // Cleanup after connection failure
-                this.host.cleanupSessions();
-                WebXRelay.getInstance().onClientDisconnect(this.host);
-                throw error;
+                long startTime = System.nanoTime();
+                this.host = WebXRelay.getInstance().connectToHost(hostConfiguration);
+                trace.addPhase("host-connection", System.nanoTime() - startTime);
+
+                try {
+                    logger.debug("Creating client for {}...", this.host.getHostname());
+                    startTime = System.nanoTime();
+                    this.client = this.host.onClientConnection(clientConfiguration, engineConfiguration);
+                    trace.addPhase("client-creation", System.nanoTime() - startTime);
+
+                    // Send the connection message to the client (client is running/fully connected if it has a valid client identifier)
+                    startTime = System.nanoTime();
+                    this.client.onMessage(new Message.ConnectionMessage(this.client.getClientIdentifier() == null));
+                    trace.addPhase("connection-message", System.nanoTime() - startTime);
+                    logger.info("... client created.");
+
+                } catch (WebXConnectionException error) {
+                    logger.info("... client connection failed: {}", error.getMessage());
+                    // Cleanup after connection failure
+                    this.host.cleanupSessions();
+                    WebXRelay.getInstance().onClientDisconnect(this.host);
+                    throw error;
+                }
+
+            } finally {
+                trace.finish();
+                logger.debug("Connection trace for {}: {}", hostConfiguration.getHostname(), trace);
             }
         }
+
+        return this.connectTrace;
+    }
+
+    /**
+     * Connects to a WebX Engine asynchronously. The requests to the host (connection to the host, session creation and client connection) are
+     * made from the executor. If the session is starting (for example while the X11 server is spawned) no thread waits for it: the future is
+     * completed by the session validator when the session is running and the client is connected to the WebX Engine.
+     * The progress handler is called with STARTING when the client is waiting for the session to start and with RUNNING when the tunnel can be used.
+     * Cancelling the future disconnects the tunnel, and the future is completed exceptionally with a WebXConnectionException if the connection
+     * fails or if the client is disconnected before the session is running. A timeout can be applied with CompletableFuture.orTimeout
+     * (the tunnel is also disconnected when the timeout expires).
+     * @param hostConfiguration Configuration for the WebX Host (eg hostname and port)
+     * @param clientConfiguration Configuration for the client (login parameters or session Id)
+     * @param engineConfiguration Configuration for the WebX Engine (converted to environment variables by the WebX Router)
+     * @param executor The executor making the blocking requests to the host
+     * @param progressHandler Handler called when the connection progresses (optional)
+     * @return a future completed with this tunnel when it is connected and the session is running
+     */
+    public CompletableFuture<WebXTunnel> connectAsync(final WebXHostConfiguration hostConfiguration, final WebXClientConfiguration clientConfiguration, final WebXEngineConfiguration engineConfiguration, final Executor executor, final ConnectionProgressHandler progressHandler) {
+        final ConnectionProgressHandler handler = progressHandler != null ? progressHandler : progress -> {};
+        final CompletableFuture<WebXTunnel> future = new CompletableFuture<>();
+        final AtomicBoolean clientCreated = new AtomicBoolean(false);
+        final AtomicBoolean disconnected = new AtomicBoolean(false);
+
+        // Disconnect the client if the connection fails, is cancelled or times out once the client has been created (otherwise the executor task disconnects it).
+        // The disconnection makes requests to the host so it is run on the executor rather than on the thread completing the future (eg the timeout thread)
+        future.whenCompleteAsync((tunnel, error) -> {
+            if (error != null && clientCreated.get() && disconnected.compareAndSet(false, true)) {
+                this.disconnect();
+            }
+        }, executor);
+
+        try {
+            executor.execute(() -> {
+                if (future.isDone()) {
+                    return;
+                }
+
+                try {
+                    this.connect(hostConfiguration, clientConfiguration, engineConfiguration);
+
+                    clientCreated.set(true);
+                    if (future.isCompletedExceptionally()) {
+                        if (disconnected.compareAndSet(false, true)) {
+                            this.disconnect();
+                        }
+                        return;
+                    }
+
+                    if (!this.client.isReady()) {
+                        handler.onProgress(ConnectionProgress.STARTING);
+                    }
+                    this.client.getReadiness().whenComplete((client, error) -> {
+                        if (error != null) {
+                            future.completeExceptionally(new WebXConnectionException("Client disconnected before the session was running"));
+
+                        } else if (!future.isDone()) {
+                            try {
+                                handler.onProgress(ConnectionProgress.RUNNING);
+                                future.complete(this);
+
+                            } catch (Throwable progressError) {
+                                future.completeExceptionally(progressError);
+                            }
+                        }
+                    });
+
+                } catch (Throwable error) {
+                    // Includes runtime exceptions (eg from the progress handler) that would otherwise leave the future incomplete
+                    future.completeExceptionally(error);
+                }
+            });
+
+        } catch (RejectedExecutionException error) {
+            future.completeExceptionally(new WebXConnectionException("Connection rejected by the executor: " + error.getMessage()));
+        }
+
+        return future;
+    }
+
+    /**
+     * Returns the trace of the connection of the tunnel, listing the duration of each phase of the connection (connection to the host,
+     * requests to the WebX Router, waits for the transport lock, etc)
+     * @return the connection trace (null if connect has not been called)
+     */
+    public ConnectTrace getConnectTrace() {
+        return this.connectTrace;
     }
 
     /**
@@ -140,6 +289,7 @@ public class WebXTunnel {
     public void disconnect() {
         if (this.client != null) {
             this.client.setPingResponseHandler(null);
+            this.client.setFrameLossHandler(null);
             this.host.onClientDisconnected(client);
 
             WebXRelay.getInstance().onClientDisconnect(this.host);
@@ -183,6 +333,113 @@ public class WebXTunnel {
         }
     }
 
+    /**
+     * Non-blocking call to get the next message from the Client: returns immediately if no message is waiting to be read (used for
+     * example with a WebXTunnelSelector).
+     * @return The byte array data for the next message, null if no message is waiting or if the client has been closed
+     * @throws WebXClientException thrown when the client is not connected
+     * @throws WebXConnectionInterruptException thrown when the connection is interrupted for example the session doesn't respond to a ping
+     * @throws WebXDisconnectedException thrown when the client is disconnected from the server
+     */
+    public byte[] poll() throws WebXClientException, WebXConnectionInterruptException, WebXDisconnectedException {
+        if (this.client != null) {
+            try {
+                return this.client.pollMessage();
+
+            } catch (WebXDisconnectedException exception) {
+                this.disconnect();
+                throw exception;
+            }
+
+        } else {
+            throw new WebXClientException("Client is not connected");
+        }
+    }
+
+    /**
+     * Non-blocking call reading a batch of the messages waiting to be read: messages are added to the list until no message is waiting,
+     * the client is closed or the maximum number of messages is reached. If an exception is thrown the messages read beforehand remain in the list.
+     * @param messages the list to which the messages are added
+     * @param maxMessages the maximum number of messages to read
+     * @return the number of messages added to the list
+     * @throws WebXClientException thrown when the client is not connected
+     * @throws WebXConnectionInterruptException thrown when the connection is interrupted for example the session doesn't respond to a ping
+     * @throws WebXDisconnectedException thrown when the client is disconnected from the server
+     */
+    public int drainTo(final List<byte[]> messages, int maxMessages) throws WebXClientException, WebXConnectionInterruptException, WebXDisconnectedException {
+        int messageCount = 0;
+        byte[] messageData;
+        while (messageCount < maxMessages && (messageData = this.poll()) != null) {
+            messages.add(messageData);
+            messageCount++;
+        }
+        return messageCount;
+    }
+
+    /**
+     * Returns a publisher of the messages of the client, an alternative to the blocking read method that doesn't require a thread per client.
+     * Messages are only taken from the client queue when requested by the subscriber. The client queue is bounded (by the client queue limit,
+     * or by the publisher queue limit if none is set, see WebXHostConfiguration) so a slow subscriber applies backpressure without the queue
+     * growing indefinitely. The publisher queue limit is removed when the subscription terminates.
+     * The subscription completes when the tunnel is disconnected and terminates with an error if the connection is interrupted or
+     * the client is disconnected from the server (the tunnel is then disconnected). Messages are consumed by one subscriber at a time
+     * (the tunnel cannot be registered with a WebXTunnelSelector meanwhile).
+     * Messages are delivered using the common fork-join pool.
+     * @return the message publisher
+     * @throws WebXClientException thrown if the tunnel is not connected
+     */
+    public Flow.Publisher<byte[]> publisher() throws WebXClientException {
+        return this.publisher(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Returns a publisher of the messages of the client delivering the messages using the given executor (see publisher())
+     * @param executor the executor delivering the messages to the subscriber
+     * @return the message publisher
+     * @throws WebXClientException thrown if the tunnel is not connected
+     */
+    public Flow.Publisher<byte[]> publisher(final Executor executor) throws WebXClientException {
+        if (this.client != null) {
+            return this.client.createPublisher(executor, this::disconnect);
+
+        } else {
+            throw new WebXClientException("Client is not connected");
+        }
+    }
+
+    /**
+     * Sets the listener called when messages become available to be read (used by the WebXTunnelSelector)
+     * @param availabilityListener the listener
+     * @return true if the listener has been set, false if the messages are already consumed by a publisher or another selector
+     * @throws WebXClientException thrown if the tunnel is not connected
+     */
+    boolean setMessageAvailabilityListener(final Runnable availabilityListener) throws WebXClientException {
+        if (this.client != null && this.client.isConnected()) {
+            return this.client.setMessageAvailabilityListener(availabilityListener);
+
+        } else {
+            throw new WebXClientException("Client is not connected");
+        }
+    }
+
+    /**
+     * Removes the listener called when messages become available to be read
+     * @param availabilityListener the listener to remove
+     */
+    void removeMessageAvailabilityListener(final Runnable availabilityListener) {
+        if (this.client != null) {
+            this.client.removeMessageAvailabilityListener(availabilityListener);
+        }
+    }
+
+    /**
+     * Returns true if messages are waiting to be read
+     * @return true if messages are waiting to be read
+     */
+    boolean hasQueuedMessages() {
+        return this.client != null && this.client.getQueueDepth() > 0;
+    }
+
     /**
      * Writes data to the WebX Engine, sending instructions from the client.
      * The instruction is queued and the client thread is liberated quickly.
@@ -206,4 +463,76 @@ public class WebXTunnel {
     public void setPingResponseHandler(PingResponseHandler pingResponseHandler) {
         this.client.setPingResponseHandler(pingResponseHandler);
     }
+
+    /**
+     * Returns a snapshot of the statistics of the tunnel: messages and bytes read, instructions and bytes written, queue depth and queued bytes,
+     * age of the oldest queued message, last ping round-trip time and time connected. The snapshot is cheap enough to be taken frequently
+     * (for example to adapt the behaviour of the client application to the state of the connection).
+     * @return the tunnel statistics
+     * @throws WebXClientException thrown if the tunnel is not connected
+     */
+    public ClientStatistics getStatistics() throws WebXClientException {
+        if (this.client != null) {
+            return this.client.getStatistics();
+
+        } else {
+            throw new WebXClientException("Client is not connected");
+        }
+    }
+
+    /**
+     * Returns the rolling statistics (min, median, p99, jitter) of the round-trip times of the most recent pings of the session of the client
+     * (used for example to display the connection quality)
+     * @return the session ping statistics
+     * @throws WebXClientException thrown if the tunnel is not connected
+     */
+    public PingStatistics getPingStatistics() throws WebXClientException {
+        if (this.client != null) {
+            return this.client.getPingStatistics();
+
+        } else {
+            throw new WebXClientException("Client is not connected");
+        }
+    }
+
+    /**
+     * Returns the rolling statistics of the round-trip times of the most recent pings of all sessions of the host (used for example
+     * to detect a degradation of the WebX Router)
+     * @return the host ping statistics
+     * @throws WebXClientException thrown if the tunnel is not connected
+     */
+    public PingStatistics getHostPingStatistics() throws WebXClientException {
+        if (this.host != null) {
+            return this.host.getPingStatistics();
+
+        } else {
+            throw new WebXClientException("Client is not connected");
+        }
+    }
+
+    /**
+     * Returns the traffic of the session of the client by raw message type Id: number of messages, bytes and message sizes of each
+     * type received from the WebX Engine (used for example to identify applications generating heavy image traffic)
+     * @return the statistics of each message type received
+     * @throws WebXClientException thrown if the tunnel is not connected
+     */
+    public List<MessageTypeStatistics> getTrafficStatistics() throws WebXClientException {
+        if (this.client != null) {
+            return this.client.getTrafficStatistics();
+
+        } else {
+            throw new WebXClientException("Client is not connected");
+        }
+    }
+
+    /**
+     * Sets the frame loss handler (optional). The handler is called when messages from the WebX Engine destined to this client
+     * are known to have been lost, for example dropped at a ZMQ high-water mark, during a reconnection of the message subscriber or
+     * because the client queue is full.
+     * The client display may be corrupted and should be resynchronised.
+     * @param frameLossHandler the frame loss handler
+     */
+    public void setFrameLossHandler(FrameLossHandler frameLossHandler) {
+        this.client.setFrameLossHandler(frameLossHandler);
+    }
 }
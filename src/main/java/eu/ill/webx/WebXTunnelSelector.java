@@ -0,0 +1,225 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx;
+
+import eu.ill.webx.exceptions.WebXClientException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Multiplexes the messages of many tunnels so that a few threads can serve a large number of clients (rather than a thread per
+ * tunnel blocked in the read method), in the manner of a NIO Selector.
+ * Tunnels are registered with the selector: the message queue of each client notifies the selector when messages are queued
+ * while none was waiting to be read and the tunnel is added to a shared ready-set. The select method waits for tunnels to be ready
+ * and returns them: the messages are then read without blocking using the poll or drainTo methods of the tunnels.
+ * Tunnels that still have messages waiting (for example when they are drained in limited batches) are returned again by the next
+ * selection. A tunnel that is closed is selected (poll then returns null or throws a WebXClientException) and is deregistered
+ * automatically by the following selection.
+ * A selector is intended to be used by a single thread: the tunnels returned by a selection should be read before the next selection.
+ * Several threads each use their own selector with the tunnels distributed between them.
+ */
+public class WebXTunnelSelector implements AutoCloseable {
+
+    private final Map<WebXTunnel, Runnable> registrations = new ConcurrentHashMap<>();
+    private final LinkedHashSet<WebXTunnel> readyTunnels = new LinkedHashSet<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition ready = this.lock.newCondition();
+    private final ReentrantLock selectionLock = new ReentrantLock();
+
+    private List<WebXTunnel> selectedTunnels = List.of();
+    private boolean wakeupPending = false;
+    private volatile boolean closed = false;
+
+    /**
+     * Default constructor
+     */
+    public WebXTunnelSelector() {
+    }
+
+    /**
+     * Registers a tunnel with the selector. The tunnel is selected as soon as it has messages waiting to be read (including messages queued
+     * before the registration). Registering a tunnel that is already registered with the selector has no effect.
+     * @param tunnel the tunnel
+     * @throws WebXClientException thrown if the tunnel is not connected or if its messages are already consumed by a publisher or another selector
+     */
+    public void register(final WebXTunnel tunnel) throws WebXClientException {
+        if (this.closed) {
+            throw new IllegalStateException("The tunnel selector is closed");
+        }
+        if (this.registrations.containsKey(tunnel)) {
+            return;
+        }
+
+        final Runnable availabilityListener = () -> this.onReady(tunnel);
+        if (!tunnel.setMessageAvailabilityListener(availabilityListener)) {
+            throw new WebXClientException("The messages of the tunnel are already consumed by a publisher or another selector");
+        }
+        this.registrations.put(tunnel, availabilityListener);
+
+        if (tunnel.hasQueuedMessages()) {
+            this.onReady(tunnel);
+        }
+    }
+
+    /**
+     * Removes a tunnel from the selector
+     * @param tunnel the tunnel
+     */
+    public void deregister(final WebXTunnel tunnel) {
+        final Runnable availabilityListener = this.registrations.remove(tunnel);
+        if (availabilityListener != null) {
+            tunnel.removeMessageAvailabilityListener(availabilityListener);
+
+            this.lock.lock();
+            try {
+                this.readyTunnels.remove(tunnel);
+
+            } finally {
+                this.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of registered tunnels
+     * @return the number of registered tunnels
+     */
+    public int getTunnelCount() {
+        return this.registrations.size();
+    }
+
+    /**
+     * Waits for registered tunnels to have messages waiting to be read
+     * @param timeoutMs the maximum time to wait in milliseconds (0 to wait indefinitely)
+     * @return the tunnels with messages waiting to be read, empty if the timeout expires or if the selector is woken up or closed
+     * @throws InterruptedException thrown if the waiting thread is interrupted
+     */
+    public List<WebXTunnel> select(long timeoutMs) throws InterruptedException {
+        return this.doSelect(timeoutMs > 0 ? TimeUnit.MILLISECONDS.toNanos(timeoutMs) : -1);
+    }
+
+    /**
+     * Returns the tunnels with messages waiting to be read without waiting
+     * @return the tunnels with messages waiting to be read
+     * @throws InterruptedException thrown if the thread is interrupted
+     */
+    public List<WebXTunnel> selectNow() throws InterruptedException {
+        return this.doSelect(0);
+    }
+
+    /**
+     * Causes the current selection (or the next one if no selection is in progress) to return immediately
+     */
+    public void wakeup() {
+        this.lock.lock();
+        try {
+            this.wakeupPending = true;
+            this.ready.signalAll();
+
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the selector: all tunnels are deregistered (the tunnels are not disconnected) and any selection in progress returns
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        for (WebXTunnel tunnel : List.copyOf(this.registrations.keySet())) {
+            this.deregister(tunnel);
+        }
+        this.wakeup();
+    }
+
+    /**
+     * Adds a tunnel to the ready-set and wakes the selecting thread: called by the message queue of the tunnel when messages are queued
+     * while none was waiting
+     * @param tunnel the tunnel
+     */
+    private void onReady(final WebXTunnel tunnel) {
+        this.lock.lock();
+        try {
+            if (this.registrations.containsKey(tunnel) && this.readyTunnels.add(tunnel)) {
+                this.ready.signal();
+            }
+
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for ready tunnels. The tunnels of the previous selection are first re-examined: their queues only notify the selector
+     * when they become non-empty so tunnels that have not been fully drained must be selected again, and closed tunnels are deregistered.
+     * @param timeoutNanos the maximum time to wait in nanoseconds (negative to wait indefinitely, 0 to return immediately)
+     * @return the ready tunnels
+     * @throws InterruptedException thrown if the waiting thread is interrupted
+     */
+    private List<WebXTunnel> doSelect(long timeoutNanos) throws InterruptedException {
+        this.selectionLock.lockInterruptibly();
+        try {
+            for (WebXTunnel tunnel : this.selectedTunnels) {
+                if (this.registrations.containsKey(tunnel)) {
+                    if (!tunnel.isConnected()) {
+                        this.deregister(tunnel);
+
+                    } else if (tunnel.hasQueuedMessages()) {
+                        this.onReady(tunnel);
+                    }
+                }
+            }
+
+            this.lock.lockInterruptibly();
+            try {
+                long remainingNanos = timeoutNanos;
+                while (this.readyTunnels.isEmpty() && !this.wakeupPending && !this.closed) {
+                    if (remainingNanos < 0) {
+                        this.ready.await();
+
+                    } else if (remainingNanos > 0) {
+                        remainingNanos = Math.max(0, this.ready.awaitNanos(remainingNanos));
+
+                    } else {
+                        break;
+                    }
+                }
+                this.wakeupPending = false;
+
+                this.selectedTunnels = new ArrayList<>(this.readyTunnels);
+                this.readyTunnels.clear();
+
+            } finally {
+                this.lock.unlock();
+            }
+
+            return List.copyOf(this.selectedTunnels);
+
+        } finally {
+            this.selectionLock.unlock();
+        }
+    }
+}
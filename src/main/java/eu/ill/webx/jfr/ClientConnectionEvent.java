@@ -0,0 +1,54 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Connection of a client to a session (including the creation of the session if required)
+ */
+@Name("eu.ill.webx.ClientConnection")
+@Label("Client Connection")
+@Category({"WebX Relay", "Client"})
+@Description("Connection of a client to a session (including the creation of the session if required)")
+public class ClientConnectionEvent extends Event {
+
+    /**
+     * The hostname
+     */
+    @Label("Hostname")
+    public String hostname;
+
+    /**
+     * The session Id, null if the connection failed
+     */
+    @Label("Session Id")
+    public String sessionId;
+
+    /**
+     * The client Id, null if the connection failed or the client is waiting for the session to start
+     */
+    @Label("Client Id")
+    public String clientId;
+
+    /**
+     * False if the connection failed
+     */
+    @Label("Success")
+    public boolean success;
+}
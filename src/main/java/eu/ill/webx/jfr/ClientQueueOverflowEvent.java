@@ -0,0 +1,61 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * The message queue of a client has exceeded the overflow threshold: the client application is not reading messages quickly enough
+ */
+@Name("eu.ill.webx.ClientQueueOverflow")
+@Label("Client Queue Overflow")
+@Category({"WebX Relay", "Client"})
+@Description("The message queue of a client has exceeded the overflow threshold: the client application is not reading messages quickly enough")
+public class ClientQueueOverflowEvent extends Event {
+
+    /**
+     * The session Id
+     */
+    @Label("Session Id")
+    public String sessionId;
+
+    /**
+     * The client Id
+     */
+    @Label("Client Id")
+    public String clientId;
+
+    /**
+     * The number of queued messages
+     */
+    @Label("Queue Depth")
+    public int queueDepth;
+
+    /**
+     * The total size of the queued messages
+     */
+    @Label("Queued Bytes")
+    @DataAmount
+    public long queuedBytes;
+
+    /**
+     * The overflow threshold
+     */
+    @Label("Threshold")
+    public int threshold;
+}
@@ -0,0 +1,54 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Connection of the relay to a WebX Host (WebX Router or standalone WebX Engine)
+ */
+@Name("eu.ill.webx.HostConnection")
+@Label("Host Connection")
+@Category({"WebX Relay", "Host"})
+@Description("Connection of the relay to a WebX Host (WebX Router or standalone WebX Engine)")
+public class HostConnectionEvent extends Event {
+
+    /**
+     * The hostname
+     */
+    @Label("Hostname")
+    public String hostname;
+
+    /**
+     * The port of the client connector
+     */
+    @Label("Port")
+    public int port;
+
+    /**
+     * True if the host is a standalone WebX Engine
+     */
+    @Label("Standalone")
+    public boolean standalone;
+
+    /**
+     * False if the connection failed
+     */
+    @Label("Success")
+    public boolean success;
+}
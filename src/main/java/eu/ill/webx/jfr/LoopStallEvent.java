@@ -0,0 +1,55 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * A relay loop (message subscriber, instruction publisher or session validator) has been busy without making progress for longer than the stall threshold
+ */
+@Name("eu.ill.webx.LoopStall")
+@Label("Loop Stall")
+@Category({"WebX Relay", "Host"})
+@Description("A relay loop (message subscriber, instruction publisher or session validator) has been busy without making progress for longer than the stall threshold")
+public class LoopStallEvent extends Event {
+
+    /**
+     * The hostname
+     */
+    @Label("Hostname")
+    public String hostname;
+
+    /**
+     * The name of the loop
+     */
+    @Label("Loop")
+    public String loop;
+
+    /**
+     * The thread running the loop
+     */
+    @Label("Loop Thread")
+    public Thread loopThread;
+
+    /**
+     * The time since the last progress of the loop
+     */
+    @Label("Stall Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    public long stallDuration;
+}
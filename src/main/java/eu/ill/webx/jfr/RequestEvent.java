@@ -0,0 +1,48 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Synchronous control request to the WebX Router or WebX Engine (comm, create, status, ping, connect, disconnect)
+ */
+@Name("eu.ill.webx.Request")
+@Label("Request")
+@Category({"WebX Relay", "Transport"})
+@Description("Synchronous control request to the WebX Router or WebX Engine (comm, create, status, ping, connect, disconnect)")
+public class RequestEvent extends Event {
+
+    /**
+     * The request type
+     */
+    @Label("Type")
+    public String type;
+
+    /**
+     * The socket used for the request (connector or session)
+     */
+    @Label("Channel")
+    public String channel;
+
+    /**
+     * False if the request failed
+     */
+    @Label("Success")
+    public boolean success;
+}
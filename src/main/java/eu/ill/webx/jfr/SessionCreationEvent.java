@@ -0,0 +1,48 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Creation of a session in the relay (new WebX session or connection to a running one)
+ */
+@Name("eu.ill.webx.SessionCreation")
+@Label("Session Creation")
+@Category({"WebX Relay", "Session"})
+@Description("Creation of a session in the relay (new WebX session or connection to a running one)")
+public class SessionCreationEvent extends Event {
+
+    /**
+     * The hostname
+     */
+    @Label("Hostname")
+    public String hostname;
+
+    /**
+     * The session Id
+     */
+    @Label("Session Id")
+    public String sessionId;
+
+    /**
+     * The creation status of the session (STARTING or RUNNING)
+     */
+    @Label("Status")
+    public String status;
+}
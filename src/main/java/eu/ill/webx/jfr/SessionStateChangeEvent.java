@@ -0,0 +1,48 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Change of state of a session (creation status updates and stop)
+ */
+@Name("eu.ill.webx.SessionStateChange")
+@Label("Session State Change")
+@Category({"WebX Relay", "Session"})
+@Description("Change of state of a session (creation status updates and stop)")
+public class SessionStateChangeEvent extends Event {
+
+    /**
+     * The session Id
+     */
+    @Label("Session Id")
+    public String sessionId;
+
+    /**
+     * The previous state
+     */
+    @Label("Previous State")
+    public String previousState;
+
+    /**
+     * The new state (STARTING, RUNNING or STOPPED)
+     */
+    @Label("State")
+    public String state;
+}
@@ -0,0 +1,42 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Request of the creation status of a session that is starting
+ */
+@Name("eu.ill.webx.SessionStatus")
+@Label("Session Status Poll")
+@Category({"WebX Relay", "Session"})
+@Description("Request of the creation status of a session that is starting")
+public class SessionStatusEvent extends Event {
+
+    /**
+     * The session Id
+     */
+    @Label("Session Id")
+    public String sessionId;
+
+    /**
+     * The status returned by the WebX Router (EMPTY, ERROR, STARTING or RUNNING), null if the request failed
+     */
+    @Label("Status")
+    public String status;
+}
@@ -0,0 +1,50 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Dispatch of a batch of messages from the message subscriber to the sessions and clients of a host that exceeded the threshold
+ */
+@Name("eu.ill.webx.SlowDispatch")
+@Label("Slow Dispatch")
+@Category({"WebX Relay", "Host"})
+@Description("Dispatch of a batch of messages from the message subscriber to the sessions and clients of a host that exceeded the threshold")
+@Threshold("5 ms")
+public class SlowDispatchEvent extends Event {
+
+    /**
+     * The hostname
+     */
+    @Label("Hostname")
+    public String hostname;
+
+    /**
+     * The number of messages in the batch
+     */
+    @Label("Message Count")
+    public int messageCount;
+
+    /**
+     * The total size of the messages in the batch
+     */
+    @Label("Bytes")
+    @DataAmount
+    public long byteCount;
+}
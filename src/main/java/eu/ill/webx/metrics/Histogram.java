@@ -0,0 +1,166 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of long values (for example durations in microseconds) with fixed bucket upper bounds.
+ * Recording a value is allocation-free and can be done concurrently from any thread: the bucket is found by a binary search
+ * and incremented atomically. Values greater than the last upper bound are counted in an overflow bucket.
+ * Bucket counts are not cumulative: each value is counted once, in the first bucket with an upper bound greater or equal to the value.
+ */
+public class Histogram {
+
+    private final long[] upperBounds;
+    private final AtomicLongArray counts;
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * Creates a histogram with exponentially increasing bucket upper bounds (eg 100, 200, 400, ...)
+     * @param firstUpperBound the upper bound of the first bucket (must be positive)
+     * @param factor the multiplication factor between successive upper bounds (must be greater than 1)
+     * @param bucketCount the number of buckets (excluding the overflow bucket)
+     * @return a new histogram
+     */
+    public static Histogram exponential(long firstUpperBound, double factor, int bucketCount) {
+        final long[] upperBounds = new long[bucketCount];
+        double upperBound = firstUpperBound;
+        for (int i = 0; i < bucketCount; i++) {
+            upperBounds[i] = Math.round(upperBound);
+            upperBound *= factor;
+        }
+        return new Histogram(upperBounds);
+    }
+
+    /**
+     * Constructor taking the upper bounds of the buckets
+     * @param upperBounds the bucket upper bounds, strictly increasing
+     */
+    public Histogram(final long... upperBounds) {
+        for (int i = 1; i < upperBounds.length; i++) {
+            if (upperBounds[i] <= upperBounds[i - 1]) {
+                throw new IllegalArgumentException("Histogram upper bounds must be strictly increasing");
+            }
+        }
+        this.upperBounds = upperBounds.clone();
+        this.counts = new AtomicLongArray(upperBounds.length + 1);
+    }
+
+    /**
+     * Creates an empty histogram with the same bucket upper bounds as this one
+     * @return a new histogram
+     */
+    public Histogram newEmpty() {
+        return new Histogram(this.upperBounds);
+    }
+
+    /**
+     * Records a value
+     * @param value the value
+     */
+    public void record(long value) {
+        int index = Arrays.binarySearch(this.upperBounds, value);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        this.counts.incrementAndGet(index);
+        this.sum.addAndGet(value);
+    }
+
+    /**
+     * Returns the number of buckets, excluding the overflow bucket
+     * @return the number of buckets
+     */
+    public int getBucketCount() {
+        return this.upperBounds.length;
+    }
+
+    /**
+     * Returns the upper bound of a bucket
+     * @param bucket the bucket index
+     * @return the upper bound (inclusive)
+     */
+    public long getUpperBound(int bucket) {
+        return this.upperBounds[bucket];
+    }
+
+    /**
+     * Returns the number of values recorded in a bucket. The overflow bucket has the index getBucketCount().
+     * @param bucket the bucket index
+     * @return the number of values in the bucket
+     */
+    public long getCount(int bucket) {
+        return this.counts.get(bucket);
+    }
+
+    /**
+     * Returns the total number of recorded values
+     * @return the number of values
+     */
+    public long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < this.counts.length(); i++) {
+            total += this.counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the sum of the recorded values
+     * @return the sum of the values
+     */
+    public long getSum() {
+        return this.sum.get();
+    }
+
+    /**
+     * Returns an estimate of a percentile of the recorded values: the upper bound of the bucket containing the percentile
+     * (the last upper bound if the percentile is in the overflow bucket).
+     * @param percentile the percentile, between 0 and 100
+     * @return the estimated value, or 0 if no value has been recorded
+     */
+    public long getPercentile(double percentile) {
+        final long total = this.getTotalCount();
+        if (total == 0 || this.upperBounds.length == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long cumulative = 0;
+        for (int i = 0; i < this.upperBounds.length; i++) {
+            cumulative += this.counts.get(i);
+            if (cumulative >= rank) {
+                return this.upperBounds[i];
+            }
+        }
+        return this.upperBounds[this.upperBounds.length - 1];
+    }
+
+    /**
+     * Resets all the bucket counts and the sum
+     */
+    public void reset() {
+        for (int i = 0; i < this.counts.length(); i++) {
+            this.counts.set(i, 0);
+        }
+        this.sum.set(0);
+    }
+}
@@ -0,0 +1,594 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import eu.ill.webx.model.Message;
+import eu.ill.webx.model.RequestType;
+import eu.ill.webx.relay.WebXClient;
+import eu.ill.webx.relay.WebXHost;
+import eu.ill.webx.relay.WebXSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * RelayMetrics implementation that exposes the relay metrics in the Prometheus text format. The exporter is set in the host
+ * configuration (withMetrics) and can either serve the metrics itself on a JDK HttpServer (start) or be scraped by an existing
+ * endpoint of the application (scrape).
+ * Counters are accumulated per host, session and client as the relay reports activity, and gauges (queue depths, client counts)
+ * are read from the live relay objects when the metrics are scraped. The state of a session or client is released when it is stopped
+ * or disconnected.
+ * Metrics are rendered into a reused buffer without intermediate strings so that scraping a relay with many clients does not
+ * produce significant garbage.
+ */
+public class PrometheusExporter implements RelayMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrometheusExporter.class);
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final RequestType[] REQUEST_TYPES = RequestType.values();
+    private static final String[] REQUEST_TYPE_LABELS = new String[REQUEST_TYPES.length];
+    static {
+        for (int i = 0; i < REQUEST_TYPES.length; i++) {
+            REQUEST_TYPE_LABELS[i] = REQUEST_TYPES[i].name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Metrics of a host. Durations are recorded in microseconds.
+     */
+    private static class HostState {
+        private final WebXHost host;
+        private final String label;
+        private final LongAdder messages = new LongAdder();
+        private final LongAdder messageBytes = new LongAdder();
+        private final LongAdder instructions = new LongAdder();
+        private final LongAdder instructionBytes = new LongAdder();
+        private final AtomicLongArray requestFailures = new AtomicLongArray(REQUEST_TYPES.length);
+        private final Histogram[] requestDurations = new Histogram[REQUEST_TYPES.length];
+        private final Histogram connectionDurations = Histogram.exponential(1000, 2, 16);
+        private final LongAdder connectionFailures = new LongAdder();
+        private final LongAdder loopStalls = new LongAdder();
+        private volatile int sessionCount;
+
+        private HostState(final WebXHost host) {
+            this.host = host;
+            this.label = host.getHostname() + ":" + host.getPort();
+            for (int i = 0; i < this.requestDurations.length; i++) {
+                this.requestDurations[i] = Histogram.exponential(250, 2, 16);
+            }
+        }
+    }
+
+    /**
+     * Metrics of a session. Durations are recorded in microseconds.
+     */
+    private static class SessionState {
+        private final WebXSession session;
+        private final String label;
+        private final LongAdder messages = new LongAdder();
+        private final LongAdder messageBytes = new LongAdder();
+        private final LongAdder deliveries = new LongAdder();
+        private final Histogram pingRtt = Histogram.exponential(500, 2, 14);
+
+        private SessionState(final WebXSession session) {
+            this.session = session;
+            this.label = session.getSessionId().hexString();
+        }
+    }
+
+    /**
+     * Metrics of a client
+     */
+    private static class ClientState {
+        private final WebXClient client;
+        private final String sessionLabel;
+        private String clientLabel;
+        private final LongAdder messagesRead = new LongAdder();
+        private final LongAdder droppedMessages = new LongAdder();
+
+        private ClientState(final WebXClient client) {
+            this.client = client;
+            this.sessionLabel = client.getSessionId().hexString();
+        }
+
+        private String clientLabel() {
+            if (this.clientLabel == null && this.client.getClientIdentifier() != null) {
+                this.clientLabel = this.client.getClientIdentifier().clientIdString();
+            }
+            return this.clientLabel != null ? this.clientLabel : "";
+        }
+    }
+
+    private final Map<WebXHost, HostState> hosts = new ConcurrentHashMap<>();
+    private final Map<WebXSession, SessionState> sessions = new ConcurrentHashMap<>();
+    private final Map<WebXClient, ClientState> clients = new ConcurrentHashMap<>();
+
+    private final PrometheusWriter writer = new PrometheusWriter();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Default constructor
+     */
+    public PrometheusExporter() {
+    }
+
+    /**
+     * Starts an HTTP server serving the metrics on the /metrics path of the given port (all interfaces)
+     * @param port the port
+     * @return this exporter
+     * @throws IOException thrown if the server cannot be started
+     */
+    public PrometheusExporter start(int port) throws IOException {
+        return this.start(new InetSocketAddress(port));
+    }
+
+    /**
+     * Starts an HTTP server serving the metrics on the /metrics path of the given address. Requests are handled by a single daemon thread.
+     * @param address the address to bind
+     * @return this exporter
+     * @throws IOException thrown if the server cannot be started
+     */
+    public synchronized PrometheusExporter start(final InetSocketAddress address) throws IOException {
+        if (this.server == null) {
+            this.executor = Executors.newSingleThreadExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "webx-prometheus-exporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            this.server = HttpServer.create(address, 0);
+            this.server.createContext("/metrics", this::handle);
+            this.server.setExecutor(this.executor);
+            this.server.start();
+
+            logger.info("Prometheus exporter listening on {}", this.server.getAddress());
+        }
+        return this;
+    }
+
+    /**
+     * Stops the HTTP server
+     */
+    public synchronized void stop() {
+        if (this.server != null) {
+            this.server.stop(0);
+            this.executor.shutdown();
+            this.server = null;
+            this.executor = null;
+
+            logger.info("Prometheus exporter stopped");
+        }
+    }
+
+    /**
+     * Renders the metrics in the Prometheus text format to an output stream (used to expose the metrics through an
+     * existing endpoint of the application)
+     * @param outputStream the output stream
+     * @throws IOException thrown if the write fails
+     */
+    public void scrape(final OutputStream outputStream) throws IOException {
+        synchronized (this.writer) {
+            this.render();
+            this.writer.writeTo(outputStream);
+        }
+    }
+
+    @Override
+    public void onMessagesReceived(WebXHost host, int messageCount, long byteCount) {
+        final HostState state = this.hostState(host);
+        state.messages.add(messageCount);
+        state.messageBytes.add(byteCount);
+    }
+
+    @Override
+    public void onInstructionSent(WebXHost host, int byteCount) {
+        final HostState state = this.hostState(host);
+        state.instructions.increment();
+        state.instructionBytes.add(byteCount);
+    }
+
+    @Override
+    public void onRequestCompleted(WebXHost host, RequestType requestType, long durationNs, boolean success) {
+        final HostState state = this.hostState(host);
+        state.requestDurations[requestType.ordinal()].record(durationNs / 1000);
+        if (!success) {
+            state.requestFailures.incrementAndGet(requestType.ordinal());
+        }
+    }
+
+    @Override
+    public void onClientConnection(WebXHost host, long durationNs, boolean success) {
+        final HostState state = this.hostState(host);
+        state.connectionDurations.record(durationNs / 1000);
+        if (!success) {
+            state.connectionFailures.increment();
+        }
+    }
+
+    @Override
+    public void onLoopStalled(WebXHost host, String loopName, long stallNs) {
+        this.hostState(host).loopStalls.increment();
+    }
+
+    @Override
+    public void onHostDisconnected(WebXHost host) {
+        this.hosts.remove(host);
+    }
+
+    @Override
+    public void onActiveSessions(WebXHost host, int sessionCount) {
+        this.hostState(host).sessionCount = sessionCount;
+    }
+
+    @Override
+    public void onSessionMessage(WebXSession session, Message.Type type, int byteCount) {
+        final SessionState state = this.sessionState(session);
+        state.messages.increment();
+        state.messageBytes.add(byteCount);
+    }
+
+    @Override
+    public void onSessionPing(WebXSession session, long rttNs) {
+        this.sessionState(session).pingRtt.record(rttNs / 1000);
+    }
+
+    @Override
+    public void onSessionStopped(WebXSession session) {
+        this.sessions.remove(session);
+    }
+
+    @Override
+    public void onSessionFanOut(WebXSession session, int messageCount, int deliveryCount) {
+        this.sessionState(session).deliveries.add(deliveryCount);
+    }
+
+    @Override
+    public void onClientConnected(WebXClient client) {
+        this.clients.computeIfAbsent(client, ClientState::new);
+    }
+
+    @Override
+    public void onClientDequeued(WebXClient client, int queueDepth, long queuedBytes) {
+        final ClientState state = this.clients.get(client);
+        if (state != null) {
+            state.messagesRead.increment();
+        }
+    }
+
+    @Override
+    public void onClientMessagesDropped(WebXClient client, long messageCount) {
+        final ClientState state = this.clients.get(client);
+        if (state != null) {
+            state.droppedMessages.add(messageCount);
+        }
+    }
+
+    @Override
+    public void onClientDisconnected(WebXClient client) {
+        this.clients.remove(client);
+    }
+
+    /**
+     * Handles an HTTP request for the metrics
+     * @param exchange the HTTP exchange
+     * @throws IOException thrown if the response cannot be sent
+     */
+    private void handle(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            synchronized (this.writer) {
+                this.render();
+                exchange.sendResponseHeaders(200, this.writer.length());
+                this.writer.writeTo(exchange.getResponseBody());
+            }
+        }
+    }
+
+    /**
+     * Returns the state of a host, creating it if necessary
+     * @param host the host
+     * @return the host state
+     */
+    private HostState hostState(final WebXHost host) {
+        final HostState state = this.hosts.get(host);
+        return state != null ? state : this.hosts.computeIfAbsent(host, HostState::new);
+    }
+
+    /**
+     * Returns the state of a session, creating it if necessary
+     * @param session the session
+     * @return the session state
+     */
+    private SessionState sessionState(final WebXSession session) {
+        final SessionState state = this.sessions.get(session);
+        return state != null ? state : this.sessions.computeIfAbsent(session, SessionState::new);
+    }
+
+    /**
+     * Renders all metrics into the writer
+     */
+    private void render() {
+        final PrometheusWriter writer = this.writer;
+        writer.reset();
+
+        writer.family("webx_host_connected", "gauge", "Whether the transport to the host is connected");
+        for (HostState state : this.hosts.values()) {
+            this.hostSample(writer, "webx_host_connected", state).append(state.host.isConnected() ? 1 : 0).append('\n');
+        }
+        writer.family("webx_host_sessions", "gauge", "Number of sessions of the host");
+        for (HostState state : this.hosts.values()) {
+            this.hostSample(writer, "webx_host_sessions", state).append(state.sessionCount).append('\n');
+        }
+        writer.family("webx_host_clients", "gauge", "Number of clients connected to the host");
+        for (HostState state : this.hosts.values()) {
+            this.hostSample(writer, "webx_host_clients", state).append(state.host.getClientCount()).append('\n');
+        }
+        writer.family("webx_host_messages_received_total", "counter", "Messages received from the host");
+        for (HostState state : this.hosts.values()) {
+            this.hostSample(writer, "webx_host_messages_received_total", state).append(state.messages.sum()).append('\n');
+        }
+        writer.family("webx_host_received_bytes_total", "counter", "Bytes of messages received from the host");
+        for (HostState state : this.hosts.values()) {
+            this.hostSample(writer, "webx_host_received_bytes_total", state).append(state.messageBytes.sum()).append('\n');
+        }
+        writer.family("webx_host_instructions_sent_total", "counter", "Instructions sent to the host");
+        for (HostState state : this.hosts.values()) {
+            this.hostSample(writer, "webx_host_instructions_sent_total", state).append(state.instructions.sum()).append('\n');
+        }
+        writer.family("webx_host_sent_bytes_total", "counter", "Bytes of instructions sent to the host");
+        for (HostState state : this.hosts.values()) {
+            this.hostSample(writer, "webx_host_sent_bytes_total", state).append(state.instructionBytes.sum()).append('\n');
+        }
+        writer.family("webx_host_dropped_messages_total", "counter", "Messages from the host known to have been lost");
+        for (HostState state : this.hosts.values()) {
+            this.hostSample(writer, "webx_host_dropped_messages_total", state).append(state.host.getDroppedFrameCount()).append('\n');
+        }
+        writer.family("webx_host_subscriber_reconnections_total", "counter", "Reconnections of the message subscriber to the host");
+        for (HostState state : this.hosts.values()) {
+            this.hostSample(writer, "webx_host_subscriber_reconnections_total", state).append(state.host.getSubscriberReconnectionCount()).append('\n');
+        }
+        writer.family("webx_host_request_failures_total", "counter", "Failed synchronous requests to the host");
+        for (HostState state : this.hosts.values()) {
+            for (int i = 0; i < REQUEST_TYPES.length; i++) {
+                writer.append("webx_host_request_failures_total{").label("host", state.label).append(',').label("type", REQUEST_TYPE_LABELS[i]).append("} ")
+                        .append(state.requestFailures.get(i)).append('\n');
+            }
+        }
+        writer.family("webx_host_request_duration_seconds", "histogram", "Duration of synchronous requests to the host");
+        for (HostState state : this.hosts.values()) {
+            for (int i = 0; i < REQUEST_TYPES.length; i++) {
+                this.histogram(writer, "webx_host_request_duration_seconds", "host", state.label, "type", REQUEST_TYPE_LABELS[i], state.requestDurations[i]);
+            }
+        }
+        writer.family("webx_host_client_connection_duration_seconds", "histogram", "Duration of client connections (session creation and client connection)");
+        for (HostState state : this.hosts.values()) {
+            this.histogram(writer, "webx_host_client_connection_duration_seconds", "host", state.label, null, null, state.connectionDurations);
+        }
+        writer.family("webx_host_client_connection_failures_total", "counter", "Failed client connections");
+        for (HostState state : this.hosts.values()) {
+            this.hostSample(writer, "webx_host_client_connection_failures_total", state).append(state.connectionFailures.sum()).append('\n');
+        }
+        writer.family("webx_host_loop_stalls_total", "counter", "Stalls of the subscriber, publisher and validator loops of the host");
+        for (HostState state : this.hosts.values()) {
+            this.hostSample(writer, "webx_host_loop_stalls_total", state).append(state.loopStalls.sum()).append('\n');
+        }
+        writer.family("webx_host_stalled_loops", "gauge", "Loops of the host that are currently stalled");
+        for (HostState state : this.hosts.values()) {
+            this.hostSample(writer, "webx_host_stalled_loops", state).append(state.host.getStalledLoopCount()).append('\n');
+        }
+
+        writer.family("webx_session_clients", "gauge", "Number of clients of the session");
+        for (SessionState state : this.sessions.values()) {
+            this.sessionSample(writer, "webx_session_clients", state).append(state.session.getClientCount()).append('\n');
+        }
+        writer.family("webx_session_messages_total", "counter", "Messages received for the session");
+        for (SessionState state : this.sessions.values()) {
+            this.sessionSample(writer, "webx_session_messages_total", state).append(state.messages.sum()).append('\n');
+        }
+        writer.family("webx_session_message_bytes_total", "counter", "Bytes of messages received for the session");
+        for (SessionState state : this.sessions.values()) {
+            this.sessionSample(writer, "webx_session_message_bytes_total", state).append(state.messageBytes.sum()).append('\n');
+        }
+        writer.family("webx_session_deliveries_total", "counter", "Messages delivered to the clients of the session");
+        for (SessionState state : this.sessions.values()) {
+            this.sessionSample(writer, "webx_session_deliveries_total", state).append(state.deliveries.sum()).append('\n');
+        }
+        writer.family("webx_session_dropped_messages_total", "counter", "Messages of the session known to have been lost");
+        for (SessionState state : this.sessions.values()) {
+            this.sessionSample(writer, "webx_session_dropped_messages_total", state).append(state.session.getDroppedFrameCount()).append('\n');
+        }
+        writer.family("webx_session_ping_rtt_seconds", "histogram", "Round-trip time of the session pings");
+        for (SessionState state : this.sessions.values()) {
+            this.histogram(writer, "webx_session_ping_rtt_seconds", "session_id", state.label, null, null, state.pingRtt);
+        }
+
+        writer.family("webx_session_clock_offset_seconds", "gauge", "Estimated offset of the WebX Engine clock relative to the relay clock");
+        for (SessionState state : this.sessions.values()) {
+            if (state.session.isClockOffsetValid()) {
+                this.sessionSample(writer, "webx_session_clock_offset_seconds", state).appendMicrosAsSeconds(state.session.getClockOffsetMs() * 1000).append('\n');
+            }
+        }
+        writer.family("webx_session_transit_latency_seconds", "histogram", "Latency between the emission of messages by the WebX Engine and their reception by the relay");
+        for (SessionState state : this.sessions.values()) {
+            this.histogram(writer, "webx_session_transit_latency_seconds", "session_id", state.label, null, null, state.session.getTransitLatency());
+        }
+        writer.family("webx_session_queue_latency_seconds", "histogram", "Time spent by messages in the relay between their reception and their read by the client application");
+        for (SessionState state : this.sessions.values()) {
+            this.histogram(writer, "webx_session_queue_latency_seconds", "session_id", state.label, null, null, state.session.getQueueLatency());
+        }
+        writer.family("webx_session_type_messages_total", "counter", "Messages received for the session by raw message type Id");
+        for (SessionState state : this.sessions.values()) {
+            final TrafficStatistics traffic = state.session.getTrafficStatistics();
+            for (Integer typeId : traffic.getTypeIds()) {
+                writer.append("webx_session_type_messages_total{").label("session_id", state.label).append(',').label("type", typeId.toString()).append("} ")
+                        .append(traffic.getSizes(typeId).getTotalCount()).append('\n');
+            }
+        }
+        writer.family("webx_session_type_bytes_total", "counter", "Bytes of messages received for the session by raw message type Id");
+        for (SessionState state : this.sessions.values()) {
+            final TrafficStatistics traffic = state.session.getTrafficStatistics();
+            for (Integer typeId : traffic.getTypeIds()) {
+                writer.append("webx_session_type_bytes_total{").label("session_id", state.label).append(',').label("type", typeId.toString()).append("} ")
+                        .append(traffic.getSizes(typeId).getSum()).append('\n');
+            }
+        }
+        writer.family("webx_session_message_size_bytes", "histogram", "Size of the messages received for the session by raw message type Id");
+        for (SessionState state : this.sessions.values()) {
+            final TrafficStatistics traffic = state.session.getTrafficStatistics();
+            for (Integer typeId : traffic.getTypeIds()) {
+                this.histogram(writer, "webx_session_message_size_bytes", "session_id", state.label, "type", typeId.toString(), traffic.getSizes(typeId), false);
+            }
+        }
+
+        writer.family("webx_client_queue_depth", "gauge", "Messages waiting to be read by the client");
+        for (ClientState state : this.clients.values()) {
+            this.clientSample(writer, "webx_client_queue_depth", state).append(state.client.getQueueDepth()).append('\n');
+        }
+        writer.family("webx_client_queued_bytes", "gauge", "Bytes of the messages waiting to be read by the client");
+        for (ClientState state : this.clients.values()) {
+            this.clientSample(writer, "webx_client_queued_bytes", state).append(state.client.getQueuedBytes()).append('\n');
+        }
+        writer.family("webx_client_messages_read_total", "counter", "Messages read by the client");
+        for (ClientState state : this.clients.values()) {
+            this.clientSample(writer, "webx_client_messages_read_total", state).append(state.messagesRead.sum()).append('\n');
+        }
+        writer.family("webx_client_dropped_messages_total", "counter", "Messages destined to the client known to have been lost");
+        for (ClientState state : this.clients.values()) {
+            this.clientSample(writer, "webx_client_dropped_messages_total", state).append(state.droppedMessages.sum()).append('\n');
+        }
+    }
+
+    /**
+     * Writes the name and labels of a host sample
+     * @param writer the writer
+     * @param name the metric name
+     * @param state the host state
+     * @return the writer
+     */
+    private PrometheusWriter hostSample(final PrometheusWriter writer, final String name, final HostState state) {
+        return writer.append(name).append('{').label("host", state.label).append("} ");
+    }
+
+    /**
+     * Writes the name and labels of a session sample
+     * @param writer the writer
+     * @param name the metric name
+     * @param state the session state
+     * @return the writer
+     */
+    private PrometheusWriter sessionSample(final PrometheusWriter writer, final String name, final SessionState state) {
+        return writer.append(name).append('{').label("session_id", state.label).append("} ");
+    }
+
+    /**
+     * Writes the name and labels of a client sample
+     * @param writer the writer
+     * @param name the metric name
+     * @param state the client state
+     * @return the writer
+     */
+    private PrometheusWriter clientSample(final PrometheusWriter writer, final String name, final ClientState state) {
+        return writer.append(name).append('{').label("session_id", state.sessionLabel).append(',').label("client_id", state.clientLabel()).append("} ");
+    }
+
+    /**
+     * Writes the cumulative buckets, sum and count of a histogram of microsecond values (exposed in seconds)
+     * @param writer the writer
+     * @param name the metric name
+     * @param labelName the name of the first label
+     * @param labelValue the value of the first label
+     * @param secondLabelName the name of an optional second label (null if not used)
+     * @param secondLabelValue the value of the second label
+     * @param histogram the histogram
+     */
+    private void histogram(final PrometheusWriter writer, final String name, final String labelName, final String labelValue, final String secondLabelName, final String secondLabelValue, final Histogram histogram) {
+        this.histogram(writer, name, labelName, labelValue, secondLabelName, secondLabelValue, histogram, true);
+    }
+
+    /**
+     * Writes a histogram value
+     * @param writer the writer
+     * @param value the value
+     * @param micros true if the value is in microseconds (written in seconds)
+     * @return the writer
+     */
+    private PrometheusWriter appendValue(final PrometheusWriter writer, long value, boolean micros) {
+        return micros ? writer.appendMicrosAsSeconds(value) : writer.append(value);
+    }
+
+    /**
+     * Writes the cumulative buckets, sum and count of a histogram
+     * @param writer the writer
+     * @param name the metric name
+     * @param labelName the name of the first label
+     * @param labelValue the value of the first label
+     * @param secondLabelName the name of an optional second label (null if not used)
+     * @param secondLabelValue the value of the second label
+     * @param histogram the histogram
+     * @param micros true if the values are microseconds (exposed in seconds), false if the values are exposed as they are (eg bytes)
+     */
+    private void histogram(final PrometheusWriter writer, final String name, final String labelName, final String labelValue, final String secondLabelName, final String secondLabelValue, final Histogram histogram, boolean micros) {
+        long cumulative = 0;
+        for (int i = 0; i <= histogram.getBucketCount(); i++) {
+            cumulative += histogram.getCount(i);
+            writer.append(name).append("_bucket{").label(labelName, labelValue);
+            if (secondLabelName != null) {
+                writer.append(',').label(secondLabelName, secondLabelValue);
+            }
+            writer.append(",le=\"");
+            if (i < histogram.getBucketCount()) {
+                this.appendValue(writer, histogram.getUpperBound(i), micros);
+            } else {
+                writer.append("+Inf");
+            }
+            writer.append("\"} ").append(cumulative).append('\n');
+        }
+
+        writer.append(name).append("_sum{").label(labelName, labelValue);
+        if (secondLabelName != null) {
+            writer.append(',').label(secondLabelName, secondLabelValue);
+        }
+        writer.append("} ");
+        this.appendValue(writer, histogram.getSum(), micros).append('\n');
+
+        writer.append(name).append("_count{").label(labelName, labelValue);
+        if (secondLabelName != null) {
+            writer.append(',').label(secondLabelName, secondLabelValue);
+        }
+        writer.append("} ").append(cumulative).append('\n');
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes the Prometheus text exposition format into a reusable byte buffer. Numbers and ASCII strings are appended
+ * directly to the buffer so that rendering the metrics does not allocate once the buffer has grown to its working size.
+ */
+class PrometheusWriter {
+
+    private static final int MICROS_PER_SECOND = 1000000;
+
+    private byte[] buffer = new byte[64 * 1024];
+    private int length = 0;
+    private final byte[] digits = new byte[20];
+
+    /**
+     * Default constructor
+     */
+    PrometheusWriter() {
+    }
+
+    /**
+     * Empties the buffer, keeping its capacity
+     */
+    void reset() {
+        this.length = 0;
+    }
+
+    /**
+     * Returns the number of bytes written
+     * @return the number of bytes
+     */
+    int length() {
+        return this.length;
+    }
+
+    /**
+     * Writes the buffer to an output stream
+     * @param outputStream the output stream
+     * @throws IOException thrown if the write fails
+     */
+    void writeTo(final OutputStream outputStream) throws IOException {
+        outputStream.write(this.buffer, 0, this.length);
+    }
+
+    /**
+     * Writes the HELP and TYPE lines of a metric family
+     * @param name the metric name
+     * @param type the metric type (counter, gauge, histogram)
+     * @param help the description of the metric
+     * @return this writer
+     */
+    PrometheusWriter family(final String name, final String type, final String help) {
+        return this.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * Appends an ASCII string
+     * @param value the string
+     * @return this writer
+     */
+    PrometheusWriter append(final String value) {
+        final int size = value.length();
+        this.ensureCapacity(size);
+        for (int i = 0; i < size; i++) {
+            this.buffer[this.length++] = (byte) value.charAt(i);
+        }
+        return this;
+    }
+
+    /**
+     * Appends a single ASCII character
+     * @param value the character
+     * @return this writer
+     */
+    PrometheusWriter append(final char value) {
+        this.ensureCapacity(1);
+        this.buffer[this.length++] = (byte) value;
+        return this;
+    }
+
+    /**
+     * Appends a label (name="value") escaping the value as required by the exposition format
+     * @param name the label name
+     * @param value the label value
+     * @return this writer
+     */
+    PrometheusWriter label(final String name, final String value) {
+        this.append(name).append("=\"");
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                final char character = value.charAt(i);
+                if (character == '"' || character == '\\') {
+                    this.append('\\').append(character);
+
+                } else if (character == '\n') {
+                    this.append("\\n");
+
+                } else {
+                    this.append(character < 128 ? character : '?');
+                }
+            }
+        }
+        return this.append('"');
+    }
+
+    /**
+     * Appends a long value
+     * @param value the value
+     * @return this writer
+     */
+    PrometheusWriter append(long value) {
+        if (value == Long.MIN_VALUE) {
+            return this.append(Long.toString(value));
+        }
+
+        if (value < 0) {
+            this.append('-');
+            value = -value;
+        }
+
+        int position = this.digits.length;
+        do {
+            this.digits[--position] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+
+        final int size = this.digits.length - position;
+        this.ensureCapacity(size);
+        System.arraycopy(this.digits, position, this.buffer, this.length, size);
+        this.length += size;
+        return this;
+    }
+
+    /**
+     * Appends a duration in microseconds as a decimal number of seconds
+     * @param micros the duration in microseconds
+     * @return this writer
+     */
+    PrometheusWriter appendMicrosAsSeconds(long micros) {
+        if (micros < 0) {
+            this.append('-');
+            micros = -micros;
+        }
+
+        this.append(micros / MICROS_PER_SECOND).append('.');
+        final long fraction = micros % MICROS_PER_SECOND;
+        for (long divisor = MICROS_PER_SECOND / 10; divisor > 0; divisor /= 10) {
+            this.append((char) ('0' + (fraction / divisor) % 10));
+        }
+        return this;
+    }
+
+    /**
+     * Ensures that the buffer can hold additional bytes, doubling its size if necessary
+     * @param additional the number of bytes to add
+     */
+    private void ensureCapacity(int additional) {
+        if (this.length + additional > this.buffer.length) {
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.length + additional));
+        }
+    }
+}
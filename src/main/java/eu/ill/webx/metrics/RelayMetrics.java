@@ -0,0 +1,156 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.metrics;
+
+import eu.ill.webx.model.Message;
+import eu.ill.webx.model.RequestType;
+import eu.ill.webx.relay.WebXClient;
+import eu.ill.webx.relay.WebXHost;
+import eu.ill.webx.relay.WebXSession;
+
+/**
+ * Service provider interface to report relay metrics to a monitoring system. Implementations are set in the host configuration
+ * and are called from the relay threads (message subscriber, session validators and client application threads) so they must be thread-safe
+ * and fast: they are called on the hot paths of the relay.
+ * All methods take only primitive values and existing relay objects so that no allocation is made when metrics are disabled (the
+ * default NOOP implementation).
+ */
+public interface RelayMetrics {
+
+    /**
+     * Default implementation that ignores all metrics
+     */
+    RelayMetrics NOOP = new RelayMetrics() {};
+
+    /**
+     * Called when a batch of messages is received from the host
+     * @param host the host
+     * @param messageCount the number of messages received
+     * @param byteCount the total size of the messages in bytes
+     */
+    default void onMessagesReceived(WebXHost host, int messageCount, long byteCount) {}
+
+    /**
+     * Called when a client instruction is sent to the host
+     * @param host the host
+     * @param byteCount the size of the instruction in bytes
+     */
+    default void onInstructionSent(WebXHost host, int byteCount) {}
+
+    /**
+     * Called when a synchronous request to the host has completed
+     * @param host the host
+     * @param requestType the type of request
+     * @param durationNs the duration of the request in nanoseconds
+     * @param success false if the request failed (eg timeout)
+     */
+    default void onRequestCompleted(WebXHost host, RequestType requestType, long durationNs, boolean success) {}
+
+    /**
+     * Called when a client connection has been handled by a host (session creation or connection to an existing session)
+     * @param host the host
+     * @param durationNs the duration of the connection setup in nanoseconds
+     * @param success false if the connection failed
+     */
+    default void onClientConnection(WebXHost host, long durationNs, boolean success) {}
+
+    /**
+     * Called when the relay disconnects from a host: any state kept for the host can be released
+     * @param host the host
+     */
+    default void onHostDisconnected(WebXHost host) {}
+
+    /**
+     * Called when a relay loop of a host (message subscriber, instruction publisher or session validator) has stalled
+     * @param host the host
+     * @param loopName the name of the loop
+     * @param stallNs the time since the last progress of the loop in nanoseconds
+     */
+    default void onLoopStalled(WebXHost host, String loopName, long stallNs) {}
+
+    /**
+     * Called when the number of sessions of a host changes
+     * @param host the host
+     * @param sessionCount the number of active sessions
+     */
+    default void onActiveSessions(WebXHost host, int sessionCount) {}
+
+    /**
+     * Called for each message received by a session
+     * @param session the session
+     * @param type the message type
+     * @param byteCount the size of the message in bytes
+     */
+    default void onSessionMessage(WebXSession session, Message.Type type, int byteCount) {}
+
+    /**
+     * Called when a ping of a session has succeeded
+     * @param session the session
+     * @param rttNs the round-trip time of the ping in nanoseconds
+     */
+    default void onSessionPing(WebXSession session, long rttNs) {}
+
+    /**
+     * Called when a session has been stopped: any state kept for the session can be released
+     * @param session the session
+     */
+    default void onSessionStopped(WebXSession session) {}
+
+    /**
+     * Called when a batch of messages has been distributed to the clients of a session
+     * @param session the session
+     * @param messageCount the number of messages in the batch
+     * @param deliveryCount the total number of messages delivered to clients (the fan-out of the batch)
+     */
+    default void onSessionFanOut(WebXSession session, int messageCount, int deliveryCount) {}
+
+    /**
+     * Called when a client has been added to its session: state kept for the client is created here and released when it disconnects
+     * @param client the client
+     */
+    default void onClientConnected(WebXClient client) {}
+
+    /**
+     * Called when messages are added to the queue of a client
+     * @param client the client
+     * @param queueDepth the number of queued messages
+     * @param queuedBytes the total size of the queued messages in bytes
+     */
+    default void onClientQueued(WebXClient client, int queueDepth, long queuedBytes) {}
+
+    /**
+     * Called when a message is read from the queue of a client
+     * @param client the client
+     * @param queueDepth the number of queued messages
+     * @param queuedBytes the total size of the queued messages in bytes
+     */
+    default void onClientDequeued(WebXClient client, int queueDepth, long queuedBytes) {}
+
+    /**
+     * Called when messages destined to a client have been lost
+     * @param client the client
+     * @param messageCount the number of lost messages (0 if unknown)
+     */
+    default void onClientMessagesDropped(WebXClient client, long messageCount) {}
+
+    /**
+     * Called when a client has been disconnected from its session: any state kept for the client can be released
+     * @param client the client
+     */
+    default void onClientDisconnected(WebXClient client) {}
+}
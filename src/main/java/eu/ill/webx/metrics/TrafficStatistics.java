@@ -0,0 +1,105 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.metrics;
+
+import eu.ill.webx.model.MessageTypeStatistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Traffic of a session broken down by the raw message type Id of the message header: for each type the number of messages, the total
+ * number of bytes and a histogram of the message sizes are recorded.
+ * Type Ids from 0 to MAX_TYPE_ID are tracked individually, any other type Id is counted in a single "other" entry (type Id -1).
+ * The size histogram of a type is created when the first message of the type is received, recording is then allocation-free and lock-free.
+ */
+public class TrafficStatistics {
+
+    /**
+     * The largest message type Id that is tracked individually
+     */
+    public static final int MAX_TYPE_ID = 63;
+
+    /**
+     * The type Id under which message types outside the tracked range are counted
+     */
+    public static final int OTHER_TYPE_ID = -1;
+
+    private static final int OTHER_SLOT = MAX_TYPE_ID + 1;
+
+    private final AtomicReferenceArray<Histogram> sizes = new AtomicReferenceArray<>(MAX_TYPE_ID + 2);
+
+    /**
+     * Default constructor
+     */
+    public TrafficStatistics() {
+    }
+
+    /**
+     * Records a message
+     * @param typeId the raw message type Id
+     * @param size the size of the message in bytes
+     */
+    public void record(int typeId, int size) {
+        final int slot = typeId >= 0 && typeId <= MAX_TYPE_ID ? typeId : OTHER_SLOT;
+        Histogram histogram = this.sizes.get(slot);
+        if (histogram == null) {
+            // Message sizes from 64 bytes to 32 MB
+            this.sizes.compareAndSet(slot, null, Histogram.exponential(64, 2, 20));
+            histogram = this.sizes.get(slot);
+        }
+        histogram.record(size);
+    }
+
+    /**
+     * Returns the type Ids of the messages that have been received, in increasing order (the other type Id last)
+     * @return the received type Ids
+     */
+    public List<Integer> getTypeIds() {
+        final List<Integer> typeIds = new ArrayList<>();
+        for (int slot = 0; slot < this.sizes.length(); slot++) {
+            if (this.sizes.get(slot) != null) {
+                typeIds.add(slot == OTHER_SLOT ? OTHER_TYPE_ID : slot);
+            }
+        }
+        return typeIds;
+    }
+
+    /**
+     * Returns the histogram of the sizes in bytes of the messages of a type
+     * @param typeId the message type Id (OTHER_TYPE_ID for the types outside the tracked range)
+     * @return the size histogram, null if no message of the type has been received
+     */
+    public Histogram getSizes(int typeId) {
+        return this.sizes.get(typeId == OTHER_TYPE_ID || typeId > MAX_TYPE_ID || typeId < 0 ? OTHER_SLOT : typeId);
+    }
+
+    /**
+     * Returns a snapshot of the statistics of each message type that has been received
+     * @return the statistics by message type, ordered by type Id (the other type Id last)
+     */
+    public List<MessageTypeStatistics> getStatistics() {
+        final List<MessageTypeStatistics> statistics = new ArrayList<>();
+        for (Integer typeId : this.getTypeIds()) {
+            final Histogram histogram = this.getSizes(typeId);
+            statistics.add(new MessageTypeStatistics(typeId, histogram.getTotalCount(), histogram.getSum(), histogram.getPercentile(50), histogram.getPercentile(99)));
+        }
+        return statistics;
+    }
+}
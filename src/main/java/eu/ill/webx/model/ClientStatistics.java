@@ -0,0 +1,46 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.model;
+
+/**
+ * Snapshot of the traffic and state of a client connection (used for example to adapt the behaviour of the client application or to
+ * display the quality of the connection)
+ * @param messagesRead the number of messages read by the client application
+ * @param bytesRead the total size of the messages read in bytes
+ * @param instructionsWritten the number of instructions sent by the client application
+ * @param bytesWritten the total size of the instructions sent in bytes
+ * @param queueDepth the number of messages waiting to be read
+ * @param queuedBytes the total size of the messages waiting to be read in bytes
+ * @param oldestQueuedMessageAgeMs the time in milliseconds the oldest queued message has been waiting to be read (0 if the queue is empty)
+ * @param lastPingRttMs the round-trip time of the last ping of the session in milliseconds (-1 if the session hasn't been pinged yet)
+ * @param connectedTimeMs the time in milliseconds since the client connected
+ * @param droppedMessages the number of messages dropped because the queue of the client was full
+ * @param coalescedMessages the number of mouse messages replaced by a more recent one before being read
+ */
+public record ClientStatistics(long messagesRead,
+                               long bytesRead,
+                               long instructionsWritten,
+                               long bytesWritten,
+                               int queueDepth,
+                               long queuedBytes,
+                               long oldestQueuedMessageAgeMs,
+                               long lastPingRttMs,
+                               long connectedTimeMs,
+                               long droppedMessages,
+                               long coalescedMessages) {
+}
@@ -0,0 +1,160 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Trace of the set up of a client connection: lists each phase of the connection (connection to the host, requests to the
+ * WebX Router, waits for the transport lock, etc) with its duration so that slow connections can be attributed to the router,
+ * the relay or contention between clients.
+ * A trace is active on the thread that is connecting the client: the phases are recorded by the components of the relay
+ * through the static record method which does nothing if no trace is active.
+ */
+public class ConnectTrace {
+
+    /**
+     * Name of the phase recorded while waiting for the transport lock
+     */
+    public static final String TRANSPORT_LOCK_PHASE = "transport-lock";
+
+    private static final ThreadLocal<ConnectTrace> ACTIVE_TRACE = new ThreadLocal<>();
+
+    /**
+     * A phase of the connection
+     * @param name the name of the phase
+     * @param startNs the start of the phase relative to the start of the trace in nanoseconds
+     * @param durationNs the duration of the phase in nanoseconds
+     */
+    public record Phase(String name, long startNs, long durationNs) {
+
+        /**
+         * Returns the duration of the phase in milliseconds
+         * @return the duration in milliseconds
+         */
+        public double durationMs() {
+            return this.durationNs / 1000000.0;
+        }
+    }
+
+    private final long startTime = System.nanoTime();
+    private final List<Phase> phases = new ArrayList<>();
+    private long durationNs = -1;
+
+    /**
+     * Starts a new trace and makes it active on the current thread
+     * @return the new trace
+     */
+    public static ConnectTrace start() {
+        final ConnectTrace trace = new ConnectTrace();
+        ACTIVE_TRACE.set(trace);
+        return trace;
+    }
+
+    /**
+     * Returns true if a trace is active on the current thread
+     * @return true if a trace is active
+     */
+    public static boolean isActive() {
+        return ACTIVE_TRACE.get() != null;
+    }
+
+    /**
+     * Records a phase that has just terminated in the trace that is active on the current thread (ignored if there is none)
+     * @param name the name of the phase
+     * @param durationNs the duration of the phase in nanoseconds
+     */
+    public static void record(final String name, long durationNs) {
+        final ConnectTrace trace = ACTIVE_TRACE.get();
+        if (trace != null) {
+            trace.addPhase(name, durationNs);
+        }
+    }
+
+    /**
+     * Private constructor: traces are created with the start method
+     */
+    private ConnectTrace() {
+    }
+
+    /**
+     * Terminates the trace: the total duration is fixed and the trace is no longer active on the current thread
+     */
+    public void finish() {
+        if (ACTIVE_TRACE.get() == this) {
+            ACTIVE_TRACE.remove();
+        }
+        if (this.durationNs < 0) {
+            this.durationNs = System.nanoTime() - this.startTime;
+        }
+    }
+
+    /**
+     * Adds a phase that has just terminated
+     * @param name the name of the phase
+     * @param durationNs the duration of the phase in nanoseconds
+     */
+    public synchronized void addPhase(final String name, long durationNs) {
+        final long startNs = System.nanoTime() - durationNs - this.startTime;
+        this.phases.add(new Phase(name, Math.max(0, startNs), durationNs));
+    }
+
+    /**
+     * Returns the phases of the connection in the order they terminated
+     * @return the phases
+     */
+    public synchronized List<Phase> getPhases() {
+        return Collections.unmodifiableList(new ArrayList<>(this.phases));
+    }
+
+    /**
+     * Returns the total duration of the connection in nanoseconds (the elapsed time if the trace is not finished)
+     * @return the total duration in nanoseconds
+     */
+    public long getDurationNs() {
+        return this.durationNs >= 0 ? this.durationNs : System.nanoTime() - this.startTime;
+    }
+
+    /**
+     * Returns the total time spent waiting for the transport lock in nanoseconds
+     * @return the transport lock wait time in nanoseconds
+     */
+    public synchronized long getTransportLockWaitNs() {
+        return this.phases.stream()
+                .filter(phase -> phase.name().equals(TRANSPORT_LOCK_PHASE))
+                .mapToLong(Phase::durationNs)
+                .sum();
+    }
+
+    /**
+     * Returns a one line summary of the trace, eg "total 812.4 ms: host-connection 503.1 ms, transport-lock 0.0 ms, create_async 300.2 ms, ..."
+     * @return the summary of the trace
+     */
+    @Override
+    public synchronized String toString() {
+        final StringBuilder builder = new StringBuilder(String.format("total %.1f ms", this.getDurationNs() / 1000000.0));
+        String separator = ": ";
+        for (Phase phase : this.phases) {
+            builder.append(separator).append(String.format("%s %.1f ms", phase.name(), phase.durationMs()));
+            separator = ", ";
+        }
+        return builder.toString();
+    }
+}
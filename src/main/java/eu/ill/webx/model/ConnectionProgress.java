@@ -0,0 +1,34 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.model;
+
+/**
+ * The progress of an asynchronous connection of a tunnel (see WebXTunnel.connectAsync)
+ */
+public enum ConnectionProgress {
+    /**
+     * The client has been created but the session is starting (for example while the X11 server is spawned): the client
+     * is connected to the WebX Engine once the session is running
+     */
+    STARTING,
+
+    /**
+     * The session is running and the client is connected to the WebX Engine: the tunnel can be used
+     */
+    RUNNING
+}
@@ -0,0 +1,29 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.model;
+
+/**
+ * Handler called when an asynchronous connection of a tunnel progresses. Used for example to inform the user that a new session is starting.
+ */
+public interface ConnectionProgressHandler {
+    /**
+     * Called when the connection reaches a new stage. The handler is called from a relay thread and must return quickly.
+     * @param progress the stage reached by the connection
+     */
+    void onProgress(ConnectionProgress progress);
+}
@@ -0,0 +1,47 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.model;
+
+/**
+ * Holds data concerning messages from the WebX Engine that have been lost before reaching the client (for example dropped
+ * by ZMQ when a high-water mark is reached). Clients receiving this should resynchronise their display.
+ * @param cause how the loss was detected
+ * @param droppedFrames the number of lost messages (0 if unknown)
+ */
+public record FrameLossData(Cause cause, long droppedFrames) {
+
+    /**
+     * Defines how the message loss was detected
+     */
+    public enum Cause {
+        /**
+         * A gap was detected in the sequence numbers of the messages of a session (only if sequence tracking is enabled in the host configuration)
+         */
+        SEQUENCE_GAP,
+
+        /**
+         * The message subscriber socket was disconnected and reconnected: messages published in the meantime are lost
+         */
+        SUBSCRIBER_RECONNECTION,
+
+        /**
+         * The queue of the client was full (the client application doesn't read messages quickly enough): messages have been dropped by the relay
+         */
+        CLIENT_QUEUE_OVERFLOW
+    }
+}
@@ -84,6 +84,8 @@ public class Message implements Comparable<Message> {
     private final Type type;
     private final Long timestamp;
     private final Integer priority;
+    private final int typeId;
+    private final long receptionTime;
 
     /**
      * The public constructor of a Message taking raw message data. The message header is analysed to determine the
@@ -91,11 +93,23 @@ public class Message implements Comparable<Message> {
      * @param data the binary data
      */
     public Message(byte[] data) {
+        this(data, System.nanoTime());
+    }
+
+    /**
+     * Constructor of a Message taking raw message data and the time it was received by the relay (used to measure the time
+     * messages spend in the relay before being read).
+     * @param data the binary data
+     * @param receptionTime the time of reception (System.nanoTime)
+     */
+    public Message(byte[] data, long receptionTime) {
+        this.receptionTime = receptionTime;
         ByteBuffer messageMetadataWrapper = ByteBuffer.wrap(data, 24, 8).order(LITTLE_ENDIAN);
         this.timestamp = messageMetadataWrapper.getLong();
 
         this.data = data;
         int type = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).getInt(TYPE_OFFSET);
+        this.typeId = type;
         if (type == 6) {
             this.type = Type.MOUSE;
             this.priority = 1;
@@ -125,6 +139,8 @@ public class Message implements Comparable<Message> {
         this.data = null;
         this.type = type;
         this.priority = priority;
+        this.typeId = 0;
+        this.receptionTime = 0;
     }
 
     /**
@@ -139,6 +155,8 @@ public class Message implements Comparable<Message> {
         this.data = message;
         this.type = type;
         this.priority = priority;
+        this.typeId = 0;
+        this.receptionTime = 0;
     }
 
     /**
@@ -165,6 +183,31 @@ public class Message implements Comparable<Message> {
         return type;
     }
 
+    /**
+     * Returns the timestamp of the message: the time (epoch milliseconds) at which the message was emitted by the WebX Engine,
+     * or created by the relay for internal messages
+     * @return the timestamp in milliseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the time at which the message was received by the relay (System.nanoTime)
+     * @return the time of reception, 0 for messages created by the relay
+     */
+    public long getReceptionTime() {
+        return receptionTime;
+    }
+
+    /**
+     * Returns the raw message type Id of the message header (0 for messages created by the relay)
+     * @return the message type Id
+     */
+    public int getTypeId() {
+        return typeId;
+    }
+
     /**
      * Comparison function. Lower numbers are considered more important.
      * If two messages with identical priorities, the timestamp is used (older message more important).
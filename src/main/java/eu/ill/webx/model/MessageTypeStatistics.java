@@ -0,0 +1,37 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.model;
+
+/**
+ * Traffic statistics of the messages of a given type received for a session
+ * @param typeId the raw message type Id of the message header (-1 for message types outside the tracked range)
+ * @param messageCount the number of messages received
+ * @param byteCount the total size of the messages in bytes
+ * @param medianSize an estimate of the median size of the messages in bytes (upper bound of the histogram bucket)
+ * @param p99Size an estimate of the 99th percentile of the size of the messages in bytes (upper bound of the histogram bucket)
+ */
+public record MessageTypeStatistics(int typeId, long messageCount, long byteCount, long medianSize, long p99Size) {
+
+    /**
+     * Returns the mean size of the messages in bytes
+     * @return the mean message size, 0 if no message has been received
+     */
+    public long meanSize() {
+        return this.messageCount > 0 ? this.byteCount / this.messageCount : 0;
+    }
+}
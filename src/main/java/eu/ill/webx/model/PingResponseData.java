@@ -19,7 +19,25 @@ package eu.ill.webx.model;
 
 /**
  * Hold data concerning WebX Engine ping responses
- * @param rttMs the Ping Round-Trip Time in milliseconds
+ * @param rttNs the Ping Round-Trip Time in nanoseconds (measured with a monotonic clock)
+ * @param requestTime the time (epoch milliseconds) at which the ping was sent
+ * @param engineTime the time (epoch milliseconds) of the WebX Engine or WebX Router when it responded, 0 if not provided in the response
  */
-public record PingResponseData(long rttMs) {
+public record PingResponseData(long rttNs, long requestTime, long engineTime) {
+
+    /**
+     * Constructor taking only the round-trip time in milliseconds
+     * @param rttMs the Ping Round-Trip Time in milliseconds
+     */
+    public PingResponseData(long rttMs) {
+        this(rttMs * 1000000, 0, 0);
+    }
+
+    /**
+     * Returns the Ping Round-Trip Time in milliseconds
+     * @return the Ping Round-Trip Time in milliseconds
+     */
+    public long rttMs() {
+        return this.rttNs / 1000000;
+    }
 }
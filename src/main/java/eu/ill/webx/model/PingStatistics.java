@@ -0,0 +1,44 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.model;
+
+/**
+ * Rolling statistics of the ping round-trip times of a session or host, calculated over the most recent pings
+ * @param sampleCount the number of pings in the statistics
+ * @param lastNs the round-trip time of the most recent ping in nanoseconds
+ * @param minNs the minimum round-trip time in nanoseconds
+ * @param medianNs the median round-trip time in nanoseconds
+ * @param p99Ns the 99th percentile of the round-trip times in nanoseconds
+ * @param maxNs the maximum round-trip time in nanoseconds
+ * @param jitterNs the mean absolute difference between consecutive round-trip times in nanoseconds
+ */
+public record PingStatistics(int sampleCount, long lastNs, long minNs, long medianNs, long p99Ns, long maxNs, long jitterNs) {
+
+    /**
+     * Statistics without any ping
+     */
+    public static final PingStatistics EMPTY = new PingStatistics(0, 0, 0, 0, 0, 0, 0);
+
+    /**
+     * Returns true if no ping has been recorded
+     * @return true if there are no samples
+     */
+    public boolean isEmpty() {
+        return this.sampleCount == 0;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.model;
+
+/**
+ * The type of a synchronous request made to the WebX Router or WebX Engine (the command at the start of the request string)
+ */
+public enum RequestType {
+    /**
+     * Request for the connection data (ports and public key)
+     */
+    COMM("comm"),
+
+    /**
+     * Synchronous session creation (legacy routers)
+     */
+    CREATE("create"),
+
+    /**
+     * Asynchronous session creation
+     */
+    CREATE_ASYNC("create_async"),
+
+    /**
+     * Request for the creation status of a session
+     */
+    STATUS("status"),
+
+    /**
+     * Ping of a session
+     */
+    PING("ping"),
+
+    /**
+     * Connection of a client to a session
+     */
+    CONNECT("connect"),
+
+    /**
+     * Disconnection of a client from a session
+     */
+    DISCONNECT("disconnect"),
+
+    /**
+     * Any other request
+     */
+    OTHER(null);
+
+    private static final RequestType[] COMMANDS = {COMM, CREATE, CREATE_ASYNC, STATUS, PING, CONNECT, DISCONNECT};
+
+    private final String command;
+
+    RequestType(final String command) {
+        this.command = command;
+    }
+
+    /**
+     * Returns the command string of the request type
+     * @return the command string (null for OTHER)
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * Determines the request type from a request string (without allocation)
+     * @param request the request string, eg "ping,{sessionId}"
+     * @return the request type
+     */
+    public static RequestType fromRequest(final String request) {
+        for (RequestType requestType : COMMANDS) {
+            final String command = requestType.command;
+            if (request.startsWith(command) && (request.length() == command.length() || request.charAt(command.length()) == ',')) {
+                return requestType;
+            }
+        }
+        return OTHER;
+    }
+}
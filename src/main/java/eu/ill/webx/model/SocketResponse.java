@@ -20,9 +20,17 @@ package eu.ill.webx.model;
 /**
  * Encapsulates the binary data of a ZMQ REQ-REP socket response
  * @param data the raw binary data
- * @param rttMs the round-trip time in milliseconds
+ * @param rttNs the round-trip time in nanoseconds (measured with a monotonic clock)
  */
-public record SocketResponse(byte[] data, long rttMs) {
+public record SocketResponse(byte[] data, long rttNs) {
+
+    /**
+     * Returns the round-trip time in milliseconds
+     * @return the round-trip time in milliseconds
+     */
+    public long rttMs() {
+        return this.rttNs / 1000000;
+    }
 
     /**
      * Converts the data to string if not null
@@ -39,4 +47,12 @@ public record SocketResponse(byte[] data, long rttMs) {
     public boolean isEmpty() {
         return this.data == null || this.data.length == 0;
     }
+
+    /**
+     * Determines if no response was received (the request timed out)
+     * @return true if there is no response data
+     */
+    public boolean isTimeout() {
+        return this.data == null;
+    }
 }
@@ -0,0 +1,113 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.recording;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads the records of a traffic recording written by a TrafficRecorder, in order. The segments of a recording (appended by successive
+ * recorders) are read as a single continuous recording: the time between segments is not preserved.
+ */
+public class TrafficReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DataInputStream input;
+    private long timeUs = 0;
+
+    /**
+     * Constructor opening a recording file
+     * @param path the path of the recording file
+     * @throws IOException thrown if the file cannot be opened or is not a traffic recording
+     */
+    public TrafficReader(final Path path) throws IOException {
+        this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE));
+        if (this.input.readInt() != TrafficRecorder.MAGIC) {
+            this.input.close();
+            throw new IOException(String.format("%s is not a WebX traffic recording", path));
+        }
+        final int version = this.input.readShort();
+        if (version != TrafficRecorder.VERSION) {
+            this.input.close();
+            throw new IOException(String.format("Unsupported WebX traffic recording version %d", version));
+        }
+    }
+
+    /**
+     * Reads the next message or instruction
+     * @return the record, null at the end of the recording
+     * @throws IOException thrown if the recording cannot be read or is corrupted
+     */
+    public TrafficRecord next() throws IOException {
+        while (true) {
+            final int type = this.input.read();
+            if (type < 0) {
+                return null;
+            }
+
+            if (type == TrafficRecorder.SEGMENT_RECORD) {
+                readVarLong(this.input);
+
+            } else if (type == TrafficRecorder.MESSAGE_RECORD || type == TrafficRecorder.INSTRUCTION_RECORD) {
+                this.timeUs += readVarLong(this.input);
+                final byte[] data = new byte[(int) readVarLong(this.input)];
+                this.input.readFully(data);
+                return new TrafficRecord(type == TrafficRecorder.MESSAGE_RECORD ? TrafficRecord.Type.MESSAGE : TrafficRecord.Type.INSTRUCTION, this.timeUs * 1000, data);
+
+            } else {
+                throw new IOException(String.format("Invalid record type %d in WebX traffic recording", type));
+            }
+        }
+    }
+
+    /**
+     * Closes the recording file
+     * @throws IOException thrown if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.input.close();
+    }
+
+    /**
+     * Reads an unsigned variable-length integer written by the recorder
+     * @param input the input stream
+     * @return the value
+     * @throws IOException thrown if the read fails or the recording is truncated
+     */
+    private static long readVarLong(final DataInputStream input) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int data = input.read();
+            if (data < 0) {
+                throw new EOFException("Truncated WebX traffic recording");
+            }
+            value |= (long) (data & 0x7F) << shift;
+            if ((data & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid variable-length integer in WebX traffic recording");
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.recording;
+
+/**
+ * A message or instruction read from a traffic recording
+ * @param type the type of the record
+ * @param timeNs the time of the record in nanoseconds since the start of the recording
+ * @param data the raw binary data of the message or instruction
+ */
+public record TrafficRecord(Type type, long timeNs, byte[] data) {
+
+    /**
+     * The types of records
+     */
+    public enum Type {
+        /**
+         * A message received from the WebX Engine by the message subscriber
+         */
+        MESSAGE,
+
+        /**
+         * An instruction sent by a client to the WebX Engine
+         */
+        INSTRUCTION
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.recording;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the raw traffic of a host into a compact append-only file: the messages received by the message subscriber (for all
+ * sessions of the host) and the instructions sent by the clients, each with the time at which it passed through the relay.
+ * Recordings are used to replay the traffic of real sessions in benchmarks (see TrafficReader).
+ * File format (big endian):
+ *  - header: magic number (int) and version (short), written when the file is created
+ *  - segment record, written each time a recorder is opened: type 0 and the epoch time in milliseconds (varint)
+ *  - message and instruction records: type (1 or 2), time in microseconds since the previous record (varint), length (varint) and data
+ * The calling threads (the message thread and the client threads) only add the records to a bounded queue: the file is written by a
+ * dedicated writer thread so that disk latency never holds up the relay. When the queue is full the records are dropped and counted.
+ * An IO error disables the recorder so that the relay is never interrupted by the recording.
+ */
+public class TrafficRecorder implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrafficRecorder.class);
+
+    static final int MAGIC = 0x57585243;
+    static final int VERSION = 1;
+    static final int SEGMENT_RECORD = 0;
+    static final int MESSAGE_RECORD = 1;
+    static final int INSTRUCTION_RECORD = 2;
+
+    private static final int FLUSH_REQUEST = -1;
+    private static final int CLOSE_REQUEST = -2;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int DEFAULT_QUEUE_CAPACITY = 16 * 1024;
+
+    /**
+     * A request to the writer thread: a record to write, or a flush or close of the file
+     * @param type the record type (or request type)
+     * @param time the time of the record (System.nanoTime)
+     * @param data the record data (null for flush and close requests)
+     * @param completion counted down when a flush or close request has been handled (null for records)
+     */
+    private record Request(int type, long time, byte[] data, CountDownLatch completion) {
+    }
+
+    private final Path path;
+    private final DataOutputStream output;
+    private final BlockingQueue<Request> requests;
+    private final Thread writerThread;
+    private final AtomicLong droppedRecordCount = new AtomicLong();
+    private long lastRecordTime;
+    private volatile long recordCount = 0;
+    private volatile long byteCount = 0;
+    private volatile boolean failed = false;
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor opening the recording file: a new file is created if it doesn't exist, otherwise the recording is appended to it
+     * @param path the path of the recording file
+     * @throws IOException thrown if the file cannot be opened or is not a traffic recording
+     */
+    public TrafficRecorder(final Path path) throws IOException {
+        this(path, DEFAULT_QUEUE_CAPACITY, Thread::new);
+    }
+
+    /**
+     * Constructor opening the recording file with the capacity of the record queue and the factory of the writer thread
+     * @param path the path of the recording file
+     * @param queueCapacity the maximum number of records waiting to be written (further records are dropped)
+     * @param threadFactory the factory used to create the writer thread
+     * @throws IOException thrown if the file cannot be opened or is not a traffic recording
+     */
+    public TrafficRecorder(final Path path, int queueCapacity, final ThreadFactory threadFactory) throws IOException {
+        this.path = path;
+        final boolean newFile = !Files.exists(path) || Files.size(path) == 0;
+        if (!newFile) {
+            try (DataInputStream input = new DataInputStream(Files.newInputStream(path))) {
+                if (input.readInt() != MAGIC) {
+                    throw new IOException(String.format("%s is not a WebX traffic recording", path));
+                }
+            }
+        }
+
+        this.output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND), BUFFER_SIZE));
+        if (newFile) {
+            this.output.writeInt(MAGIC);
+            this.output.writeShort(VERSION);
+        }
+        this.output.writeByte(SEGMENT_RECORD);
+        writeVarLong(this.output, System.currentTimeMillis());
+        this.lastRecordTime = System.nanoTime();
+
+        this.requests = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.writerThread = threadFactory.newThread(this::writerLoop);
+        this.writerThread.setName("webx-recorder-" + path.getFileName());
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Returns the path of the recording file
+     * @return the path
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the number of messages and instructions written to the recording
+     * @return the record count
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Returns the number of bytes of message and instruction data written to the recording
+     * @return the byte count
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Returns the number of messages and instructions that have been dropped because the record queue was full
+     * @return the dropped record count
+     */
+    public long getDroppedRecordCount() {
+        return droppedRecordCount.get();
+    }
+
+    /**
+     * Records a batch of messages received by the message subscriber
+     * @param messages the raw binary data of the messages
+     */
+    public void recordMessages(final List<byte[]> messages) {
+        final long time = System.nanoTime();
+        for (int i = 0; i < messages.size(); i++) {
+            this.queue(MESSAGE_RECORD, time, messages.get(i));
+        }
+    }
+
+    /**
+     * Records an instruction sent by a client
+     * @param instructionData the raw binary data of the instruction
+     */
+    public void recordInstruction(final byte[] instructionData) {
+        this.queue(INSTRUCTION_RECORD, System.nanoTime(), instructionData);
+    }
+
+    /**
+     * Writes the queued and buffered records to the file, waiting for the writer thread to have written them
+     */
+    public synchronized void flush() {
+        if (!this.closed && !this.failed) {
+            final CountDownLatch completion = new CountDownLatch(1);
+            try {
+                this.requests.put(new Request(FLUSH_REQUEST, 0, null, completion));
+                completion.await();
+
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Writes the queued and buffered records, stops the writer thread and closes the file
+     * @throws IOException thrown if the file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!this.closed) {
+            this.closed = true;
+            try {
+                this.requests.put(new Request(CLOSE_REQUEST, 0, null, null));
+                this.writerThread.join();
+
+            } catch (InterruptedException exception) {
+                logger.warn("Close of traffic recording {} interrupted", this.path);
+                this.writerThread.interrupt();
+                Thread.currentThread().interrupt();
+            }
+
+            final long droppedRecordCount = this.droppedRecordCount.get();
+            if (droppedRecordCount > 0) {
+                logger.warn("{} records were dropped from traffic recording {} (record queue full)", droppedRecordCount, this.path);
+            }
+            this.output.close();
+        }
+    }
+
+    /**
+     * Adds a record to the queue of the writer thread. The record is dropped if the queue is full.
+     * @param type the record type
+     * @param time the time of the record (System.nanoTime)
+     * @param data the record data
+     */
+    private void queue(int type, long time, final byte[] data) {
+        if (!this.closed && !this.failed) {
+            if (!this.requests.offer(new Request(type, time, data, null))) {
+                this.droppedRecordCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Loop of the writer thread: writes the queued records to the file until the recorder is closed
+     */
+    private void writerLoop() {
+        while (true) {
+            try {
+                final Request request = this.requests.take();
+                if (request.type() == CLOSE_REQUEST) {
+                    return;
+
+                } else if (request.type() == FLUSH_REQUEST) {
+                    this.flushOutput();
+                    request.completion().countDown();
+
+                } else {
+                    this.write(request.type(), request.time(), request.data());
+                }
+
+            } catch (InterruptedException exception) {
+                if (this.closed) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the buffered records to the file (called by the writer thread)
+     */
+    private void flushOutput() {
+        if (!this.failed) {
+            try {
+                this.output.flush();
+
+            } catch (IOException exception) {
+                this.onError(exception);
+            }
+        }
+    }
+
+    /**
+     * Writes a record (called by the writer thread)
+     * @param type the record type
+     * @param time the time of the record (System.nanoTime)
+     * @param data the record data
+     */
+    private void write(int type, long time, final byte[] data) {
+        if (!this.failed) {
+            try {
+                final long deltaUs = Math.max(0, (time - this.lastRecordTime) / 1000);
+                this.output.writeByte(type);
+                writeVarLong(this.output, deltaUs);
+                writeVarLong(this.output, data.length);
+                this.output.write(data);
+
+                // Only whole microseconds are consumed so that the rounding errors don't accumulate
+                this.lastRecordTime += deltaUs * 1000;
+                this.recordCount++;
+                this.byteCount += data.length;
+
+            } catch (IOException exception) {
+                this.onError(exception);
+            }
+        }
+    }
+
+    /**
+     * Disables the recorder after an IO error
+     * @param exception the IO error
+     */
+    private void onError(final IOException exception) {
+        this.failed = true;
+        logger.warn("Failed to write traffic recording {}: recording stopped ({})", this.path, exception.getMessage());
+    }
+
+    /**
+     * Writes an unsigned variable-length integer (7 bits per byte, most significant bit set if more bytes follow)
+     * @param output the output stream
+     * @param value the value (positive)
+     * @throws IOException thrown if the write fails
+     */
+    static void writeVarLong(final DataOutputStream output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.relay;
+
+import eu.ill.webx.exceptions.WebXConnectionInterruptException;
+import eu.ill.webx.exceptions.WebXDisconnectedException;
+import eu.ill.webx.model.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the messages of a client to a single subscriber, honouring its demand: a message is only taken from the client queue
+ * when the subscriber has requested it, so a slow subscriber leaves the messages in the queue (where the limit and the coalescing of
+ * the queue apply) rather than blocking a thread per client. An unbounded client queue is bounded with the publisher queue limit
+ * when a subscriber subscribes (see WebXHostConfiguration.withPublisherQueueLimit).
+ * Messages are delivered by a drain task run on the executor when the subscriber requests messages or when messages are queued for
+ * the client (notified by the availability listener of the queue). A single drain task runs at a time so that the signals to the
+ * subscriber are serialised.
+ * The subscription terminates with onComplete when the client is closed and with onError when the connection is interrupted or
+ * when the client is disconnected from the server (the disconnection handler is then called).
+ */
+class ClientMessagePublisher implements Flow.Publisher<byte[]> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClientMessagePublisher.class);
+
+    private final WebXClient client;
+    private final Executor executor;
+    private final Runnable disconnectionHandler;
+
+    /**
+     * Constructor taking the client, the executor delivering the messages and the handler called on disconnection
+     * @param client the client
+     * @param executor the executor running the drain tasks
+     * @param disconnectionHandler called when a disconnect message is received from the server (can be null)
+     */
+    ClientMessagePublisher(final WebXClient client, final Executor executor, final Runnable disconnectionHandler) {
+        this.client = client;
+        this.executor = executor;
+        this.disconnectionHandler = disconnectionHandler != null ? disconnectionHandler : () -> {};
+    }
+
+    /**
+     * Subscribes to the messages of the client. The messages of a client are consumed by a single subscriber (or selector) at a time:
+     * any other subscriber receives an IllegalStateException.
+     * @param subscriber the subscriber
+     */
+    @Override
+    public void subscribe(final Flow.Subscriber<? super byte[]> subscriber) {
+        Objects.requireNonNull(subscriber);
+        final ClientSubscription subscription = new ClientSubscription(subscriber);
+        if (this.client.setMessageAvailabilityListener(subscription.availabilityListener)) {
+            this.client.limitQueueForPublisher();
+            subscriber.onSubscribe(subscription);
+
+            // Messages may have been queued before the listener was set
+            subscription.schedule();
+
+        } else {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("The messages of the client are already consumed by another subscriber or selector"));
+        }
+    }
+
+    /**
+     * The subscription of the subscriber: maintains the demand and runs the drain tasks
+     */
+    private class ClientSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super byte[]> subscriber;
+        private final AtomicLong demand = new AtomicLong(0);
+        private final AtomicInteger pendingSchedules = new AtomicInteger(0);
+        private final Runnable availabilityListener = this::schedule;
+        private volatile boolean terminated = false;
+        private volatile Throwable pendingError;
+
+        /**
+         * Constructor taking the subscriber
+         * @param subscriber the subscriber
+         */
+        ClientSubscription(final Flow.Subscriber<? super byte[]> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * Adds to the demand of the subscriber (the demand saturates at Long.MAX_VALUE). A non-positive request terminates the
+         * subscription with an IllegalArgumentException.
+         * @param n the number of additional messages requested
+         */
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                this.pendingError = new IllegalArgumentException("Non-positive number of messages requested: " + n);
+
+            } else {
+                this.demand.getAndUpdate(current -> {
+                    final long total = current + n;
+                    return total < 0 ? Long.MAX_VALUE : total;
+                });
+            }
+            this.schedule();
+        }
+
+        /**
+         * Cancels the subscription: queued messages are left in the queue of the client
+         */
+        @Override
+        public void cancel() {
+            this.terminate();
+        }
+
+        /**
+         * Runs a drain task on the executor unless one is already running (in which case it loops again)
+         */
+        void schedule() {
+            if (this.pendingSchedules.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::drain);
+
+                } catch (RejectedExecutionException exception) {
+                    this.pendingSchedules.set(0);
+                    if (!this.terminated) {
+                        this.terminate();
+                        this.subscriber.onError(exception);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Delivers queued messages to the subscriber while there is demand, looping while further schedules have been requested
+         */
+        private void drain() {
+            int missed = 1;
+            do {
+                if (this.terminated) {
+                    return;
+                }
+
+                final Throwable error = this.pendingError;
+                if (error != null) {
+                    this.terminate();
+                    this.subscriber.onError(error);
+                    return;
+                }
+
+                final long requested = this.demand.get();
+                long delivered = 0;
+                while (delivered < requested && !this.terminated) {
+                    final Message message = client.pollQueuedMessage();
+                    if (message == null) {
+                        break;
+                    }
+
+                    final byte[] messageData;
+                    try {
+                        messageData = client.readMessage(message);
+
+                    } catch (WebXConnectionInterruptException exception) {
+                        this.terminate();
+                        this.subscriber.onError(exception);
+                        return;
+
+                    } catch (WebXDisconnectedException exception) {
+                        this.terminate();
+                        disconnectionHandler.run();
+                        this.subscriber.onError(exception);
+                        return;
+                    }
+
+                    if (messageData == null) {
+                        this.terminate();
+                        this.subscriber.onComplete();
+                        return;
+                    }
+
+                    try {
+                        this.subscriber.onNext(messageData);
+
+                    } catch (RuntimeException exception) {
+                        logger.warn("Subscriber of client messages failed, cancelling the subscription: {}", exception.getMessage());
+                        this.terminate();
+                        return;
+                    }
+                    delivered++;
+                }
+
+                if (delivered > 0 && requested != Long.MAX_VALUE) {
+                    this.demand.addAndGet(-delivered);
+                }
+
+                missed = this.pendingSchedules.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Terminates the subscription, removes the availability listener of the client and restores the limit of the client queue
+         */
+        private void terminate() {
+            this.terminated = true;
+            client.releaseQueueForPublisher(this.availabilityListener);
+        }
+    }
+}
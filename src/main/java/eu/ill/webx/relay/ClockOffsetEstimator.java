@@ -0,0 +1,108 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.relay;
+
+/**
+ * Estimates the offset between the clock of the WebX Engine (used to timestamp messages) and the clock of the relay so that
+ * message latencies can be measured when the engine runs on a different machine.
+ * If ping responses include the time of the engine, the offset is calculated from the ping with the lowest round-trip time of
+ * the last pings (assuming that the response was generated half-way through the round trip).
+ * Otherwise the offset is calculated at each ping from the smallest difference between message reception times and message
+ * timestamps since the previous ping, assuming that the fastest message took half of the smallest ping round-trip time.
+ * The offset is the engine time minus the relay time.
+ */
+class ClockOffsetEstimator {
+
+    private static final int PING_WINDOW = 8;
+    private static final long NO_OFFSET = Long.MIN_VALUE;
+
+    private final long[] pingRtts = new long[PING_WINDOW];
+    private final long[] pingOffsets = new long[PING_WINDOW];
+    private int pingCount = 0;
+    private long minMessageDelay = Long.MAX_VALUE;
+
+    private volatile long offsetMs = 0;
+    private volatile boolean valid = false;
+
+    /**
+     * Default constructor
+     */
+    ClockOffsetEstimator() {
+    }
+
+    /**
+     * Returns true if an offset has been estimated
+     * @return true if the offset is valid
+     */
+    boolean isValid() {
+        return this.valid;
+    }
+
+    /**
+     * Returns the estimated offset of the engine clock relative to the relay clock
+     * @return the offset in milliseconds (engine time - relay time)
+     */
+    long getOffsetMs() {
+        return this.offsetMs;
+    }
+
+    /**
+     * Updates the estimate with a ping response
+     * @param rttMs the round-trip time of the ping in milliseconds
+     * @param requestTime the time (epoch milliseconds) at which the ping was sent
+     * @param engineTime the time (epoch milliseconds) of the engine in the response, 0 if not provided
+     */
+    synchronized void onPing(long rttMs, long requestTime, long engineTime) {
+        final int index = this.pingCount % PING_WINDOW;
+        this.pingRtts[index] = rttMs;
+        this.pingOffsets[index] = engineTime > 0 && requestTime > 0 ? engineTime - (requestTime + rttMs / 2) : NO_OFFSET;
+        this.pingCount++;
+
+        final int sampleCount = Math.min(this.pingCount, PING_WINDOW);
+        long minRtt = Long.MAX_VALUE;
+        long bestRtt = Long.MAX_VALUE;
+        long bestOffset = NO_OFFSET;
+        for (int i = 0; i < sampleCount; i++) {
+            minRtt = Math.min(minRtt, this.pingRtts[i]);
+            if (this.pingOffsets[i] != NO_OFFSET && this.pingRtts[i] < bestRtt) {
+                bestRtt = this.pingRtts[i];
+                bestOffset = this.pingOffsets[i];
+            }
+        }
+
+        if (bestOffset != NO_OFFSET) {
+            this.offsetMs = bestOffset;
+            this.valid = true;
+
+        } else if (this.minMessageDelay != Long.MAX_VALUE) {
+            this.offsetMs = minRtt / 2 - this.minMessageDelay;
+            this.valid = true;
+        }
+        this.minMessageDelay = Long.MAX_VALUE;
+    }
+
+    /**
+     * Updates the smallest difference between the reception time and timestamp of messages since the last ping
+     * @param messageDelay the smallest difference (relay reception time - engine timestamp) of a batch of messages in milliseconds
+     */
+    synchronized void onMessages(long messageDelay) {
+        if (messageDelay < this.minMessageDelay) {
+            this.minMessageDelay = messageDelay;
+        }
+    }
+}
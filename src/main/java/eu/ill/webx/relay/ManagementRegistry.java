@@ -0,0 +1,130 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.relay;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registers the management beans of the relay, hosts and sessions with the platform MBean server.
+ * Registration failures are logged but never interrupt the relay.
+ */
+class ManagementRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(ManagementRegistry.class);
+
+    private static final String DOMAIN = "eu.ill.webx";
+
+    /**
+     * Private constructor
+     */
+    private ManagementRegistry() {
+    }
+
+    /**
+     * Returns the object name of the relay
+     * @return the object name
+     */
+    static ObjectName relayName() {
+        return objectName(DOMAIN + ":type=Relay");
+    }
+
+    /**
+     * Returns the object name of a host
+     * @param host the host
+     * @return the object name
+     */
+    static ObjectName hostName(final WebXHost host) {
+        return objectName(String.format("%s:type=Host,host=%s,port=%d", DOMAIN, ObjectName.quote(host.getHostname()), host.getPort()));
+    }
+
+    /**
+     * Returns the object name of a session of a host
+     * @param host the host
+     * @param session the session
+     * @return the object name
+     */
+    static ObjectName sessionName(final WebXHost host, final WebXSession session) {
+        return objectName(String.format("%s:type=Session,host=%s,port=%d,sessionId=%s", DOMAIN, ObjectName.quote(host.getHostname()), host.getPort(), session.getSessionId().hexString()));
+    }
+
+    /**
+     * Registers a management bean. Any bean already registered with the same name is replaced.
+     * @param name the object name
+     * @param implementation the bean implementation
+     * @param mxBeanInterface the management interface
+     * @param <T> the type of the management interface
+     */
+    static <T> void register(final ObjectName name, final T implementation, final Class<T> mxBeanInterface) {
+        if (name == null) {
+            return;
+        }
+
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new StandardMBean(implementation, mxBeanInterface, true), name);
+
+        } catch (JMException exception) {
+            logger.warn("Failed to register management bean {}: {}", name, exception.getMessage());
+        }
+    }
+
+    /**
+     * Unregisters a management bean if it is registered
+     * @param name the object name
+     */
+    static void unregister(final ObjectName name) {
+        if (name == null) {
+            return;
+        }
+
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+
+        } catch (JMException exception) {
+            logger.warn("Failed to unregister management bean {}: {}", name, exception.getMessage());
+        }
+    }
+
+    /**
+     * Creates an object name, logging an invalid name
+     * @param name the name
+     * @return the object name or null if invalid
+     */
+    private static ObjectName objectName(final String name) {
+        try {
+            return new ObjectName(name);
+
+        } catch (JMException exception) {
+            logger.warn("Invalid management bean name {}: {}", name, exception.getMessage());
+            return null;
+        }
+    }
+}
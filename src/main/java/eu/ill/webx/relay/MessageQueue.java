@@ -0,0 +1,335 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.relay;
+
+import eu.ill.webx.model.Message;
+
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Blocking priority queue of messages for a single client.
+ * Equivalent to a PriorityBlockingQueue but allows a batch of messages to be added with a single lock acquisition
+ * and a single wakeup of the consumer.
+ * The number of queued messages and their total size are maintained so that they can be read without locking the queue.
+ * The queue can be bounded: when the limit is reached, messages from the WebX Engine are dropped (mouse, cursor, disconnect and
+ * relay-internal messages are always queued). Mouse messages can be coalesced: a new mouse message replaces the one waiting to be read.
+ * A single listener can be notified when the queue becomes non-empty so that messages can be consumed without a blocked thread
+ * (by a publisher or a selector).
+ */
+class MessageQueue {
+
+    private final PriorityQueue<Message> queue = new PriorityQueue<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = this.lock.newCondition();
+    private final int configuredLimit;
+    private int limit;
+    private final boolean mouseCoalescing;
+
+    private Message queuedMouseMessage;
+    private final AtomicReference<Runnable> availabilityListener = new AtomicReference<>();
+    private volatile int depth = 0;
+    private volatile long queuedBytes = 0;
+    private volatile long droppedMessages = 0;
+    private volatile long coalescedMessages = 0;
+
+    /**
+     * Default constructor: an unbounded queue without coalescing
+     */
+    MessageQueue() {
+        this(0, false);
+    }
+
+    /**
+     * Constructor taking the limit of the queue and the coalescing of the mouse messages
+     * @param limit the maximum number of queued messages (0 for an unbounded queue)
+     * @param mouseCoalescing true to coalesce mouse messages
+     */
+    MessageQueue(int limit, boolean mouseCoalescing) {
+        this.configuredLimit = limit;
+        this.limit = limit;
+        this.mouseCoalescing = mouseCoalescing;
+    }
+
+    /**
+     * Bounds the queue if it is unbounded: used when the messages are read by a publisher so that they cannot accumulate indefinitely
+     * while the subscriber has no demand. The limit applies until removeAvailabilityListenerAndRestoreLimit is called.
+     * @param limit the maximum number of queued messages
+     */
+    void limitIfUnbounded(int limit) {
+        this.lock.lock();
+        try {
+            if (this.configuredLimit == 0) {
+                this.limit = limit;
+            }
+
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the listener called (from the thread adding the messages) when messages are added to an empty queue. Only one listener
+     * can be set at a time.
+     * @param availabilityListener the listener
+     * @return true if the listener has been set, false if another listener is already set
+     */
+    boolean setAvailabilityListener(final Runnable availabilityListener) {
+        return this.availabilityListener.compareAndSet(null, availabilityListener);
+    }
+
+    /**
+     * Removes the availability listener if it is the current one
+     * @param availabilityListener the listener to remove
+     */
+    void removeAvailabilityListener(final Runnable availabilityListener) {
+        this.availabilityListener.compareAndSet(availabilityListener, null);
+    }
+
+    /**
+     * Removes the availability listener if it is the current one and then restores the limit given to the constructor (undoing
+     * limitIfUnbounded). Both are done with the lock held so that the limit of a listener set afterwards is not restored.
+     * @param availabilityListener the listener to remove
+     */
+    void removeAvailabilityListenerAndRestoreLimit(final Runnable availabilityListener) {
+        this.lock.lock();
+        try {
+            if (this.availabilityListener.compareAndSet(availabilityListener, null)) {
+                this.limit = this.configuredLimit;
+            }
+
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a message to the queue and wakes the consumer
+     * @param message the message to add
+     * @return the number of messages dropped because the queue is full (0 or 1)
+     */
+    int add(final Message message) {
+        final boolean wasEmpty;
+        final int droppedCount;
+        this.lock.lock();
+        try {
+            wasEmpty = this.queue.isEmpty();
+            droppedCount = this.offer(message) ? 0 : 1;
+            this.depth = this.queue.size();
+            this.notEmpty.signal();
+
+        } finally {
+            this.lock.unlock();
+        }
+
+        this.notifyAvailability(wasEmpty && droppedCount == 0);
+        return droppedCount;
+    }
+
+    /**
+     * Adds a batch of messages to the queue and wakes the consumer once
+     * @param messages the messages to add
+     * @return the number of messages dropped because the queue is full
+     */
+    int addAll(final List<Message> messages) {
+        if (messages.isEmpty()) {
+            return 0;
+        }
+
+        final boolean wasEmpty;
+        int droppedCount = 0;
+        this.lock.lock();
+        try {
+            wasEmpty = this.queue.isEmpty();
+            for (int i = 0; i < messages.size(); i++) {
+                if (!this.offer(messages.get(i))) {
+                    droppedCount++;
+                }
+            }
+            this.depth = this.queue.size();
+            this.notEmpty.signal();
+
+        } finally {
+            this.lock.unlock();
+        }
+
+        this.notifyAvailability(wasEmpty && droppedCount < messages.size());
+        return droppedCount;
+    }
+
+    /**
+     * Blocking call, waiting for the highest priority message to be available
+     * @return the next message
+     * @throws InterruptedException thrown if the waiting thread is interrupted
+     */
+    Message take() throws InterruptedException {
+        this.lock.lockInterruptibly();
+        try {
+            Message message;
+            while ((message = this.queue.poll()) == null) {
+                this.notEmpty.await();
+            }
+            this.onRemoved(message);
+            return message;
+
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Non-blocking call returning the highest priority message if one is available
+     * @return the next message, null if the queue is empty
+     */
+    Message poll() {
+        this.lock.lock();
+        try {
+            final Message message = this.queue.poll();
+            if (message != null) {
+                this.onRemoved(message);
+            }
+            return message;
+
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of messages dropped because the queue was full
+     * @return the number of dropped messages
+     */
+    long droppedMessages() {
+        return this.droppedMessages;
+    }
+
+    /**
+     * Returns the number of mouse messages replaced by a more recent mouse message before being read
+     * @return the number of coalesced messages
+     */
+    long coalescedMessages() {
+        return this.coalescedMessages;
+    }
+
+    /**
+     * Returns the number of queued messages
+     * @return the number of queued messages
+     */
+    int size() {
+        return this.depth;
+    }
+
+    /**
+     * Returns the total size in bytes of the queued messages
+     * @return the queued bytes
+     */
+    long queuedBytes() {
+        return this.queuedBytes;
+    }
+
+    /**
+     * Returns the time of reception of the oldest queued message. The queue is ordered by priority so all the queued messages are
+     * examined: this is only intended for occasional statistics.
+     * @return the time of reception (System.nanoTime) of the oldest message, 0 if no message received from the server is queued
+     */
+    long oldestReceptionTime() {
+        this.lock.lock();
+        try {
+            long oldest = 0;
+            for (Message message : this.queue) {
+                final long receptionTime = message.getReceptionTime();
+                if (receptionTime != 0 && (oldest == 0 || receptionTime - oldest < 0)) {
+                    oldest = receptionTime;
+                }
+            }
+            return oldest;
+
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Queues a message applying the coalescing and the limit of the queue: called with the lock held
+     * @param message the message
+     * @return true if the message is queued, false if it is dropped
+     */
+    private boolean offer(final Message message) {
+        if (this.mouseCoalescing && message.getType() == Message.Type.MOUSE) {
+            if (this.queuedMouseMessage != null && this.queue.remove(this.queuedMouseMessage)) {
+                this.queuedBytes -= sizeOf(this.queuedMouseMessage);
+                this.coalescedMessages++;
+            }
+            this.queuedMouseMessage = message;
+
+        } else if (this.limit > 0 && this.queue.size() >= this.limit && isDroppable(message)) {
+            this.droppedMessages++;
+            return false;
+        }
+
+        this.queue.add(message);
+        this.queuedBytes += sizeOf(message);
+        return true;
+    }
+
+    /**
+     * Updates the state of the queue when a message has been removed: called with the lock held
+     * @param message the removed message
+     */
+    private void onRemoved(final Message message) {
+        if (message == this.queuedMouseMessage) {
+            this.queuedMouseMessage = null;
+        }
+        this.depth = this.queue.size();
+        this.queuedBytes -= sizeOf(message);
+    }
+
+    /**
+     * Calls the availability listener if messages have been added to an empty queue
+     * @param becameAvailable true if messages have been added to an empty queue
+     */
+    private void notifyAvailability(boolean becameAvailable) {
+        final Runnable listener = this.availabilityListener.get();
+        if (becameAvailable && listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Determines whether a message can be dropped when the queue is full: only the messages of the WebX Engine that are not
+     * mouse, cursor or disconnect messages (images, windows, etc) can be dropped, the client display being resynchronised afterwards
+     * @param message the message
+     * @return true if the message can be dropped
+     */
+    private static boolean isDroppable(final Message message) {
+        return message.getType() == Message.Type.OTHER && !(message instanceof Message.ConnectionMessage);
+    }
+
+    /**
+     * Returns the size of the data of a message
+     * @param message the message
+     * @return the size in bytes
+     */
+    private static int sizeOf(final Message message) {
+        final byte[] data = message.getData();
+        return data != null ? data.length : 0;
+    }
+}
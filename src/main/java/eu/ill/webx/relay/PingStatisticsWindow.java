@@ -0,0 +1,93 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.relay;
+
+import eu.ill.webx.model.PingStatistics;
+
+import java.util.Arrays;
+
+/**
+ * Rolling window of the most recent ping round-trip times from which the ping statistics are calculated.
+ * Recording a round-trip time is cheap: the statistics are only calculated when requested.
+ */
+class PingStatisticsWindow {
+
+    private final long[] samples;
+    private int count = 0;
+    private int next = 0;
+
+    /**
+     * Constructor taking the number of pings kept in the window
+     * @param size the size of the window
+     */
+    PingStatisticsWindow(int size) {
+        this.samples = new long[size];
+    }
+
+    /**
+     * Adds a round-trip time to the window, replacing the oldest one if the window is full
+     * @param rttNs the round-trip time in nanoseconds
+     */
+    synchronized void add(long rttNs) {
+        this.samples[this.next] = rttNs;
+        this.next = (this.next + 1) % this.samples.length;
+        this.count = Math.min(this.count + 1, this.samples.length);
+    }
+
+    /**
+     * Calculates the statistics of the round-trip times in the window
+     * @return the ping statistics
+     */
+    PingStatistics getStatistics() {
+        final long[] ordered;
+        synchronized (this) {
+            if (this.count == 0) {
+                return PingStatistics.EMPTY;
+            }
+
+            // Copy the samples in the order they were recorded
+            ordered = new long[this.count];
+            final int first = (this.next - this.count + this.samples.length) % this.samples.length;
+            for (int i = 0; i < this.count; i++) {
+                ordered[i] = this.samples[(first + i) % this.samples.length];
+            }
+        }
+
+        long jitter = 0;
+        for (int i = 1; i < ordered.length; i++) {
+            jitter += Math.abs(ordered[i] - ordered[i - 1]);
+        }
+        jitter = ordered.length > 1 ? jitter / (ordered.length - 1) : 0;
+
+        final long last = ordered[ordered.length - 1];
+        Arrays.sort(ordered);
+
+        return new PingStatistics(ordered.length, last, ordered[0], percentile(ordered, 50), percentile(ordered, 99), ordered[ordered.length - 1], jitter);
+    }
+
+    /**
+     * Returns a percentile of sorted values (nearest rank)
+     * @param sorted the sorted values
+     * @param percentile the percentile
+     * @return the value at the percentile
+     */
+    private static long percentile(final long[] sorted, int percentile) {
+        final int rank = (int) Math.ceil(sorted.length * percentile / 100.0);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
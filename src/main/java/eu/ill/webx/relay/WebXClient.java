@@ -20,12 +20,19 @@ package eu.ill.webx.relay;
 import eu.ill.webx.exceptions.WebXClientException;
 import eu.ill.webx.exceptions.WebXConnectionInterruptException;
 import eu.ill.webx.exceptions.WebXDisconnectedException;
+import eu.ill.webx.jfr.ClientQueueOverflowEvent;
+import eu.ill.webx.metrics.RelayMetrics;
 import eu.ill.webx.model.*;
+import eu.ill.webx.recording.TrafficRecorder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.nio.ByteOrder.LITTLE_ENDIAN;
 
@@ -37,18 +44,27 @@ public class WebXClient {
 
     private static final Logger logger = LoggerFactory.getLogger(WebXClient.class);
 
-    private ClientIdentifier clientIdentifier;
+    private volatile ClientIdentifier clientIdentifier;
     private final WebXSession session;
     private final String clientVersion;
+    private final RelayMetrics metrics;
+    private final TrafficRecorder trafficRecorder;
 
-    private final PriorityBlockingQueue<Message> messageQueue = new PriorityBlockingQueue<>();
+    private final MessageQueue messageQueue;
+    private final long connectionTime = System.nanoTime();
+    private final AtomicLong messagesRead = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong instructionsWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
 
     private boolean connected = true;
-    private boolean ready = false;
+    private volatile boolean ready = false;
 
     private final ByteBuffer instructionPrefix = ByteBuffer.allocate(20).order(LITTLE_ENDIAN);
+    private final CompletableFuture<WebXClient> readiness = new CompletableFuture<>();
 
     private PingResponseHandler pingResponseHandler = data -> {};
+    private FrameLossHandler frameLossHandler = data -> {};
 
     /**
      * Constructor taking a session: indicates that the client is connected but not ready
@@ -59,6 +75,9 @@ public class WebXClient {
         this.clientIdentifier = null;
         this.session = session;
         this.clientVersion = clientVersion;
+        this.metrics = session.getMetrics();
+        this.trafficRecorder = session.getTrafficRecorder();
+        this.messageQueue = new MessageQueue(session.getClientQueueLimit(), session.isMouseCoalescing());
     }
 
     /**
@@ -70,6 +89,9 @@ public class WebXClient {
     WebXClient(final ClientIdentifier clientIdentifier, final WebXSession session, final String clientVersion) {
         this.session = session;
         this.clientVersion = clientVersion;
+        this.metrics = session.getMetrics();
+        this.trafficRecorder = session.getTrafficRecorder();
+        this.messageQueue = new MessageQueue(session.getClientQueueLimit(), session.isMouseCoalescing());
         this.setClientIdentifier(clientIdentifier);
     }
 
@@ -94,9 +116,6 @@ public class WebXClient {
      * @param clientIdentifier The unique identifier given by the server
      */
     public void setClientIdentifier(ClientIdentifier clientIdentifier) {
-        this.clientIdentifier = clientIdentifier;
-        this.ready = true;
-
         // Set the sessionId in the instruction prefix
         this.instructionPrefix.put(0, session.getSessionId().bytes(), 0, 16);
 
@@ -104,6 +123,75 @@ public class WebXClient {
         ByteBuffer clientIdBuffer = ByteBuffer.allocate(4).order(LITTLE_ENDIAN);
         clientIdBuffer.putInt(clientIdentifier.clientId());
         this.instructionPrefix.put(16, clientIdBuffer.array(), 0, 4);
+
+        // The identifier is published last: it may be set outside the session monitor while messages are dispatched
+        this.clientIdentifier = clientIdentifier;
+        this.ready = true;
+
+        this.readiness.complete(this);
+    }
+
+    /**
+     * Returns a future completed when the client is ready to process messages and instructions (when the session is running and the client
+     * is connected to the WebX Engine). The future is completed exceptionally if the client is disconnected before being ready.
+     * @return the readiness of the client
+     */
+    public CompletableFuture<WebXClient> getReadiness() {
+        return this.readiness;
+    }
+
+    /**
+     * Returns the number of messages waiting to be read by the client
+     * @return the number of queued messages
+     */
+    public int getQueueDepth() {
+        return this.messageQueue.size();
+    }
+
+    /**
+     * Returns the total size in bytes of the messages waiting to be read by the client
+     * @return the queued bytes
+     */
+    public long getQueuedBytes() {
+        return this.messageQueue.queuedBytes();
+    }
+
+    /**
+     * Returns a snapshot of the traffic and state of the client: messages read, instructions written, queue state, last ping round-trip time
+     * and connection time
+     * @return the client statistics
+     */
+    public ClientStatistics getStatistics() {
+        final long now = System.nanoTime();
+        final long oldestReceptionTime = this.messageQueue.oldestReceptionTime();
+        return new ClientStatistics(
+                this.messagesRead.get(),
+                this.bytesRead.get(),
+                this.instructionsWritten.get(),
+                this.bytesWritten.get(),
+                this.messageQueue.size(),
+                this.messageQueue.queuedBytes(),
+                oldestReceptionTime != 0 ? Math.max(0, (now - oldestReceptionTime) / 1000000) : 0,
+                this.session.getLastPingRttMs(),
+                (now - this.connectionTime) / 1000000,
+                this.messageQueue.droppedMessages(),
+                this.messageQueue.coalescedMessages());
+    }
+
+    /**
+     * Returns the rolling statistics of the round-trip times of the most recent pings of the session of the client
+     * @return the ping statistics
+     */
+    public PingStatistics getPingStatistics() {
+        return this.session.getPingStatistics();
+    }
+
+    /**
+     * Returns a snapshot of the traffic of the session of the client by message type
+     * @return the statistics of each message type received
+     */
+    public List<MessageTypeStatistics> getTrafficStatistics() {
+        return this.session.getTrafficStatistics().getStatistics();
     }
 
     /**
@@ -121,8 +209,10 @@ public class WebXClient {
         if (this.connected) {
             this.onMessage(new Message.CloseMessage());
             this.setPingResponseHandler(null);
+            this.setFrameLossHandler(null);
             this.connected = false;
         }
+        this.readiness.completeExceptionally(new WebXDisconnectedException("Client disconnected before being ready"));
     }
 
     /**
@@ -150,7 +240,8 @@ public class WebXClient {
         if (this.connected) {
             logger.trace("Got client message of length {}", messageData.length);
             Message message = new Message(messageData);
-            this.messageQueue.add(message);
+            final int droppedCount = this.messageQueue.add(message);
+            this.onQueued(1, droppedCount);
         }
     }
 
@@ -160,7 +251,52 @@ public class WebXClient {
      */
     public void onMessage(Message message) {
         if (this.connected) {
-            this.messageQueue.add(message);
+            final int droppedCount = this.messageQueue.add(message);
+            this.onQueued(1, droppedCount);
+        }
+    }
+
+    /**
+     * Queues a batch of messages destined to this client. The queue is locked and the reader woken only once for the batch.
+     * @param messages the messages
+     */
+    void onMessages(List<Message> messages) {
+        if (this.connected) {
+            logger.trace("Got batch of {} client messages", messages.size());
+            final int droppedCount = this.messageQueue.addAll(messages);
+            this.onQueued(messages.size(), droppedCount);
+        }
+    }
+
+    /**
+     * Reports the queue depth after messages have been queued. A client queue overflow flight recorder event is emitted
+     * when the queue depth crosses the overflow threshold. If messages have been dropped because the queue is full the
+     * frame loss handler is called so that the client display can be resynchronised.
+     * @param messageCount the number of messages that have been queued
+     * @param droppedCount the number of messages dropped because the queue is full
+     */
+    private void onQueued(int messageCount, int droppedCount) {
+        if (droppedCount > 0) {
+            logger.debug("Queue of client of session {} is full: {} messages dropped", this.getSessionId().hexString(), droppedCount);
+            this.onFrameLoss(new FrameLossData(FrameLossData.Cause.CLIENT_QUEUE_OVERFLOW, droppedCount));
+        }
+
+        final int queueDepth = this.messageQueue.size();
+        final long queuedBytes = this.messageQueue.queuedBytes();
+        this.metrics.onClientQueued(this, queueDepth, queuedBytes);
+
+        final int threshold = this.session.getClientQueueOverflowThreshold();
+        if (queueDepth > threshold && queueDepth - messageCount <= threshold) {
+            logger.debug("Queue of client of session {} has exceeded {} messages", this.getSessionId().hexString(), threshold);
+            final ClientQueueOverflowEvent event = new ClientQueueOverflowEvent();
+            if (event.shouldCommit()) {
+                event.sessionId = this.getSessionId().hexString();
+                event.clientId = this.clientIdentifier != null ? this.clientIdentifier.clientIdString() : null;
+                event.queueDepth = queueDepth;
+                event.queuedBytes = queuedBytes;
+                event.threshold = threshold;
+                event.commit();
+            }
         }
     }
 
@@ -174,8 +310,13 @@ public class WebXClient {
 
             // Set the sessionId and clientId at the beginning
             System.arraycopy(this.instructionPrefix.array(), 0, instructionData, 0, 20);
+            if (this.trafficRecorder != null) {
+                this.trafficRecorder.recordInstruction(instructionData);
+            }
 
             this.session.sendInstruction(instructionData);
+            this.instructionsWritten.incrementAndGet();
+            this.bytesWritten.addAndGet(instructionData.length);
         }
     }
 
@@ -191,41 +332,126 @@ public class WebXClient {
             try {
                 // Get next message, wait for anything
                 Message message = this.messageQueue.take();
+                return this.readMessage(message);
 
-                if (message.getType().equals(Message.Type.INTERRUPT)) {
-                    throw new WebXConnectionInterruptException(message.getStringData());
+            } catch (InterruptedException exception) {
+                throw new WebXConnectionInterruptException("Client message listener thread interrupted");
 
-                } else if (message.getType().equals(Message.Type.DISCONNECT)) {
-                    logger.info("Client (Id \"{}\" and index \"{}\") received disconnect message from WebX session \"{}\"", this.getClientIdentifier().clientIdString(), this.getClientIdentifier().clientIndexString(), this.getSessionId().hexString());
+            }
+        } else {
+            throw new WebXClientException("WebXClient is not connected");
+        }
+    }
 
-                    this.connected = false;
-                    throw new WebXDisconnectedException("Disconnect message received from the server");
+    /**
+     * Non-blocking method to get the next message for the client: returns immediately if no message is waiting to be read
+     * @return the raw binary message from the engine, null if no message is queued or if the client has been closed
+     * @throws WebXClientException thrown if the client is not connected
+     * @throws WebXConnectionInterruptException thrown if the connection is interrupted
+     * @throws WebXDisconnectedException thrown if disconnected
+     */
+    public byte[] pollMessage() throws WebXClientException, WebXConnectionInterruptException, WebXDisconnectedException {
+        if (this.connected) {
+            final Message message = this.messageQueue.poll();
+            return message != null ? this.readMessage(message) : null;
 
-                } else if (message.getType().equals(Message.Type.CLOSE)) {
-                    return null;
-                }
+        } else {
+            throw new WebXClientException("WebXClient is not connected");
+        }
+    }
 
-                byte[] messageData = message.getData();
+    /**
+     * Non-blocking method returning the next queued message if one is available
+     * @return the next queued message, null if no message is queued
+     */
+    Message pollQueuedMessage() {
+        return this.messageQueue.poll();
+    }
 
-                if (messageData == null) {
-                    // connection closed
-                    return null;
+    /**
+     * Reads a message taken from the queue: internal messages are converted to exceptions or to the end of the messages
+     * @param message the message taken from the queue
+     * @return the raw binary message from the engine, null if the client has been closed
+     * @throws WebXConnectionInterruptException thrown if the connection is interrupted
+     * @throws WebXDisconnectedException thrown if disconnected
+     */
+    byte[] readMessage(final Message message) throws WebXConnectionInterruptException, WebXDisconnectedException {
+        this.metrics.onClientDequeued(this, this.messageQueue.size(), this.messageQueue.queuedBytes());
+        this.session.onMessageRead(message);
 
-                } else {
-                    logger.trace("Read client message of length {}", messageData.length);
+        if (message.getType().equals(Message.Type.INTERRUPT)) {
+            throw new WebXConnectionInterruptException(message.getStringData());
 
-                    return messageData;
-                }
+        } else if (message.getType().equals(Message.Type.DISCONNECT)) {
+            logger.info("Client (Id \"{}\" and index \"{}\") received disconnect message from WebX session \"{}\"", this.getClientIdentifier().clientIdString(), this.getClientIdentifier().clientIndexString(), this.getSessionId().hexString());
 
-            } catch (InterruptedException exception) {
-                throw new WebXConnectionInterruptException("Client message listener thread interrupted");
+            this.connected = false;
+            throw new WebXDisconnectedException("Disconnect message received from the server");
+
+        } else if (message.getType().equals(Message.Type.CLOSE)) {
+            return null;
+        }
+
+        byte[] messageData = message.getData();
+
+        if (messageData == null) {
+            // connection closed
+            return null;
 
-            }
         } else {
-            throw new WebXClientException("WebXClient is not connected");
+            logger.trace("Read client message of length {}", messageData.length);
+            this.messagesRead.incrementAndGet();
+            this.bytesRead.addAndGet(messageData.length);
+
+            return messageData;
         }
     }
 
+    /**
+     * Sets the listener called when messages are queued for the client while no message was waiting to be read. A single listener
+     * can be set so that the messages are consumed by a single publisher subscriber or selector.
+     * @param availabilityListener the listener
+     * @return true if the listener has been set, false if the messages are already consumed by another listener
+     */
+    public boolean setMessageAvailabilityListener(final Runnable availabilityListener) {
+        return this.messageQueue.setAvailabilityListener(availabilityListener);
+    }
+
+    /**
+     * Bounds the queue of the client with the publisher queue limit if no client queue limit is set: called when the messages are
+     * read by a publisher subscriber
+     */
+    void limitQueueForPublisher() {
+        this.messageQueue.limitIfUnbounded(this.session.getPublisherQueueLimit());
+    }
+
+    /**
+     * Removes the message availability listener of a publisher subscriber and restores the limit of the queue set before the
+     * subscription (see limitQueueForPublisher): called when the subscription terminates
+     * @param availabilityListener the listener of the subscription
+     */
+    void releaseQueueForPublisher(final Runnable availabilityListener) {
+        this.messageQueue.removeAvailabilityListenerAndRestoreLimit(availabilityListener);
+    }
+
+    /**
+     * Removes the message availability listener if it is the current one
+     * @param availabilityListener the listener to remove
+     */
+    public void removeMessageAvailabilityListener(final Runnable availabilityListener) {
+        this.messageQueue.removeAvailabilityListener(availabilityListener);
+    }
+
+    /**
+     * Creates a publisher of the messages of the client honouring the demand of its subscriber (see ClientMessagePublisher)
+     * @param executor the executor delivering the messages to the subscriber
+     * @param disconnectionHandler called when a disconnect message is received from the server
+     * @return the message publisher
+     */
+    public Flow.Publisher<byte[]> createPublisher(final Executor executor, final Runnable disconnectionHandler) {
+        return new ClientMessagePublisher(this, executor, disconnectionHandler);
+    }
+
     /**
      * Sets the ping response handler (optional to obtain stats on ping data, eg timing)
      * @param pingResponseHandler the ping response handler
@@ -234,6 +460,14 @@ public class WebXClient {
         this.pingResponseHandler = pingResponseHandler != null ? pingResponseHandler : data -> {};
     }
 
+    /**
+     * Sets the frame loss handler (optional to resynchronise the client display when messages from the WebX Engine have been lost)
+     * @param frameLossHandler the frame loss handler
+     */
+    public void setFrameLossHandler(FrameLossHandler frameLossHandler) {
+        this.frameLossHandler = frameLossHandler != null ? frameLossHandler : data -> {};
+    }
+
     /**
      * Returns true if the client Identifier matches the header of the message data
      * @param messageData the raw message data
@@ -262,4 +496,13 @@ public class WebXClient {
     public void onPingResponse(PingResponseData pingResponse) {
         this.pingResponseHandler.onPingResponse(pingResponse);
     }
+
+    /**
+     * Forwards the frame loss data to the FrameLossHandler if one has been set
+     * @param frameLossData the frame loss data (cause and number of lost messages)
+     */
+    public void onFrameLoss(FrameLossData frameLossData) {
+        this.metrics.onClientMessagesDropped(this, frameLossData.droppedFrames());
+        this.frameLossHandler.onFrameLoss(frameLossData);
+    }
 }
@@ -0,0 +1,102 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.relay;
+
+/**
+ * Snapshot of the state of a WebXClient, exposed through the WebXSessionMXBean
+ */
+public class WebXClientInfo {
+
+    private final String clientId;
+    private final String clientIndex;
+    private final String clientVersion;
+    private final boolean connected;
+    private final boolean ready;
+    private final int queueDepth;
+    private final long queuedBytes;
+
+    /**
+     * Constructor taking the current state of a client
+     * @param client the client
+     */
+    WebXClientInfo(final WebXClient client) {
+        this.clientId = client.getClientIdentifier() != null ? client.getClientIdentifier().clientIdString() : null;
+        this.clientIndex = client.getClientIdentifier() != null ? client.getClientIdentifier().clientIndexString() : null;
+        this.clientVersion = client.getClientVersion();
+        this.connected = client.isConnected();
+        this.ready = client.isReady();
+        this.queueDepth = client.getQueueDepth();
+        this.queuedBytes = client.getQueuedBytes();
+    }
+
+    /**
+     * Returns the client Id
+     * @return the client Id (hex string), null if the client is waiting for the session to start
+     */
+    public String getClientId() {
+        return clientId;
+    }
+
+    /**
+     * Returns the client index
+     * @return the client index, null if the client is waiting for the session to start
+     */
+    public String getClientIndex() {
+        return clientIndex;
+    }
+
+    /**
+     * Returns the client version
+     * @return the client version
+     */
+    public String getClientVersion() {
+        return clientVersion;
+    }
+
+    /**
+     * Returns true if the client is connected
+     * @return true if connected
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Returns true if the client is ready to handle messages and instructions
+     * @return true if ready
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Returns the number of messages waiting to be read by the client
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Returns the total size in bytes of the messages waiting to be read by the client
+     * @return the queued bytes
+     */
+    public long getQueuedBytes() {
+        return queuedBytes;
+    }
+}
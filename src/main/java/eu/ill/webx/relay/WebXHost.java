@@ -23,17 +23,36 @@ import eu.ill.webx.WebXHostConfiguration;
 import eu.ill.webx.exceptions.WebXCommunicationException;
 import eu.ill.webx.exceptions.WebXConnectionException;
 import eu.ill.webx.exceptions.WebXDisconnectedException;
+import eu.ill.webx.jfr.ClientConnectionEvent;
+import eu.ill.webx.jfr.HostConnectionEvent;
+import eu.ill.webx.jfr.HostDisconnectionEvent;
+import eu.ill.webx.jfr.LoopStallEvent;
+import eu.ill.webx.jfr.SessionCreationEvent;
+import eu.ill.webx.jfr.SlowDispatchEvent;
+import eu.ill.webx.metrics.RelayMetrics;
+import eu.ill.webx.model.FrameLossData;
+import eu.ill.webx.model.PingResponseData;
+import eu.ill.webx.model.PingStatistics;
+import eu.ill.webx.model.RequestType;
 import eu.ill.webx.model.SessionCreation;
 import eu.ill.webx.model.SessionId;
 import eu.ill.webx.model.SessionStatusResponse;
 import eu.ill.webx.model.SocketResponse;
+import eu.ill.webx.recording.TrafficRecorder;
+import eu.ill.webx.transport.MessageSubscriber;
 import eu.ill.webx.transport.Transport;
+import eu.ill.webx.watchdog.Heartbeat;
+import eu.ill.webx.watchdog.StallWatchdog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.ObjectName;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Provides connection to a WebXRouter or standalone WebXEngine.
@@ -45,16 +64,50 @@ public class WebXHost {
     private static final Logger logger = LoggerFactory.getLogger(WebXHost.class);
 
     private final WebXHostConfiguration configuration;
-    private final Transport transport = new Transport();
+    private final RelayMetrics metrics;
+    private final TrafficRecorder trafficRecorder;
+    private final Transport transport;
+    private final StallWatchdog watchdog;
+    private final ObjectName managementName;
 
     private List<WebXSession> sessions = new ArrayList<>();
 
+    private final AtomicLong droppedFrameCount = new AtomicLong();
+    private final AtomicLong frameLossEventCount = new AtomicLong();
+    private final AtomicLong subscriberReconnectionCount = new AtomicLong();
+    private final PingStatisticsWindow pingStatistics = new PingStatisticsWindow(128);
+
     /**
      * Constructor taking a host configuration
      * @param configuration The host configuration
      */
     WebXHost(final WebXHostConfiguration configuration) {
         this.configuration = configuration;
+        this.metrics = configuration.getMetrics();
+        this.trafficRecorder = configuration.getTrafficRecorder();
+        this.managementName = configuration.isJmxEnabled() ? ManagementRegistry.hostName(this) : null;
+        this.watchdog = new StallWatchdog(configuration.getHostname() + ":" + configuration.getPort(), configuration.getStallThresholdMs(), configuration.getThreadFactory(), new StallWatchdog.StallHandler() {
+            @Override
+            public void onStall(Heartbeat heartbeat, long stallNs, StackTraceElement[] stackTrace) {
+                onLoopStalled(heartbeat, stallNs, stackTrace);
+            }
+
+            @Override
+            public void onRecovery(Heartbeat heartbeat, long stallNs) {
+                logger.info("Relay loop {} ({}) of {}:{} recovered after {}ms", heartbeat.getName(), threadName(heartbeat), getHostname(), getPort(), stallNs / 1000000);
+            }
+        });
+        this.transport = new Transport(new Transport.Listener() {
+            @Override
+            public void onRequestCompleted(RequestType requestType, long durationNs, boolean success) {
+                metrics.onRequestCompleted(WebXHost.this, requestType, durationNs, success);
+            }
+
+            @Override
+            public void onInstructionSent(int length) {
+                metrics.onInstructionSent(WebXHost.this, length);
+            }
+        }, this.watchdog);
     }
 
     /**
@@ -73,6 +126,71 @@ public class WebXHost {
         return this.configuration.getPort();
     }
 
+    /**
+     * Returns the number of messages known to have been lost by all sessions of the host (for example during a reconnection of the message subscriber)
+     * @return the number of dropped messages
+     */
+    public long getDroppedFrameCount() {
+        return this.droppedFrameCount.get();
+    }
+
+    /**
+     * Returns the number of times a message loss has been detected for the sessions of the host
+     * @return the number of message loss events
+     */
+    public long getFrameLossEventCount() {
+        return this.frameLossEventCount.get();
+    }
+
+    /**
+     * Returns the number of times the message subscriber has reconnected to the host (messages published during the disconnection are lost)
+     * @return the number of subscriber reconnections
+     */
+    public long getSubscriberReconnectionCount() {
+        return this.subscriberReconnectionCount.get();
+    }
+
+    /**
+     * Returns the number of stalls of the subscriber, publisher and validator loops of the host
+     * @return the number of loop stalls
+     */
+    public long getLoopStallCount() {
+        return this.watchdog.getStallCount();
+    }
+
+    /**
+     * Returns the number of loops of the host that are currently stalled
+     * @return the number of stalled loops
+     */
+    public int getStalledLoopCount() {
+        return this.watchdog.getStalledLoopCount();
+    }
+
+    /**
+     * Returns true if the transport to the host is connected
+     * @return true if connected
+     */
+    public boolean isConnected() {
+        return this.transport.isConnected();
+    }
+
+    /**
+     * Returns true if the host is a standalone WebX Engine
+     * @return true if standalone
+     */
+    public boolean isStandalone() {
+        return this.transport.isStandalone();
+    }
+
+    /**
+     * Returns the rolling statistics (min, median, p99, jitter) of the round-trip times of the most recent pings of all sessions of the host:
+     * this reflects the quality of the connection to the WebX Router (or standalone WebX Engine)
+     * @return the ping statistics
+     */
+    public PingStatistics getPingStatistics() {
+        return this.pingStatistics.getStatistics();
+    }
+
     /**
      * Starts the connection to the WebX Host. Connects all ZMQ sockets.
      * @throws WebXConnectionException thrown if the connectionfails
@@ -80,13 +198,39 @@ public class WebXHost {
     void connect() throws WebXConnectionException {
         if (!this.transport.isConnected()) {
             // Initialise transport: verify that the host has a running WebX server
+            final HostConnectionEvent event = new HostConnectionEvent();
+            event.begin();
             try {
                 logger.info("Connecting to WebX server at {}:{}...", this.configuration.getHostname(), this.configuration.getPort());
-                this.transport.connect(this.configuration.getHostname(), this.configuration.getPort(), configuration.getSocketTimeoutMs(), configuration.isStandalone(), this::onMessage);
+                this.watchdog.start();
+                this.transport.connect(this.configuration, new MessageSubscriber.MessageHandler() {
+                    @Override
+                    public void onMessage(byte[] messageData) {
+                        WebXHost.this.onMessages(List.of(messageData));
+                    }
+
+                    @Override
+                    public void onMessages(List<byte[]> messages) {
+                        WebXHost.this.onMessages(messages);
+                    }
+                }, this::onSubscriberReconnected);
                 logger.info("... connected to {}", this.configuration.getHostname());
 
+                ManagementRegistry.register(this.managementName, new WebXHostManagement(this), WebXHostMXBean.class);
+                event.success = true;
+
             } catch (WebXDisconnectedException e) {
+                this.watchdog.stop();
                 throw new WebXConnectionException("Failed to connect to WebX host");
+
+            } finally {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.hostname = this.getHostname();
+                    event.port = this.getPort();
+                    event.standalone = this.configuration.isStandalone();
+                    event.commit();
+                }
             }
         }
     }
@@ -97,6 +241,16 @@ public class WebXHost {
     void disconnect() {
         // Disconnect from WebX server
         this.transport.disconnect();
+        this.watchdog.stop();
+        ManagementRegistry.unregister(this.managementName);
+        this.metrics.onHostDisconnected(this);
+
+        final HostDisconnectionEvent event = new HostDisconnectionEvent();
+        if (event.shouldCommit()) {
+            event.hostname = this.getHostname();
+            event.port = this.getPort();
+            event.commit();
+        }
         logger.info("Disconnected from WebX server at {}:{}...", this.getHostname(), this.getPort());
     }
 
@@ -109,6 +263,38 @@ public class WebXHost {
      * @throws WebXConnectionException thrown if the connection fails
      */
     public WebXClient onClientConnection(final WebXClientConfiguration clientConfiguration, final WebXEngineConfiguration engineConfiguration) throws WebXConnectionException {
+        final long startTime = System.nanoTime();
+        final ClientConnectionEvent event = new ClientConnectionEvent();
+        event.begin();
+        WebXClient client = null;
+        try {
+            client = this.createClient(clientConfiguration, engineConfiguration);
+            return client;
+
+        } finally {
+            this.metrics.onClientConnection(this, System.nanoTime() - startTime, client != null);
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.hostname = this.getHostname();
+                event.success = client != null;
+                if (client != null) {
+                    event.sessionId = client.getSessionId().hexString();
+                    event.clientId = client.getClientIdentifier() != null ? client.getClientIdentifier().clientIdString() : null;
+                }
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Creates a client for a new or existing session (depending on the client configuration)
+     * @param clientConfiguration The client connection configuration
+     * @param engineConfiguration The engine configuration (WebX Engine)
+     * @return a new WebX client
+     * @throws WebXConnectionException thrown if the connection fails
+     */
+    private WebXClient createClient(final WebXClientConfiguration clientConfiguration, final WebXEngineConfiguration engineConfiguration) throws WebXConnectionException {
         if (this.transport.isConnected()) {
             SessionCreation sessionCreation;
             if (clientConfiguration.getSessionId() == null) {
@@ -128,9 +314,17 @@ public class WebXHost {
 
             // Check if the session already exists
             final WebXSession session = this.getSession(sessionId).orElseGet(() -> {
-                final WebXSession webXSession = new WebXSession(sessionCreation, transport, this::onSessionError);
+                final WebXSession webXSession = new WebXSession(sessionCreation, transport, this::onSessionError, this::onSessionFrameLoss, this::onSessionPingResponse, this.watchdog, this.configuration);
                 webXSession.start();
 
+                final SessionCreationEvent event = new SessionCreationEvent();
+                if (event.shouldCommit()) {
+                    event.hostname = this.getHostname();
+                    event.sessionId = sessionId.hexString();
+                    event.status = sessionCreation.status().name();
+                    event.commit();
+                }
+
                 this.addSession(webXSession);
                 return webXSession;
             });
@@ -161,6 +355,37 @@ public class WebXHost {
         });
     }
 
+    /**
+     * Forces the disconnection of a client (eg requested by an operator). The session is removed if it is empty and the
+     * relay disconnects from the host if it has no more clients.
+     * @param client the WebX client
+     */
+    void closeClient(final WebXClient client) {
+        logger.info("Forcing disconnection of client of session \"{}\"", client.getSessionId().hexString());
+        this.onClientDisconnected(client);
+        WebXRelay.getInstance().onClientDisconnect(this);
+    }
+
+    /**
+     * Forces the disconnection of all clients of a session and removes the session (eg requested by an operator). The relay
+     * disconnects from the host if it has no more clients.
+     * @param session the WebX session
+     */
+    void closeSession(final WebXSession session) {
+        logger.info("Forcing disconnection of session \"{}\"", session.getSessionId().hexString());
+        session.getClients().forEach(this::onClientDisconnected);
+        this.cleanupSessions();
+        WebXRelay.getInstance().onClientDisconnect(this);
+    }
+
+    /**
+     * Returns a copy of the list of sessions of the host
+     * @return the sessions
+     */
+    synchronized List<WebXSession> getSessions() {
+        return new ArrayList<>(this.sessions);
+    }
+
     /**
      * Returns the total number of clients connected
      * @return the number of clients connected
@@ -179,18 +404,25 @@ public class WebXHost {
             if (session.getClientCount() == 0) {
                 logger.debug("Cleanup: Session with Id \"{}\" has no clients: stopping it", session.getSessionId().hexString());
                 session.stop();
+                this.unregisterManagement(session);
                 return false;
             }
             return true;
         }).toList());
+        this.metrics.onActiveSessions(this, this.sessions.size());
     }
 
     /**
-     * Adds a new session to the session list
+     * Adds a new session to the session list.
+     * Package-private only so that the benchmark fixtures can add sessions that are not connected: it is not part of the relay API.
      * @param session the session to add
      */
-    private synchronized void addSession(final WebXSession session) {
+    synchronized void addSession(final WebXSession session) {
         this.sessions.add(session);
+        this.metrics.onActiveSessions(this, this.sessions.size());
+        if (this.managementName != null) {
+            ManagementRegistry.register(ManagementRegistry.sessionName(this, session), new WebXSessionManagement(this, session), WebXSessionMXBean.class);
+        }
     }
 
     /**
@@ -198,7 +430,20 @@ public class WebXHost {
      * @param session the session to remove
      */
     private synchronized void removeSession(final WebXSession session) {
-        this.sessions.remove(session);
+        if (this.sessions.remove(session)) {
+            this.unregisterManagement(session);
+        }
+        this.metrics.onActiveSessions(this, this.sessions.size());
+    }
+
+    /**
+     * Unregisters the management bean of a session
+     * @param session the session
+     */
+    private void unregisterManagement(final WebXSession session) {
+        if (this.managementName != null) {
+            ManagementRegistry.unregister(ManagementRegistry.sessionName(this, session));
+        }
     }
 
     /**
@@ -211,20 +456,130 @@ public class WebXHost {
     }
 
     /**
-     * Callback from the message publisher when a new message has been sent from the server. The host determines which session is valid (from the header of the message)
-     * and forwards it accordingly.
-     * @param messageData The raw binary message data
+     * Callback from the message subscriber when a batch of messages has been sent from the server. The messages are dispatched
+     * to the sessions and a slow dispatch flight recorder event is emitted if the dispatch exceeds the event threshold.
+     * Package-private only so that the benchmarks can inject messages without a message subscriber: it is not part of the relay API.
+     * @param messages The raw binary data of the messages
+     */
+    void onMessages(List<byte[]> messages) {
+        logger.trace("Got batch of {} client messages from {}", messages.size(), this.configuration.getHostname());
+        final SlowDispatchEvent event = new SlowDispatchEvent();
+        event.begin();
+
+        long byteCount = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            byteCount += messages.get(i).length;
+        }
+        this.metrics.onMessagesReceived(this, messages.size(), byteCount);
+        if (this.trafficRecorder != null) {
+            this.trafficRecorder.recordMessages(messages);
+        }
+
+        this.dispatchMessages(messages);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.hostname = this.getHostname();
+            event.messageCount = messages.size();
+            event.byteCount = byteCount;
+            event.commit();
+        }
+    }
+
+    /**
+     * Forwards a batch of messages to the sessions. The host determines which session is valid (from the header of each message)
+     * and forwards the messages grouped by session so that each session is looked up and locked only once per batch.
+     * @param messages The raw binary data of the messages
      */
-    private void onMessage(byte[] messageData) {
-        logger.trace("Got client message of length {} from {}", messageData.length, this.configuration.getHostname());
+    private void dispatchMessages(List<byte[]> messages) {
+        if (messages.size() == 1) {
+            final byte[] messageData = messages.get(0);
+            this.getSession(new SessionId(messageData)).ifPresent(session -> session.onMessages(messages));
+            return;
+        }
+
+        // Group messages by session Id, keeping the order of reception within each session
+        final Map<SessionId, List<byte[]>> sessionMessages = new LinkedHashMap<>();
+        for (byte[] messageData : messages) {
+            sessionMessages.computeIfAbsent(new SessionId(messageData), sessionId -> new ArrayList<>()).add(messageData);
+        }
 
-        // Get session Id
-        SessionId sessionId = new SessionId(messageData);
-        this.getSession(sessionId).ifPresent(session -> {
-            session.onMessage(messageData);
+        sessionMessages.forEach((sessionId, sessionMessageData) -> {
+            this.getSession(sessionId).ifPresent(session -> session.onMessages(sessionMessageData));
         });
     }
 
+    /**
+     * Callback from the message subscriber when the socket has reconnected to the server after a disconnection. Messages published
+     * in the meantime are lost so all sessions are notified.
+     */
+    private void onSubscriberReconnected() {
+        logger.warn("Message subscriber reconnected to {}:{}: messages may have been lost", this.getHostname(), this.getPort());
+        this.subscriberReconnectionCount.incrementAndGet();
+
+        final List<WebXSession> sessions;
+        synchronized (this) {
+            sessions = new ArrayList<>(this.sessions);
+        }
+        final FrameLossData frameLossData = new FrameLossData(FrameLossData.Cause.SUBSCRIBER_RECONNECTION, 0);
+        sessions.forEach(session -> session.onFrameLoss(frameLossData));
+    }
+
+    /**
+     * Callback from the watchdog when a loop of the host has stalled: the stack trace of the blocked thread is logged, the stall is counted
+     * in the metrics and a flight recorder event is emitted.
+     * @param heartbeat the heartbeat of the stalled loop
+     * @param stallNs the time since the last progress of the loop in nanoseconds
+     * @param stackTrace the stack trace of the stalled thread
+     */
+    private void onLoopStalled(final Heartbeat heartbeat, long stallNs, final StackTraceElement[] stackTrace) {
+        final StringBuilder stack = new StringBuilder();
+        for (StackTraceElement element : stackTrace) {
+            stack.append("\n\tat ").append(element);
+        }
+        logger.warn("Relay loop {} ({}) of {}:{} has made no progress for {}ms:{}", heartbeat.getName(), threadName(heartbeat), this.getHostname(), this.getPort(), stallNs / 1000000, stack);
+
+        this.metrics.onLoopStalled(this, heartbeat.getName(), stallNs);
+
+        final LoopStallEvent event = new LoopStallEvent();
+        if (event.shouldCommit()) {
+            event.hostname = this.getHostname();
+            event.loop = heartbeat.getName();
+            event.loopThread = heartbeat.getThread();
+            event.stallDuration = stallNs;
+            event.commit();
+        }
+    }
+
+    /**
+     * Returns the name of the thread of a loop
+     * @param heartbeat the heartbeat of the loop
+     * @return the thread name
+     */
+    private static String threadName(final Heartbeat heartbeat) {
+        final Thread thread = heartbeat.getThread();
+        return thread != null ? thread.getName() : "terminated";
+    }
+
+    /**
+     * Callback from a session when messages have been lost: the host totals are updated.
+     * @param session the session that lost messages
+     * @param frameLossData the cause and number of lost messages
+     */
+    private void onSessionFrameLoss(final WebXSession session, final FrameLossData frameLossData) {
+        this.droppedFrameCount.addAndGet(frameLossData.droppedFrames());
+        this.frameLossEventCount.incrementAndGet();
+    }
+
+    /**
+     * Callback from a session when it has been pinged successfully: the host ping statistics are updated.
+     * @param session the session that has been pinged
+     * @param pingResponse the ping response data
+     */
+    private void onSessionPingResponse(final WebXSession session, final PingResponseData pingResponse) {
+        this.pingStatistics.add(pingResponse.rttNs());
+    }
+
     /**
      * Sends requests to the WebX Router to get the status of a session.
      * @param sessionId The session Id
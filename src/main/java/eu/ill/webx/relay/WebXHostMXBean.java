@@ -0,0 +1,116 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.relay;
+
+/**
+ * Management interface of a WebXHost, registered with the platform MBean server when JMX is enabled in the host configuration.
+ * Provides live counts of the sessions and clients of the host and allows an operator to force the disconnection of a session.
+ */
+public interface WebXHostMXBean {
+
+    /**
+     * Returns the hostname
+     * @return the hostname
+     */
+    String getHostname();
+
+    /**
+     * Returns the port of the client connector
+     * @return the port
+     */
+    int getPort();
+
+    /**
+     * Returns true if the transport to the host is connected
+     * @return true if connected
+     */
+    boolean isConnected();
+
+    /**
+     * Returns true if the host is a standalone WebX Engine
+     * @return true if standalone
+     */
+    boolean isStandalone();
+
+    /**
+     * Returns the number of sessions of the host
+     * @return the number of sessions
+     */
+    int getSessionCount();
+
+    /**
+     * Returns the Ids of the sessions of the host
+     * @return the session Ids
+     */
+    String[] getSessionIds();
+
+    /**
+     * Returns the number of clients of all sessions of the host
+     * @return the number of clients
+     */
+    int getClientCount();
+
+    /**
+     * Returns the largest number of messages waiting to be read by a single client of the host
+     * @return the largest client queue depth
+     */
+    int getMaxClientQueueDepth();
+
+    /**
+     * Returns the total size in bytes of the messages waiting to be read by all clients of the host
+     * @return the queued bytes
+     */
+    long getQueuedBytes();
+
+    /**
+     * Returns the number of messages from the host that are known to have been lost
+     * @return the number of dropped messages
+     */
+    long getDroppedFrameCount();
+
+    /**
+     * Returns the number of times a message loss has been detected
+     * @return the number of message loss events
+     */
+    long getFrameLossEventCount();
+
+    /**
+     * Returns the number of times the message subscriber has reconnected to the host
+     * @return the number of reconnections
+     */
+    long getSubscriberReconnectionCount();
+
+    /**
+     * Returns the number of stalls of the subscriber, publisher and validator loops of the host
+     * @return the number of loop stalls
+     */
+    long getLoopStallCount();
+
+    /**
+     * Returns the number of loops of the host that are currently stalled
+     * @return the number of stalled loops
+     */
+    int getStalledLoopCount();
+
+    /**
+     * Disconnects all clients of a session and removes the session
+     * @param sessionId the session Id (hex string)
+     * @return true if the session was found
+     */
+    boolean disconnectSession(String sessionId);
+}
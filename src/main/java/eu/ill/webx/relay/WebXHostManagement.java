@@ -0,0 +1,125 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.relay;
+
+import java.util.Optional;
+
+/**
+ * Implementation of the WebXHostMXBean
+ */
+class WebXHostManagement implements WebXHostMXBean {
+
+    private final WebXHost host;
+
+    /**
+     * Constructor taking the host
+     * @param host the host
+     */
+    WebXHostManagement(final WebXHost host) {
+        this.host = host;
+    }
+
+    @Override
+    public String getHostname() {
+        return this.host.getHostname();
+    }
+
+    @Override
+    public int getPort() {
+        return this.host.getPort();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return this.host.isConnected();
+    }
+
+    @Override
+    public boolean isStandalone() {
+        return this.host.isStandalone();
+    }
+
+    @Override
+    public int getSessionCount() {
+        return this.host.getSessions().size();
+    }
+
+    @Override
+    public String[] getSessionIds() {
+        return this.host.getSessions().stream()
+                .map(session -> session.getSessionId().hexString())
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public int getClientCount() {
+        return this.host.getClientCount();
+    }
+
+    @Override
+    public int getMaxClientQueueDepth() {
+        return this.host.getSessions().stream()
+                .flatMap(session -> session.getClients().stream())
+                .mapToInt(WebXClient::getQueueDepth)
+                .max()
+                .orElse(0);
+    }
+
+    @Override
+    public long getQueuedBytes() {
+        return this.host.getSessions().stream()
+                .flatMap(session -> session.getClients().stream())
+                .mapToLong(WebXClient::getQueuedBytes)
+                .sum();
+    }
+
+    @Override
+    public long getDroppedFrameCount() {
+        return this.host.getDroppedFrameCount();
+    }
+
+    @Override
+    public long getFrameLossEventCount() {
+        return this.host.getFrameLossEventCount();
+    }
+
+    @Override
+    public long getSubscriberReconnectionCount() {
+        return this.host.getSubscriberReconnectionCount();
+    }
+
+    @Override
+    public long getLoopStallCount() {
+        return this.host.getLoopStallCount();
+    }
+
+    @Override
+    public int getStalledLoopCount() {
+        return this.host.getStalledLoopCount();
+    }
+
+    @Override
+    public boolean disconnectSession(final String sessionId) {
+        final Optional<WebXSession> session = this.host.getSessions().stream()
+                .filter(webXSession -> webXSession.getSessionId().hexString().equalsIgnoreCase(sessionId))
+                .findFirst();
+
+        session.ifPresent(this.host::closeSession);
+        return session.isPresent();
+    }
+}
@@ -35,6 +35,7 @@ public class WebXRelay {
     private static final Logger logger = LoggerFactory.getLogger(WebXRelay.class);
 
     private final List<WebXHost> hosts = new ArrayList<>();
+    private boolean managementRegistered = false;
 
     /**
      * Private constructor
@@ -75,6 +76,10 @@ public class WebXRelay {
         try {
             host.connect();
             this.hosts.add(host);
+            if (configuration.isJmxEnabled() && !this.managementRegistered) {
+                ManagementRegistry.register(ManagementRegistry.relayName(), new WebXRelayManagement(this), WebXRelayMXBean.class);
+                this.managementRegistered = true;
+            }
             return host;
         } catch (WebXConnectionException exception) {
             host.disconnect();
@@ -99,6 +104,14 @@ public class WebXRelay {
         }
     }
 
+    /**
+     * Returns a copy of the list of connected hosts
+     * @return the connected hosts
+     */
+    synchronized List<WebXHost> getHosts() {
+        return new ArrayList<>(this.hosts);
+    }
+
     /**
      * Returns a WebXHost optional for a given configuration
      * @param configuration The WebXHost configuration
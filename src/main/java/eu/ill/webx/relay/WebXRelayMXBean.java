@@ -0,0 +1,49 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.relay;
+
+/**
+ * Management interface of the WebXRelay, registered with the platform MBean server when JMX is enabled in a host configuration.
+ * Provides a live overview of the hosts that are connected to the relay.
+ */
+public interface WebXRelayMXBean {
+
+    /**
+     * Returns the number of connected hosts
+     * @return the number of hosts
+     */
+    int getHostCount();
+
+    /**
+     * Returns the address (hostname:port) of each connected host
+     * @return the host addresses
+     */
+    String[] getHosts();
+
+    /**
+     * Returns the total number of sessions of all hosts
+     * @return the number of sessions
+     */
+    int getSessionCount();
+
+    /**
+     * Returns the total number of clients of all hosts
+     * @return the number of clients
+     */
+    int getClientCount();
+}
@@ -0,0 +1,60 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.relay;
+
+/**
+ * Implementation of the WebXRelayMXBean
+ */
+class WebXRelayManagement implements WebXRelayMXBean {
+
+    private final WebXRelay relay;
+
+    /**
+     * Constructor taking the relay
+     * @param relay the relay
+     */
+    WebXRelayManagement(final WebXRelay relay) {
+        this.relay = relay;
+    }
+
+    @Override
+    public int getHostCount() {
+        return this.relay.getHosts().size();
+    }
+
+    @Override
+    public String[] getHosts() {
+        return this.relay.getHosts().stream()
+                .map(host -> host.getHostname() + ":" + host.getPort())
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public int getSessionCount() {
+        return this.relay.getHosts().stream()
+                .mapToInt(host -> host.getSessions().size())
+                .sum();
+    }
+
+    @Override
+    public int getClientCount() {
+        return this.relay.getHosts().stream()
+                .mapToInt(WebXHost::getClientCount)
+                .sum();
+    }
+}
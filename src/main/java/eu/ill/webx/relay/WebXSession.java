@@ -17,17 +17,30 @@
  */
 package eu.ill.webx.relay;
 
+import eu.ill.webx.WebXHostConfiguration;
 import eu.ill.webx.exceptions.WebXCommunicationException;
 import eu.ill.webx.exceptions.WebXConnectionException;
 import eu.ill.webx.exceptions.WebXDisconnectedException;
+import eu.ill.webx.jfr.ClientDisconnectionEvent;
+import eu.ill.webx.jfr.SessionStateChangeEvent;
+import eu.ill.webx.metrics.Histogram;
+import eu.ill.webx.metrics.RelayMetrics;
+import eu.ill.webx.metrics.TrafficStatistics;
 import eu.ill.webx.model.*;
+import eu.ill.webx.recording.TrafficRecorder;
 import eu.ill.webx.transport.Transport;
 import eu.ill.webx.utils.Tuple;
+import eu.ill.webx.watchdog.Heartbeat;
+import eu.ill.webx.watchdog.StallWatchdog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Encapsulates a particular WebX X11 session, identified by a unique sessionId.
@@ -46,16 +59,68 @@ public class WebXSession {
          */
         void onError(final WebXSession session);
     }
+
+    /**
+     * Defines an interface to handle messages lost by the session
+     */
+    interface OnFrameLossHandler {
+        /**
+         * Called when messages of the session have been lost
+         * @param session the WebXSession that lost messages
+         * @param frameLossData the cause and number of lost messages
+         */
+        void onFrameLoss(final WebXSession session, final FrameLossData frameLossData);
+    }
+
+    /**
+     * Defines an interface to handle successful pings of the session
+     */
+    interface OnPingResponseHandler {
+        /**
+         * Called when a ping of the session has succeeded
+         * @param session the WebXSession that has been pinged
+         * @param pingResponse the ping response data
+         */
+        void onPingResponse(final WebXSession session, final PingResponseData pingResponse);
+    }
+
     private static final Logger logger = LoggerFactory.getLogger(WebXSession.class);
 
+    // Offset of the optional sequence number in the message header (not written by current WebX Engines, see WebXHostConfiguration.withSequenceTracking)
+    private static final int SEQUENCE_OFFSET = 44;
+
     private SessionCreation.CreationStatus creationStatus;
     private final SessionId sessionId;
     private final Transport transport;
     private final OnErrorHandler onErrorHandler;
-
-    private final List<WebXClient> clients = new ArrayList<>();
+    private final OnFrameLossHandler onFrameLossHandler;
+    private final OnPingResponseHandler onPingResponseHandler;
+    private final RelayMetrics metrics;
+    private final TrafficRecorder trafficRecorder;
+    private final int clientQueueOverflowThreshold;
+    private final int clientQueueLimit;
+    private final int publisherQueueLimit;
+    private final boolean mouseCoalescing;
+    private final boolean sequenceTracking;
+    private final long creationTime = System.currentTimeMillis();
+    private volatile long lastPingRttNs = -1;
+    private volatile long lastPingTime = 0;
+    private final PingStatisticsWindow pingStatistics = new PingStatisticsWindow(32);
+
+    private final ClockOffsetEstimator clockOffsetEstimator = new ClockOffsetEstimator();
+    private final Histogram transitLatency = Histogram.exponential(250, 2, 16);
+    private final Histogram queueLatency = Histogram.exponential(50, 2, 18);
+    private final TrafficStatistics trafficStatistics = new TrafficStatistics();
+
+    private final List<WebXClient> clients = new CopyOnWriteArrayList<>();
 
     private final WebXSessionValidator sessionValidator;
+    private final Heartbeat validatorHeartbeat;
+    private boolean subscribed = false;
+
+    private int lastSequence = 0;
+    private final AtomicLong droppedFrameCount = new AtomicLong();
+    private final AtomicLong frameLossEventCount = new AtomicLong();
 
     /**
      * Constructor taking a unique sessionId and Transport encapsulating all ZMQ sockets. The session validator is created
@@ -63,13 +128,27 @@ public class WebXSession {
      * @param sessionCreation the session creation including unique Session Id and creation status
      * @param transport the ZMQ transport layer
      * @param onErrorHandler the callback function to handle errors during session validation
+     * @param onFrameLossHandler the callback function when messages of the session are lost
+     * @param onPingResponseHandler the callback function when the session has been pinged successfully
+     * @param watchdog the stall watchdog of the host (monitoring the session validator)
+     * @param configuration the host configuration (thread factory, metrics and client queue settings)
      */
-    WebXSession(final SessionCreation sessionCreation, final Transport transport, final OnErrorHandler onErrorHandler) {
+    WebXSession(final SessionCreation sessionCreation, final Transport transport, final OnErrorHandler onErrorHandler, final OnFrameLossHandler onFrameLossHandler, final OnPingResponseHandler onPingResponseHandler, final StallWatchdog watchdog, final WebXHostConfiguration configuration) {
         this.sessionId = sessionCreation.sessionId();
         this.creationStatus = sessionCreation.status();
         this.transport = transport;
         this.onErrorHandler = onErrorHandler;
-        this.sessionValidator = new WebXSessionValidator(this.sessionId, transport, this.creationStatus, this::onCreationStatusUpdate, this::onSessionValidationError, this::onPingResponse);
+        this.onFrameLossHandler = onFrameLossHandler;
+        this.onPingResponseHandler = onPingResponseHandler != null ? onPingResponseHandler : (session, pingResponse) -> {};
+        this.metrics = configuration.getMetrics();
+        this.trafficRecorder = configuration.getTrafficRecorder();
+        this.clientQueueOverflowThreshold = configuration.getClientQueueOverflowThreshold();
+        this.clientQueueLimit = configuration.getClientQueueLimit();
+        this.publisherQueueLimit = configuration.getPublisherQueueLimit();
+        this.mouseCoalescing = configuration.isMouseCoalescing();
+        this.sequenceTracking = configuration.isSequenceTracking();
+        this.validatorHeartbeat = watchdog.heartbeat("validator");
+        this.sessionValidator = new WebXSessionValidator(this.sessionId, transport, this.creationStatus, this::onCreationStatusUpdate, this::onSessionValidationError, this::onPingResponse, configuration.getThreadFactory(), this.validatorHeartbeat);
     }
 
     /**
@@ -80,19 +159,190 @@ public class WebXSession {
         return sessionId;
     }
 
+    /**
+     * Returns the creation status of the session
+     * @return the creation status
+     */
+    public synchronized SessionCreation.CreationStatus getCreationStatus() {
+        return creationStatus;
+    }
+
+    /**
+     * Returns the time (epoch milliseconds) at which the session was created in the relay
+     * @return the creation time
+     */
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    /**
+     * Returns the round-trip time of the last successful ping of the session
+     * @return the round-trip time in milliseconds, or -1 if the session has not been pinged
+     */
+    public long getLastPingRttMs() {
+        final long lastPingRttNs = this.lastPingRttNs;
+        return lastPingRttNs < 0 ? -1 : lastPingRttNs / 1000000;
+    }
+
+    /**
+     * Returns the rolling statistics (min, median, p99, jitter) of the round-trip times of the most recent pings of the session
+     * @return the ping statistics
+     */
+    public PingStatistics getPingStatistics() {
+        return this.pingStatistics.getStatistics();
+    }
+
+    /**
+     * Returns the time (epoch milliseconds) of the last successful ping of the session
+     * @return the time of the last ping, or 0 if the session has not been pinged
+     */
+    public long getLastPingTime() {
+        return lastPingTime;
+    }
+
+    /**
+     * Returns the histogram of the latencies (in microseconds, millisecond resolution) between the emission of messages by the WebX Engine
+     * (message timestamp, corrected by the estimated clock offset) and their reception by the relay. Latencies are only recorded once
+     * the clock offset has been estimated (after the first ping).
+     * @return the transit latency histogram
+     */
+    public Histogram getTransitLatency() {
+        return transitLatency;
+    }
+
+    /**
+     * Returns the histogram of the times (in microseconds) that messages spend in the relay between their reception and their read
+     * by a client application
+     * @return the queue latency histogram
+     */
+    public Histogram getQueueLatency() {
+        return queueLatency;
+    }
+
+    /**
+     * Returns the traffic of the session by message type: number of messages, bytes and size histogram for each raw message type Id
+     * received from the WebX Engine
+     * @return the traffic statistics
+     */
+    public TrafficStatistics getTrafficStatistics() {
+        return trafficStatistics;
+    }
+
+    /**
+     * Returns true if the offset between the WebX Engine clock and the relay clock has been estimated
+     * @return true if the clock offset is known
+     */
+    public boolean isClockOffsetValid() {
+        return this.clockOffsetEstimator.isValid();
+    }
+
+    /**
+     * Returns the estimated offset between the WebX Engine clock and the relay clock (engine time - relay time)
+     * @return the clock offset in milliseconds
+     */
+    public long getClockOffsetMs() {
+        return this.clockOffsetEstimator.getOffsetMs();
+    }
+
+    /**
+     * Returns true if the session validator thread is running
+     * @return true if the validator is running
+     */
+    boolean isValidatorRunning() {
+        return this.sessionValidator.isRunning();
+    }
+
+    /**
+     * Returns the relay metrics
+     * @return the relay metrics
+     */
+    RelayMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the recorder of the traffic of the host
+     * @return the traffic recorder (null if the traffic is not recorded)
+     */
+    TrafficRecorder getTrafficRecorder() {
+        return trafficRecorder;
+    }
+
+    /**
+     * Returns the number of queued messages above which the queue of a client is considered to overflow
+     * @return the client queue overflow threshold
+     */
+    int getClientQueueOverflowThreshold() {
+        return clientQueueOverflowThreshold;
+    }
+
+    /**
+     * Returns the maximum number of messages queued for a client
+     * @return the client queue limit (0 if the queue is unbounded)
+     */
+    int getClientQueueLimit() {
+        return clientQueueLimit;
+    }
+
+    /**
+     * Returns the maximum number of messages queued for a client whose messages are read with a publisher, if no client queue limit is set
+     * @return the publisher queue limit
+     */
+    int getPublisherQueueLimit() {
+        return publisherQueueLimit;
+    }
+
+    /**
+     * Returns true if the mouse messages queued for a client are coalesced
+     * @return true if mouse messages are coalesced
+     */
+    boolean isMouseCoalescing() {
+        return mouseCoalescing;
+    }
+
+    /**
+     * Returns the number of messages of the session that are known to have been lost (for example during a reconnection of the message subscriber)
+     * @return the number of dropped messages
+     */
+    public long getDroppedFrameCount() {
+        return this.droppedFrameCount.get();
+    }
+
+    /**
+     * Returns the number of times a message loss has been detected for the session (including subscriber reconnections where the
+     * number of lost messages is unknown)
+     * @return the number of message loss events
+     */
+    public long getFrameLossEventCount() {
+        return this.frameLossEventCount.get();
+    }
 
     /**
-     * Starts the session validator thread (pings the session - either to the WebX Engine or via the WebX Router - to ensure it
-     * is running correctly)
+     * Subscribes to the messages of the session and starts the session validator thread (pings the session - either to the WebX Engine
+     * or via the WebX Router - to ensure it is running correctly)
      */
     public void start() {
+        synchronized (this) {
+            if (!this.subscribed) {
+                this.transport.subscribe(this.sessionId);
+                this.subscribed = true;
+            }
+        }
         this.sessionValidator.start();
     }
 
     /**
-     * Stops the session validator thread and waits for it to join.
+     * Removes the subscription to the session messages, stops the session validator thread and waits for it to join.
      */
     public void stop() {
+        synchronized (this) {
+            if (this.subscribed) {
+                this.transport.unsubscribe(this.sessionId);
+                this.subscribed = false;
+                this.commitStateChange(this.creationStatus.name(), "STOPPED");
+            }
+        }
+
         try {
             if (this.sessionValidator.isRunning()) {
                 this.sessionValidator.interrupt();
@@ -104,35 +354,61 @@ public class WebXSession {
         } catch (InterruptedException exception) {
             logger.warn("Stop of relay message listener and client instruction threads interrupted", exception);
         }
+
+        this.metrics.onSessionStopped(this);
     }
 
     /**
      * Creates a new WebXClient object with a unique Client Identifier and adds it to the clients list.
      * If the session is running we connect the client immediately to the WebX Engine otherwise we wait.
+     * The connection request is made outside the session monitor so that the messages of the session are not held up by it.
      * @param clientVersion the version of the client
      * @return a WebXClient object
      * @throws WebXConnectionException thrown if the connection request fails
      */
-    public synchronized WebXClient createClient(final String clientVersion) throws WebXConnectionException {
-        WebXClient client;
-        if (this.creationStatus == SessionCreation.CreationStatus.RUNNING) {
-            final ClientIdentifier clientIdentifier = this.connectClient(sessionId, clientVersion);
-            client = new WebXClient(clientIdentifier, this, clientVersion);
+    public WebXClient createClient(final String clientVersion) throws WebXConnectionException {
+        synchronized (this) {
+            if (this.creationStatus != SessionCreation.CreationStatus.RUNNING) {
+                // The client is connected by the status update when the session is running
+                final WebXClient client = new WebXClient(this, clientVersion);
+                this.addClient(client);
+                return client;
+            }
+        }
 
-        } else {
-            client = new WebXClient(this, clientVersion);
+        final ClientIdentifier clientIdentifier = this.connectClient(sessionId, clientVersion);
+        final WebXClient client = new WebXClient(clientIdentifier, this, clientVersion);
+        synchronized (this) {
+            this.addClient(client);
         }
-        this.clients.add(client);
         return client;
     }
 
+    /**
+     * Adds a client to the clients list: called with the session monitor held
+     * @param client the client
+     */
+    private void addClient(final WebXClient client) {
+        this.clients.add(client);
+        this.metrics.onClientConnected(client);
+    }
+
     /**
      * Called when a client disconnects. Removes the client from the clients list.
      * @param client the client that has disconnected
      */
     public synchronized void onClientDisconnected(final WebXClient client) {
         client.onDisconnected();
-        this.clients.remove(client);
+        if (this.clients.remove(client)) {
+            this.metrics.onClientDisconnected(client);
+
+            final ClientDisconnectionEvent event = new ClientDisconnectionEvent();
+            if (event.shouldCommit()) {
+                event.sessionId = this.sessionId.hexString();
+                event.clientId = client.getClientIdentifier() != null ? client.getClientIdentifier().clientIdString() : null;
+                event.commit();
+            }
+        }
     }
 
     /**
@@ -161,17 +437,126 @@ public class WebXSession {
 
     /**
      * Called when the WebX Engine for this session has sent a message. The message contains a client index mask
-     * which is used to filter specific clients to which the message is destined.
+     * which is used to filter specific clients to which the message is destined. The message is handled as a batch of one message.
      * @param messageData The raw binary message data
      */
-    public synchronized void onMessage(byte[] messageData) {
-        List<WebXClient> indexAssociatedClients = this.clients.stream()
-                .filter(webXClient -> webXClient.matchesMessageIndexMask(messageData))
-                .toList();
+    public void onMessage(byte[] messageData) {
+        this.onMessages(List.of(messageData));
+    }
+
+    /**
+     * Called when the WebX Engine for this session has sent a batch of messages. Each message is filtered by the
+     * client index mask and each client receives all of its messages from the batch in a single call.
+     * @param messages The raw binary data of the messages, in order of reception
+     */
+    public synchronized void onMessages(List<byte[]> messages) {
+        if (this.clients.isEmpty()) {
+            return;
+        }
+
+        final long receptionTime = System.nanoTime();
+        final long receptionTimeMs = System.currentTimeMillis();
+        final boolean clockOffsetValid = this.clockOffsetEstimator.isValid();
+        final long clockOffsetMs = this.clockOffsetEstimator.getOffsetMs();
+        long minMessageDelay = Long.MAX_VALUE;
+
+        final List<Message> batch = new ArrayList<>(messages.size());
+        long droppedFrames = 0;
+        for (byte[] messageData : messages) {
+            final Message message = new Message(messageData, receptionTime);
+            if (this.sequenceTracking) {
+                droppedFrames += this.updateSequence(messageData);
+            }
+            this.metrics.onSessionMessage(this, message.getType(), messageData.length);
+            this.trafficStatistics.record(message.getTypeId(), messageData.length);
+            batch.add(message);
+
+            if (message.getTimestamp() > 0) {
+                final long messageDelay = receptionTimeMs - message.getTimestamp();
+                minMessageDelay = Math.min(minMessageDelay, messageDelay);
+                if (clockOffsetValid) {
+                    this.transitLatency.record(Math.max(0, messageDelay + clockOffsetMs) * 1000);
+                }
+            }
+        }
+
+        if (minMessageDelay != Long.MAX_VALUE) {
+            this.clockOffsetEstimator.onMessages(minMessageDelay);
+        }
+
+        if (droppedFrames > 0) {
+            logger.debug("Detected {} lost messages for session {}", droppedFrames, this.sessionId.hexString());
+            this.onFrameLoss(new FrameLossData(FrameLossData.Cause.SEQUENCE_GAP, droppedFrames));
+        }
+
+        int deliveryCount = 0;
+        final List<Message> clientMessages = new ArrayList<>(messages.size());
+        for (WebXClient client : this.clients) {
+            for (int i = 0; i < messages.size(); i++) {
+                if (client.matchesMessageIndexMask(messages.get(i))) {
+                    clientMessages.add(batch.get(i));
+                }
+            }
+
+            if (!clientMessages.isEmpty()) {
+                deliveryCount += clientMessages.size();
+                client.onMessages(clientMessages);
+                clientMessages.clear();
+            }
+        }
+        this.metrics.onSessionFanOut(this, messages.size(), deliveryCount);
+    }
+
+    /**
+     * Called when messages of the session have been lost. The loss is counted and all clients are notified so that
+     * they can resynchronise their display.
+     * @param frameLossData the cause and number of lost messages
+     */
+    synchronized void onFrameLoss(final FrameLossData frameLossData) {
+        this.droppedFrameCount.addAndGet(frameLossData.droppedFrames());
+        this.frameLossEventCount.incrementAndGet();
+
+        for (WebXClient client : this.clients) {
+            client.onFrameLoss(frameLossData);
+        }
+
+        if (this.onFrameLossHandler != null) {
+            this.onFrameLossHandler.onFrameLoss(this, frameLossData);
+        }
+    }
+
+    /**
+     * Called by a client when a message has been read by the client application: the time spent by the message in the relay is recorded.
+     * @param message the message that has been read
+     */
+    void onMessageRead(final Message message) {
+        if (message.getReceptionTime() != 0) {
+            this.queueLatency.record((System.nanoTime() - message.getReceptionTime()) / 1000);
+        }
+    }
+
+    /**
+     * Updates the last received sequence number and returns the number of messages missing since the previous one (only called if sequence
+     * tracking is enabled). Sequence numbers of 0 (not provided by the WebX Engine) are ignored and a sequence going backwards (engine restart)
+     * resets the tracking.
+     * @param messageData the data of the message
+     * @return the number of missing messages
+     */
+    private int updateSequence(final byte[] messageData) {
+        final int sequence = messageData.length >= Message.HEADER_LENGTH ? ByteBuffer.wrap(messageData).order(ByteOrder.LITTLE_ENDIAN).getInt(SEQUENCE_OFFSET) : 0;
+        if (sequence == 0) {
+            return 0;
+        }
 
-        for (WebXClient client : indexAssociatedClients) {
-            client.onMessage(messageData);
+        int missing = 0;
+        if (this.lastSequence != 0) {
+            final int gap = sequence - this.lastSequence - 1;
+            if (gap > 0) {
+                missing = gap;
+            }
         }
+        this.lastSequence = sequence;
+        return missing;
     }
 
     /**
@@ -189,14 +574,38 @@ public class WebXSession {
      * Called from the WebXSessionValidator during the session startup process. The validator determines the
      * status of the session from the WebX Router and forwards the current status here. We send clients messages
      * always to ensure that the connection is kept alive.
+     * When the session is running the waiting clients are connected: the validator heartbeat is idle during each connection request since
+     * the wait is bounded by the socket timeout (and a failed request disconnects the client).
      * @param creationStatus The creation status of the session
      */
-    private synchronized void onCreationStatusUpdate(SessionCreation.CreationStatus creationStatus) {
-        this.creationStatus = creationStatus;
+    private void onCreationStatusUpdate(SessionCreation.CreationStatus creationStatus) {
+        final List<WebXClient> waitingClients = new ArrayList<>();
+        synchronized (this) {
+            if (creationStatus != this.creationStatus) {
+                this.commitStateChange(this.creationStatus.name(), creationStatus.name());
+            }
+            this.creationStatus = creationStatus;
+            if (creationStatus.equals(SessionCreation.CreationStatus.RUNNING)) {
+                for (WebXClient client : this.clients) {
+                    if (!client.isReady()) {
+                        waitingClients.add(client);
+                    }
+                }
+            }
+        }
+
         if (creationStatus.equals(SessionCreation.CreationStatus.RUNNING)) {
-            for (WebXClient client : this.clients) {
+            // The connection requests are made outside the session monitor so that the messages of the session are not held up by them
+            for (WebXClient client : waitingClients) {
                 try {
-                    final ClientIdentifier clientIdentifier = this.connectClient(sessionId, client.getClientVersion());
+                    final ClientIdentifier clientIdentifier;
+                    this.validatorHeartbeat.idle();
+                    try {
+                        clientIdentifier = this.connectClient(sessionId, client.getClientVersion());
+
+                    } finally {
+                        this.validatorHeartbeat.busy();
+                    }
                     client.setClientIdentifier(clientIdentifier);
 
                     client.onMessage(new Message.ConnectionMessage(false));
@@ -215,6 +624,21 @@ public class WebXSession {
         }
     }
 
+    /**
+     * Commits a session state change flight recorder event
+     * @param previousState the previous state
+     * @param state the new state
+     */
+    private void commitStateChange(final String previousState, final String state) {
+        final SessionStateChangeEvent event = new SessionStateChangeEvent();
+        if (event.shouldCommit()) {
+            event.sessionId = this.sessionId.hexString();
+            event.previousState = previousState;
+            event.state = state;
+            event.commit();
+        }
+    }
+
     /**
      * Called when a communication error occurs with the WebX Router or Engine. This closes the session.
      * @param error The error that occurred
@@ -334,6 +758,12 @@ public class WebXSession {
      * @param pingResponse the ping response data
      */
     private void onPingResponse(PingResponseData pingResponse) {
+        this.lastPingRttNs = pingResponse.rttNs();
+        this.lastPingTime = System.currentTimeMillis();
+        this.pingStatistics.add(pingResponse.rttNs());
+        this.clockOffsetEstimator.onPing(pingResponse.rttMs(), pingResponse.requestTime(), pingResponse.engineTime());
+        this.metrics.onSessionPing(this, pingResponse.rttNs());
+        this.onPingResponseHandler.onPingResponse(this, pingResponse);
         for (WebXClient client : this.clients) {
             client.onPingResponse(pingResponse);
         }
@@ -0,0 +1,98 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.relay;
+
+/**
+ * Management interface of a WebXSession, registered with the platform MBean server when JMX is enabled in the host configuration.
+ * Provides the state of the session validator, the last ping round-trip time and the state of each client, and allows
+ * an operator to force the disconnection of a client or of the whole session.
+ */
+public interface WebXSessionMXBean {
+
+    /**
+     * Returns the session Id
+     * @return the session Id (hex string)
+     */
+    String getSessionId();
+
+    /**
+     * Returns the creation status of the session (STARTING or RUNNING)
+     * @return the creation status
+     */
+    String getCreationStatus();
+
+    /**
+     * Returns the time (epoch milliseconds) at which the session was created in the relay
+     * @return the creation time
+     */
+    long getCreationTime();
+
+    /**
+     * Returns true if the session validator thread is running
+     * @return true if the validator is running
+     */
+    boolean isValidatorRunning();
+
+    /**
+     * Returns the round-trip time of the last successful ping of the session
+     * @return the round-trip time in milliseconds, or -1 if the session has not been pinged
+     */
+    long getLastPingRttMs();
+
+    /**
+     * Returns the time (epoch milliseconds) of the last successful ping of the session
+     * @return the time of the last ping, or 0 if the session has not been pinged
+     */
+    long getLastPingTime();
+
+    /**
+     * Returns the number of clients of the session
+     * @return the number of clients
+     */
+    int getClientCount();
+
+    /**
+     * Returns the state of each client of the session
+     * @return the client states
+     */
+    WebXClientInfo[] getClients();
+
+    /**
+     * Returns the number of messages of the session that are known to have been lost
+     * @return the number of dropped messages
+     */
+    long getDroppedFrameCount();
+
+    /**
+     * Returns the number of times a message loss has been detected for the session
+     * @return the number of message loss events
+     */
+    long getFrameLossEventCount();
+
+    /**
+     * Disconnects a client from the session. The session is removed if it has no more clients.
+     * @param clientId the client Id (hex string)
+     * @return true if the client was found
+     */
+    boolean disconnectClient(String clientId);
+
+    /**
+     * Disconnects all clients of the session and removes the session
+     */
+    void disconnect();
+}
@@ -0,0 +1,106 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.relay;
+
+import java.util.Optional;
+
+/**
+ * Implementation of the WebXSessionMXBean
+ */
+class WebXSessionManagement implements WebXSessionMXBean {
+
+    private final WebXHost host;
+    private final WebXSession session;
+
+    /**
+     * Constructor taking the session and the host it belongs to
+     * @param host the host
+     * @param session the session
+     */
+    WebXSessionManagement(final WebXHost host, final WebXSession session) {
+        this.host = host;
+        this.session = session;
+    }
+
+    @Override
+    public String getSessionId() {
+        return this.session.getSessionId().hexString();
+    }
+
+    @Override
+    public String getCreationStatus() {
+        return this.session.getCreationStatus().name();
+    }
+
+    @Override
+    public long getCreationTime() {
+        return this.session.getCreationTime();
+    }
+
+    @Override
+    public boolean isValidatorRunning() {
+        return this.session.isValidatorRunning();
+    }
+
+    @Override
+    public long getLastPingRttMs() {
+        return this.session.getLastPingRttMs();
+    }
+
+    @Override
+    public long getLastPingTime() {
+        return this.session.getLastPingTime();
+    }
+
+    @Override
+    public int getClientCount() {
+        return this.session.getClientCount();
+    }
+
+    @Override
+    public WebXClientInfo[] getClients() {
+        return this.session.getClients().stream()
+                .map(WebXClientInfo::new)
+                .toArray(WebXClientInfo[]::new);
+    }
+
+    @Override
+    public long getDroppedFrameCount() {
+        return this.session.getDroppedFrameCount();
+    }
+
+    @Override
+    public long getFrameLossEventCount() {
+        return this.session.getFrameLossEventCount();
+    }
+
+    @Override
+    public boolean disconnectClient(final String clientId) {
+        final Optional<WebXClient> client = this.session.getClients().stream()
+                .filter(webXClient -> webXClient.getClientIdentifier() != null && webXClient.getClientIdentifier().clientIdString().equalsIgnoreCase(clientId))
+                .findFirst();
+
+        client.ifPresent(this.host::closeClient);
+        return client.isPresent();
+    }
+
+    @Override
+    public void disconnect() {
+        this.host.closeSession(this.session);
+    }
+}
@@ -20,15 +20,20 @@ package eu.ill.webx.relay;
 
 import eu.ill.webx.exceptions.WebXCommunicationException;
 import eu.ill.webx.exceptions.WebXDisconnectedException;
+import eu.ill.webx.jfr.SessionStatusEvent;
 import eu.ill.webx.model.*;
 import eu.ill.webx.transport.Transport;
+import eu.ill.webx.watchdog.Heartbeat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.ThreadFactory;
+
 /**
  * Separate thread to ping a session to ensure it is still running.
+ * The thread is created by the thread factory of the host configuration (platform or virtual threads).
  */
-public class WebXSessionValidator extends Thread {
+public class WebXSessionValidator implements Runnable {
 
     private static final Logger logger = LoggerFactory.getLogger(WebXSessionValidator.class);
     private static final int CREATION_STATE_DELAY_MS = 500;
@@ -62,8 +67,11 @@ public class WebXSessionValidator extends Thread {
     private final OnCreationStatusUpdateHandler onCreationStatusUpdateHandler;
     private final OnErrorHandler onErrorHandler;
     private final PingResponseHandler pingResponseHandler;
+    private final ThreadFactory threadFactory;
+    private final Heartbeat heartbeat;
 
-    private boolean running = false;
+    private Thread thread;
+    private volatile boolean running = false;
 
     /**
      * Constructor taking the session Id, transport layer and error handler (callback function when pinging fails)
@@ -73,19 +81,25 @@ public class WebXSessionValidator extends Thread {
      * @param onCreationStatusUpdateHandler The callback when we obtain a new status value
      * @param onErrorHandler The callback when communication fails
      * @param pingResponseHandler The ping response handler (handles ping response data)
+     * @param threadFactory The factory used to create the validator thread
+     * @param heartbeat The heartbeat recording the progress of the validator thread
      */
     WebXSessionValidator(final SessionId sessionId,
                          final Transport transport,
                          final SessionCreation.CreationStatus creationStatus,
                          final OnCreationStatusUpdateHandler onCreationStatusUpdateHandler,
                          final OnErrorHandler onErrorHandler,
-                         final PingResponseHandler pingResponseHandler) {
+                         final PingResponseHandler pingResponseHandler,
+                         final ThreadFactory threadFactory,
+                         final Heartbeat heartbeat) {
         this.sessionId = sessionId;
         this.transport = transport;
         this.creationStatus = creationStatus;
         this.onCreationStatusUpdateHandler = onCreationStatusUpdateHandler;
         this.onErrorHandler = onErrorHandler != null ? onErrorHandler : error -> {};
         this.pingResponseHandler = pingResponseHandler;
+        this.threadFactory = threadFactory;
+        this.heartbeat = heartbeat;
     }
 
     /**
@@ -99,22 +113,33 @@ public class WebXSessionValidator extends Thread {
     /**
      * Starts the session validator thread
      */
-    @Override
-    public void start() {
+    public synchronized void start() {
         if (!this.running) {
             this.running = true;
-            super.start();
+            this.thread = this.threadFactory.newThread(this);
+            this.thread.setName("webx-validator-" + this.sessionId.hexString());
+            this.thread.start();
         }
     }
 
     /**
      * Interrupts the session validator thread
      */
-    @Override
-    public void interrupt() {
+    public synchronized void interrupt() {
         if (this.running) {
             this.running = false;
-            super.interrupt();
+            this.thread.interrupt();
+        }
+    }
+
+    /**
+     * Waits for the session validator thread to terminate
+     * @throws InterruptedException thrown if the waiting thread is interrupted
+     */
+    public void join() throws InterruptedException {
+        final Thread thread = this.thread;
+        if (thread != null && thread != Thread.currentThread()) {
+            thread.join();
         }
     }
 
@@ -124,6 +149,7 @@ public class WebXSessionValidator extends Thread {
      */
     @Override
     public void run() {
+        this.heartbeat.start();
         while (this.running) {
             try {
                 if (this.creationStatus != SessionCreation.CreationStatus.RUNNING) {
@@ -135,6 +161,7 @@ public class WebXSessionValidator extends Thread {
             } catch (InterruptedException ignored) {
             }
         }
+        this.heartbeat.stop();
     }
 
     /**
@@ -142,12 +169,15 @@ public class WebXSessionValidator extends Thread {
      * @throws InterruptedException if the sleep fails
      */
     private void doPing() throws InterruptedException {
+        this.heartbeat.idle();
         Thread.sleep(PING_DELAY_MS);
+        this.heartbeat.busy();
 
         if (this.running) {
             try {
                 logger.trace("Sending ping to session {}", this.sessionId.hexString());
-                SocketResponse response = this.transport.sendRequest("ping," + this.sessionId.hexString());
+                final long requestTime = System.currentTimeMillis();
+                SocketResponse response = this.sendRequest("ping," + this.sessionId.hexString());
 
                 if (response.toString() == null) {
                     this.onError(String.format("Failed to ping WebX Session %s", this.sessionId.hexString()));
@@ -158,7 +188,7 @@ public class WebXSessionValidator extends Thread {
                     if (responseElements[0].equals("pang")) {
                         this.onError(String.format("Failed to ping WebX Session %s: %s", this.sessionId.hexString(), responseElements[2]));
                     } else {
-                        this.pingResponseHandler.onPingResponse(new PingResponseData(response.rttMs()));
+                        this.pingResponseHandler.onPingResponse(new PingResponseData(response.rttNs(), requestTime, this.parseEngineTime(responseElements)));
                     }
                 }
 
@@ -171,16 +201,55 @@ public class WebXSessionValidator extends Thread {
         }
     }
 
+    /**
+     * Sends a request to the WebX Router (or WebX Engine). The heartbeat is idle while blocked in the request: the wait is bounded by the
+     * socket timeout and a request without response is reported as an error of the session, so it is not a stall of the validator.
+     * @param request the request
+     * @return the response
+     * @throws WebXCommunicationException thrown if the request fails
+     * @throws WebXDisconnectedException thrown if the transport is disconnected
+     */
+    private SocketResponse sendRequest(final String request) throws WebXCommunicationException, WebXDisconnectedException {
+        this.heartbeat.idle();
+        try {
+            return this.transport.sendRequest(request);
+
+        } finally {
+            this.heartbeat.busy();
+        }
+    }
+
+    /**
+     * Returns the time of the WebX Engine or WebX Router if it is included in the ping response (pong,sessionId,time)
+     * @param responseElements the elements of the ping response
+     * @return the time in epoch milliseconds, 0 if not provided
+     */
+    private long parseEngineTime(final String[] responseElements) {
+        if (responseElements.length > 2) {
+            try {
+                return Long.parseLong(responseElements[2].trim());
+
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return 0;
+    }
+
     /**
      * Requests the status of a WebX Session.
      * @throws InterruptedException if the sleep fails
      */
     private void updateCreationStatus() throws InterruptedException {
+        this.heartbeat.idle();
         Thread.sleep(CREATION_STATE_DELAY_MS);
+        this.heartbeat.busy();
         if (this.running) {
+            final SessionStatusEvent event = new SessionStatusEvent();
+            event.begin();
             try {
                 logger.trace("Requesting status of session {}", this.sessionId.hexString());
-                SessionStatusResponse response = new SessionStatusResponse(this.transport.sendRequest("status," + this.sessionId.hexString()));
+                SessionStatusResponse response = new SessionStatusResponse(this.sendRequest("status," + this.sessionId.hexString()));
+                event.status = response.getStatus().name();
 
                 switch (response.getStatus()) {
                     case EMPTY -> {
@@ -210,6 +279,13 @@ public class WebXSessionValidator extends Thread {
 
             } catch (WebXDisconnectedException e) {
                 this.onError(String.format("Failed to get response from status request of session %s", this.sessionId.hexString()));
+
+            } finally {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.sessionId = this.sessionId.hexString();
+                    event.commit();
+                }
             }
         }
     }
@@ -17,9 +17,11 @@
  */
 package eu.ill.webx.transport;
 
+import eu.ill.webx.WebXSocketConfiguration;
 import eu.ill.webx.exceptions.WebXCommunicationException;
 import eu.ill.webx.model.ConnectionData;
 import eu.ill.webx.exceptions.WebXDisconnectedException;
+import eu.ill.webx.jfr.RequestEvent;
 import eu.ill.webx.model.SocketResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,11 +30,10 @@ import org.zeromq.ZContext;
 import org.zeromq.ZMQ;
 import org.zeromq.ZMQException;
 
-import java.util.Date;
-
 /**
  * The ClientConnector provides an interface to the REP-REQ ZMQ socket to make requests to the WebX Router or Engine.
  * It's the main entry point to the connection, obtaining ports for the remaining sockets, client connection and disconnection requests.
+ * Requests are serialised by the Transport lock.
  */
 public class ClientConnector {
 
@@ -41,10 +42,14 @@ public class ClientConnector {
     private ZMQ.Socket socket;
     private ConnectionData connectionData;
 
+    private final RequestRecorder requestRecorder;
+
     /**
-     * Default constructor
+     * Constructor taking the transport listener (notified of request durations)
+     * @param listener the transport listener
      */
-    ClientConnector() {
+    ClientConnector(final Transport.Listener listener) {
+        this.requestRecorder = new RequestRecorder(listener, "connector");
     }
 
     /**
@@ -55,15 +60,20 @@ public class ClientConnector {
      * @param address The address of the client connector socket
      * @param socketTimeoutMs The timeout for all requests
      * @param standalone specifies whether the connection is directly to a standalone engine or to a router
+     * @param socketConfiguration The socket tuning options
      * @return The connection data for the other sockets
      * @throws WebXDisconnectedException thrown if the connection fails
      */
-    ConnectionData connect(ZContext context, String address, int socketTimeoutMs, boolean standalone) throws WebXDisconnectedException {
+    ConnectionData connect(ZContext context, String address, int socketTimeoutMs, boolean standalone, WebXSocketConfiguration socketConfiguration) throws WebXDisconnectedException {
 
         if (this.socket == null) {
             this.socket = context.createSocket(SocketType.REQ);
             this.socket.setLinger(0);
             this.socket.setReceiveTimeOut(socketTimeoutMs);
+            // A request that times out must not block the socket: allow a new request and discard late replies to the previous one
+            this.socket.setReqRelaxed(true);
+            this.socket.setReqCorrelate(true);
+            SocketOptions.apply(this.socket, socketConfiguration);
 
             this.socket.connect(address);
 
@@ -120,21 +130,24 @@ public class ClientConnector {
      * @throws WebXCommunicationException thrown if the request fails
      * @throws WebXDisconnectedException thrown if the server is not connected
      */
-    synchronized SocketResponse sendRequest(String request) throws WebXCommunicationException, WebXDisconnectedException {
+    SocketResponse sendRequest(String request) throws WebXCommunicationException, WebXDisconnectedException {
+        final long startTime = System.nanoTime();
+        final RequestEvent event = new RequestEvent();
+        event.begin();
         try {
             if (this.socket != null) {
-                Date requestDate = new Date();
                 this.socket.send(request);
                 byte[] data = socket.recv();
-                Date responseDate = new Date();
-                long rtt = responseDate.getTime() - requestDate.getTime();
-                return new SocketResponse(data, rtt);
+                final long rttNs = System.nanoTime() - startTime;
+                this.requestRecorder.onRequestCompleted(event, request, rttNs, data != null);
+                return new SocketResponse(data, rttNs);
 
             } else {
                 throw new WebXDisconnectedException();
             }
 
         } catch (ZMQException e) {
+            this.requestRecorder.onRequestCompleted(event, request, System.nanoTime() - startTime, false);
             logger.warn("Caught ZMQ Exception: {}", e.getMessage());
             throw new WebXCommunicationException(String.format("Failed to send request to WebX Engine: %s", e.getMessage()));
         }
@@ -17,6 +17,8 @@
  */
 package eu.ill.webx.transport;
 
+import eu.ill.webx.WebXSocketConfiguration;
+import eu.ill.webx.watchdog.Heartbeat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zeromq.SocketType;
@@ -24,6 +26,7 @@ import org.zeromq.ZContext;
 import org.zeromq.ZMQ;
 
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * The instruction publisher publishes instructions asynchronously to the WebX Engine (passing by the router if not in standalone).
@@ -38,11 +41,17 @@ public class InstructionPublisher {
     private final LinkedBlockingDeque<byte[]> instructionQueue = new LinkedBlockingDeque<>();
     private Thread instructionThread;
     private boolean connected = false;
+    private final ThreadFactory threadFactory;
+    private final Heartbeat heartbeat;
 
     /**
-     * Default constructor
+     * Constructor taking the factory used to create the instruction thread and the heartbeat recording its progress
+     * @param threadFactory The thread factory
+     * @param heartbeat The heartbeat of the instruction thread
      */
-    InstructionPublisher() {
+    InstructionPublisher(final ThreadFactory threadFactory, final Heartbeat heartbeat) {
+        this.threadFactory = threadFactory;
+        this.heartbeat = heartbeat;
     }
 
     /**
@@ -50,16 +59,20 @@ public class InstructionPublisher {
      * thread to handling client instructions that are in the queue.
      * @param context The ZMQ context
      * @param address The address of the Subscriber soket
+     * @param threadName The name given to the instruction thread
+     * @param socketConfiguration The socket tuning options
      */
-    void connect(ZContext context, String address) {
+    void connect(ZContext context, String address, String threadName, WebXSocketConfiguration socketConfiguration) {
         if (this.socket == null) {
             this.socket = context.createSocket(SocketType.PUB);
             this.socket.setLinger(0);
+            SocketOptions.apply(this.socket, socketConfiguration);
             this.socket.connect(address);
 
             this.connected = true;
 
-            this.instructionThread = new Thread(this::instructionLoop);
+            this.instructionThread = this.threadFactory.newThread(this::instructionLoop);
+            this.instructionThread.setName(threadName);
             this.instructionThread.start();
 
             try {
@@ -113,9 +126,12 @@ public class InstructionPublisher {
      * Loop waiting for instructions to appear in the instruction queue and consume them immediately
      */
     private void instructionLoop() {
+        this.heartbeat.start();
         while (this.connected) {
             try {
+                this.heartbeat.idle();
                 final byte[] instructionData = this.instructionQueue.take();
+                this.heartbeat.busy();
 
                 if (this.connected) {
                     this.socket.send(instructionData, 0);
@@ -127,5 +143,6 @@ public class InstructionPublisher {
                 }
             }
         }
+        this.heartbeat.stop();
     }
 }
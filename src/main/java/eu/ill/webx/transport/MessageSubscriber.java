@@ -17,18 +17,36 @@
  */
 package eu.ill.webx.transport;
 
+import eu.ill.webx.WebXSocketConfiguration;
+import eu.ill.webx.watchdog.Heartbeat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zeromq.SocketType;
 import org.zeromq.ZContext;
+import org.zeromq.ZEvent;
 import org.zeromq.ZMQ;
+import org.zeromq.ZMonitor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * The message subscriber connects to the ZMQ message publisher of the WebX Router (or Engine if in standalone)
  * and forwards them immediately to a handler (managed in the WebXHost).
+ * After each blocking receive, all frames that are immediately available are drained (up to a maximum batch size) so that
+ * bursts of messages are handed to the handler in a single call.
  * The host handler filters the messages by the sessionId (first 16 bytes). The session then filters the message by the
  * client index mask to determine exactly which clients require the message. The client queues the message awaiting for it
  * to be read by a client application.
+ * When connected to a WebX Router, the subscriber only subscribes to the session Ids of the sessions managed by the relay: the
+ * publisher then filters the messages and only the traffic of these sessions is received. ZMQ sockets are not thread-safe so
+ * subscription changes are queued and applied by the message thread (which is woken through an inproc socket).
+ * The subscriber socket is monitored: when it reconnects after a disconnection the reconnection handler is called since
+ * any messages published in the meantime have been lost.
+ * The progress of the message thread is reported to a heartbeat so that a blocked handler (which freezes all sessions of the host) is detected.
  */
 public class MessageSubscriber {
 
@@ -41,38 +59,115 @@ public class MessageSubscriber {
          * @param messageData the binary message data
          */
         void onMessage(byte[] messageData);
+
+        /**
+         * Called when a batch of messages arrives from the server. The list is reused by the subscriber after the call
+         * returns so it must not be retained by the handler. By default each message is passed to onMessage: handlers
+         * override this to process the batch in a single call.
+         * @param messages the binary message data of each message, in order of reception
+         */
+        default void onMessages(List<byte[]> messages) {
+            messages.forEach(this::onMessage);
+        }
+    }
+
+    /**
+     * Interface used to handle the callback when the subscriber socket reconnects to the server
+     */
+    public interface ReconnectionHandler {
+        /**
+         * Called from the message thread when the socket has reconnected after a disconnection
+         */
+        void onReconnected();
     }
 
     private static final Logger logger = LoggerFactory.getLogger(MessageSubscriber.class);
+    private static final byte[] WAKEUP = new byte[0];
+
+    /**
+     * A change of subscription to apply to the subscriber socket
+     * @param prefix the message prefix (session Id)
+     * @param subscribe true to subscribe, false to unsubscribe
+     */
+    private record SubscriptionChange(byte[] prefix, boolean subscribe) {
+    }
 
     private ZMQ.Socket socket;
+    private ZMQ.Socket wakeupReceiver;
+    private ZMQ.Socket wakeupSender;
+    private ZMQ.Socket monitor;
+    private boolean socketDisconnected = false;
+    private ZMQ.Poller poller;
     private Thread messageThread;
-    private boolean running = false;
+    private volatile boolean running = false;
+    private volatile boolean subscribeAll = true;
+    private final Queue<SubscriptionChange> subscriptionChanges = new ConcurrentLinkedQueue<>();
     private final MessageHandler messageHandler;
+    private final ReconnectionHandler reconnectionHandler;
+    private final int maxBatchSize;
+    private final ThreadFactory threadFactory;
+    private final Heartbeat heartbeat;
 
     /**
      * Constructor of the MessageSubscriber that takes a MessageHandler as a parameter.
      * @param messageHandler The message handler to consume messages.
+     * @param reconnectionHandler The handler called when the socket reconnects to the server
+     * @param maxBatchSize The maximum number of messages passed to the handler in a single call
+     * @param threadFactory The factory used to create the message thread
+     * @param heartbeat The heartbeat recording the progress of the message thread
      */
-    MessageSubscriber(final MessageHandler messageHandler) {
+    MessageSubscriber(final MessageHandler messageHandler, final ReconnectionHandler reconnectionHandler, int maxBatchSize, final ThreadFactory threadFactory, final Heartbeat heartbeat) {
         this.messageHandler = messageHandler;
+        this.reconnectionHandler = reconnectionHandler != null ? reconnectionHandler : () -> {};
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.threadFactory = threadFactory;
+        this.heartbeat = heartbeat;
     }
 
     /**
      * Connects to the server ZMQ publisher socket and start the thread to listen for new messages
      * @param context The ZMQ context
      * @param address The address of the publisher socket
+     * @param threadName The name given to the message thread
+     * @param subscribeAll if true all messages are received, otherwise only messages of subscribed session Ids are received
+     * @param socketConfiguration The socket tuning options
      */
-    synchronized void connect(ZContext context, String address) {
+    synchronized void connect(ZContext context, String address, String threadName, boolean subscribeAll, WebXSocketConfiguration socketConfiguration) {
         if (!running) {
+            this.subscribeAll = subscribeAll;
             this.socket = context.createSocket(SocketType.SUB);
             this.socket.setLinger(0);
-            this.socket.subscribe(ZMQ.SUBSCRIPTION_ALL);
+            SocketOptions.apply(this.socket, socketConfiguration);
+            if (subscribeAll) {
+                this.socket.subscribe(ZMQ.SUBSCRIPTION_ALL);
+            }
+
+            final String monitorAddress = "inproc://webx-subscriber-monitor-" + System.identityHashCode(this);
+            this.socket.monitor(monitorAddress, ZMQ.EVENT_CONNECTED | ZMQ.EVENT_DISCONNECTED);
+            this.monitor = context.createSocket(SocketType.PAIR);
+            this.monitor.setLinger(0);
+            this.monitor.connect(monitorAddress);
+            this.socketDisconnected = false;
+
             this.socket.connect(address);
 
+            final String wakeupAddress = "inproc://webx-subscriber-wakeup-" + System.identityHashCode(this);
+            this.wakeupReceiver = context.createSocket(SocketType.PAIR);
+            this.wakeupReceiver.setLinger(0);
+            this.wakeupReceiver.bind(wakeupAddress);
+            this.wakeupSender = context.createSocket(SocketType.PAIR);
+            this.wakeupSender.setLinger(0);
+            this.wakeupSender.connect(wakeupAddress);
+
+            this.poller = context.createPoller(3);
+            this.poller.register(this.socket, ZMQ.Poller.POLLIN);
+            this.poller.register(this.wakeupReceiver, ZMQ.Poller.POLLIN);
+            this.poller.register(this.monitor, ZMQ.Poller.POLLIN);
+
             running = true;
 
-            this.messageThread = new Thread(this::loop);
+            this.messageThread = this.threadFactory.newThread(this::loop);
+            this.messageThread.setName(threadName);
             this.messageThread.start();
 
             logger.debug("WebX Message Subscriber started");
@@ -87,14 +182,23 @@ public class MessageSubscriber {
         if (this.running) {
             synchronized (this) {
                 this.running = false;
+                this.wakeup();
             }
 
             try {
-                this.messageThread.interrupt();
                 this.messageThread.join();
                 this.messageThread = null;
 
+                this.poller.close();
+                this.socket.monitor(null, 0);
+                this.monitor.close();
                 this.socket.close();
+                synchronized (this) {
+                    this.wakeupSender.close();
+                    this.wakeupSender = null;
+                }
+                this.wakeupReceiver.close();
+                this.subscriptionChanges.clear();
 
                 logger.debug("WebX Message Subscriber disconnected");
 
@@ -105,14 +209,106 @@ public class MessageSubscriber {
     }
 
     /**
-     * The main loop waiting for messages to be sent over the ZMQ socket. When a message arrives
-     * it is sent to the message handler.
+     * Subscribes to all messages starting with the given prefix (a session Id). Ignored if the subscriber receives all messages.
+     * Subscriptions are counted by the socket: each subscription must be matched by an unsubscription.
+     * @param prefix the message prefix
+     */
+    void subscribe(byte[] prefix) {
+        if (!this.subscribeAll) {
+            this.subscriptionChanges.add(new SubscriptionChange(prefix, true));
+            this.wakeup();
+        }
+    }
+
+    /**
+     * Removes a subscription previously made for the given prefix. Ignored if the subscriber receives all messages.
+     * @param prefix the message prefix
+     */
+    void unsubscribe(byte[] prefix) {
+        if (!this.subscribeAll) {
+            this.subscriptionChanges.add(new SubscriptionChange(prefix, false));
+            this.wakeup();
+        }
+    }
+
+    /**
+     * Wakes the message thread so that it can apply subscription changes or terminate
+     */
+    private synchronized void wakeup() {
+        if (this.wakeupSender != null) {
+            this.wakeupSender.send(WAKEUP, ZMQ.DONTWAIT);
+        }
+    }
+
+    /**
+     * Applies the queued subscription changes to the socket: called from the message thread only.
+     */
+    private void applySubscriptionChanges() {
+        SubscriptionChange change;
+        while ((change = this.subscriptionChanges.poll()) != null) {
+            if (change.subscribe()) {
+                this.socket.subscribe(change.prefix());
+
+            } else {
+                this.socket.unsubscribe(change.prefix());
+            }
+        }
+    }
+
+    /**
+     * Reads the events of the socket monitor: a connection following a disconnection means that messages may have been lost.
+     */
+    private void handleMonitorEvents() {
+        ZEvent event;
+        while ((event = ZEvent.recv(this.monitor, ZMQ.DONTWAIT)) != null) {
+            if (event.getEvent() == ZMonitor.Event.DISCONNECTED) {
+                logger.debug("WebX Message Subscriber disconnected from {}", event.getAddress());
+                this.socketDisconnected = true;
+
+            } else if (event.getEvent() == ZMonitor.Event.CONNECTED && this.socketDisconnected) {
+                logger.debug("WebX Message Subscriber reconnected to {}", event.getAddress());
+                this.socketDisconnected = false;
+                this.reconnectionHandler.onReconnected();
+            }
+        }
+    }
+
+    /**
+     * The main loop waiting for messages to be sent over the ZMQ socket. When a message arrives any other messages
+     * that are immediately available are read without waiting and the batch is sent to the message handler.
      */
     private void loop() {
+        final List<byte[]> messages = new ArrayList<>(this.maxBatchSize);
+        this.heartbeat.start();
         while (this.running) {
             try {
-                byte[] messageData = socket.recv();
-                this.messageHandler.onMessage(messageData);
+                this.heartbeat.idle();
+                this.poller.poll(-1);
+                this.heartbeat.busy();
+
+                if (this.poller.pollin(1)) {
+                    while (this.wakeupReceiver.recv(ZMQ.DONTWAIT) != null) {
+                        // Consume all wakeup signals
+                    }
+                }
+                this.applySubscriptionChanges();
+
+                if (this.poller.pollin(2)) {
+                    this.handleMonitorEvents();
+                }
+
+                if (this.running && this.poller.pollin(0)) {
+                    byte[] messageData = socket.recv(ZMQ.DONTWAIT);
+                    while (messageData != null) {
+                        messages.add(messageData);
+                        messageData = messages.size() < this.maxBatchSize ? socket.recv(ZMQ.DONTWAIT) : null;
+                    }
+
+                    if (!messages.isEmpty()) {
+                        this.messageHandler.onMessages(messages);
+                        messages.clear();
+                    }
+                }
 
             } catch (org.zeromq.ZMQException e) {
                 if (this.running) {
@@ -120,5 +316,6 @@ public class MessageSubscriber {
                 }
             }
         }
+        this.heartbeat.stop();
     }
 }
@@ -0,0 +1,63 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.transport;
+
+import eu.ill.webx.jfr.RequestEvent;
+import eu.ill.webx.model.ConnectTrace;
+import eu.ill.webx.model.RequestType;
+
+/**
+ * Records the completion of the synchronous requests of a REQ socket (client connector or session channel): the transport listener is
+ * notified, the request is recorded in the active connection trace and the request flight recorder event is committed.
+ */
+class RequestRecorder {
+
+    private final Transport.Listener listener;
+    private final String channel;
+
+    /**
+     * Constructor taking the transport listener and the name of the channel of the requests
+     * @param listener the transport listener (notified of request durations)
+     * @param channel the name of the channel given to the request flight recorder events
+     */
+    RequestRecorder(final Transport.Listener listener, final String channel) {
+        this.listener = listener;
+        this.channel = channel;
+    }
+
+    /**
+     * Notifies the transport listener of a completed request, records it in the active connection trace and commits the request flight recorder event
+     * @param event the request event (started when the request was sent)
+     * @param request the string request
+     * @param durationNs the duration of the request in nanoseconds
+     * @param success false if the request failed
+     */
+    void onRequestCompleted(final RequestEvent event, final String request, final long durationNs, boolean success) {
+        final RequestType requestType = RequestType.fromRequest(request);
+        this.listener.onRequestCompleted(requestType, durationNs, success);
+        ConnectTrace.record(requestType.getCommand() != null ? requestType.getCommand() : "request", durationNs);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.type = requestType.name();
+            event.channel = this.channel;
+            event.success = success;
+            event.commit();
+        }
+    }
+}
@@ -19,9 +19,11 @@ package eu.ill.webx.transport;
 
 import eu.ill.webx.WebXClientConfiguration;
 import eu.ill.webx.WebXEngineConfiguration;
+import eu.ill.webx.WebXSocketConfiguration;
 import eu.ill.webx.exceptions.WebXCommunicationException;
 import eu.ill.webx.exceptions.WebXConnectionException;
 import eu.ill.webx.exceptions.WebXDisconnectedException;
+import eu.ill.webx.jfr.RequestEvent;
 import eu.ill.webx.model.SessionCreation;
 import eu.ill.webx.model.SessionId;
 import eu.ill.webx.model.SocketResponse;
@@ -33,14 +35,13 @@ import org.zeromq.ZMQ;
 import org.zeromq.ZMQException;
 import zmq.util.Z85;
 
-import java.util.Date;
-
 /**
  * The Session Channel provides an encrypted socket to connect initiate and create sessions with the WebX Router.
  * For new sessions a login and password are sent and as such encryption is required. ZMQ uses the curve encryption layer.
  * The session channel is created with the servers public key. The session channel generates its own private-public key-pair
  * and sends the public key back to the server. this way 2-way encryption can be made.
  * Sessions are created with user credentials, screen size and keyboard layout parameters. On success a session Id is returned.
+ * Requests are serialised by the Transport lock.
  */
 public class SessionChannel {
     private enum CreationResponseCode {
@@ -78,10 +79,14 @@ public class SessionChannel {
     private ZMQ.Socket socket;
     private boolean routerCanAsync = true;
 
+    private final RequestRecorder requestRecorder;
+
     /**
-     * Default constructor
+     * Constructor taking the transport listener (notified of request durations)
+     * @param listener the transport listener
      */
-    SessionChannel() {
+    SessionChannel(final Transport.Listener listener) {
+        this.requestRecorder = new RequestRecorder(listener, "session");
     }
 
     /**
@@ -90,12 +95,17 @@ public class SessionChannel {
      * @param address The address of the session channel socket
      * @param socketTimeoutMs The timeout in milliseconds for responses
      * @param serverPublicKey The public key of the WebX Router
+     * @param socketConfiguration The socket tuning options
      */
-    void connect(ZContext context, String address, int socketTimeoutMs, String serverPublicKey) {
+    void connect(ZContext context, String address, int socketTimeoutMs, String serverPublicKey, WebXSocketConfiguration socketConfiguration) {
         if (this.socket == null) {
             this.socket = context.createSocket(SocketType.REQ);
             this.socket.setReceiveTimeOut(socketTimeoutMs);
+            // A request that times out must not block the socket: allow a new request and discard late replies to the previous one
+            this.socket.setReqRelaxed(true);
+            this.socket.setReqCorrelate(true);
             this.socket.setLinger(0);
+            SocketOptions.apply(this.socket, socketConfiguration);
 
             ZMQ.Curve.KeyPair keypair = ZMQ.Curve.generateKeyPair();
             this.socket.setCurveServerKey(Z85.decode(serverPublicKey));
@@ -126,21 +136,24 @@ public class SessionChannel {
      * @throws WebXCommunicationException Thrown if there is a communication error
      * @throws WebXDisconnectedException thrown if the server is not connected
      */
-    synchronized SocketResponse sendRequest(String request) throws WebXCommunicationException, WebXDisconnectedException {
+    SocketResponse sendRequest(String request) throws WebXCommunicationException, WebXDisconnectedException {
+        final long startTime = System.nanoTime();
+        final RequestEvent event = new RequestEvent();
+        event.begin();
         try {
             if (this.socket != null) {
-                Date requestDate = new Date();
                 this.socket.send(request);
                 byte[] data = socket.recv();
-                Date responseDate = new Date();
-                long rtt = responseDate.getTime() - requestDate.getTime();
-                return new SocketResponse(data, rtt);
+                final long rttNs = System.nanoTime() - startTime;
+                this.requestRecorder.onRequestCompleted(event, request, rttNs, data != null);
+                return new SocketResponse(data, rttNs);
 
             } else {
                 throw new WebXDisconnectedException();
             }
 
         } catch (ZMQException e) {
+            this.requestRecorder.onRequestCompleted(event, request, System.nanoTime() - startTime, false);
             logger.warn("Caught ZMQ Exception: {}", e.getMessage());
             throw new WebXCommunicationException(String.format("Failed to send request to WebX Router: %s", e.getMessage()));
         }
@@ -153,12 +166,17 @@ public class SessionChannel {
      * @throws WebXCommunicationException thrown if an error occurs with the socket connection
      * @throws WebXDisconnectedException thrown if the server is not connected
      */
-    synchronized SessionCreation startSession(final WebXClientConfiguration clientConfiguration) throws WebXCommunicationException, WebXDisconnectedException, WebXConnectionException {
+    SessionCreation startSession(final WebXClientConfiguration clientConfiguration) throws WebXCommunicationException, WebXDisconnectedException, WebXConnectionException {
         final String clientConfigurationConnectionString = clientConfiguration.connectionString();
         final String request = String.format("%s,%s", this.routerCanAsync ? ASYNC_CREATE : SYNC_CREATE, clientConfigurationConnectionString);
 
         SocketResponse response = this.sendRequest(request);
 
+        // A timeout is not an empty response: the router may support the async command
+        if (response.isTimeout()) {
+            throw new WebXCommunicationException("No response from the WebX Router to the session creation request");
+        }
+
         // Check for empty response (command unknown) and retry
         if (response.isEmpty() && this.routerCanAsync) {
             logger.debug("Response from async creation was empty: assuming legacy WebX Router and attempting synchronous creation command");
@@ -181,7 +199,7 @@ public class SessionChannel {
      * @return a SessionCreation object containing a unique Session Id and the creation status
      * @throws WebXCommunicationException thrown if an error occurs with the socket connection
      */
-    synchronized SessionCreation startSession(final WebXClientConfiguration clientConfiguration, final WebXEngineConfiguration engineConfiguration) throws WebXCommunicationException, WebXDisconnectedException, WebXConnectionException {
+    SessionCreation startSession(final WebXClientConfiguration clientConfiguration, final WebXEngineConfiguration engineConfiguration) throws WebXCommunicationException, WebXDisconnectedException, WebXConnectionException {
         // Check for null engine configuration
         if (engineConfiguration == null) {
             return this.startSession(clientConfiguration);
@@ -193,6 +211,11 @@ public class SessionChannel {
 
         SocketResponse response = this.sendRequest(request);
 
+        // A timeout is not an empty response: the router may support the async command
+        if (response.isTimeout()) {
+            throw new WebXCommunicationException("No response from the WebX Router to the session creation request");
+        }
+
         // Check for empty response (command unknown) and retry
         if (response.isEmpty() && this.routerCanAsync) {
             logger.debug("Response from async creation was empty: assuming legacy WebX Router and attempting synchronous creation command");
@@ -236,7 +259,7 @@ public class SessionChannel {
             }
 
 
-        } catch (NullPointerException exception) {
+        } catch (NullPointerException | NumberFormatException | ArrayIndexOutOfBoundsException exception) {
             throw new WebXConnectionException(String.format("Failed to parse response from WebX Router: %s", exception.getMessage()));
         }
     }
@@ -0,0 +1,69 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.transport;
+
+import eu.ill.webx.WebXSocketConfiguration;
+import org.zeromq.ZMQ;
+
+/**
+ * Applies the socket tuning options of the host configuration to the ZMQ sockets. Must be called before the socket is connected.
+ */
+class SocketOptions {
+
+    /**
+     * Private constructor
+     */
+    private SocketOptions() {
+    }
+
+    /**
+     * Applies all options that are set in the socket configuration to a socket (unset options keep the ZMQ defaults)
+     * @param socket the ZMQ socket
+     * @param configuration the socket configuration
+     */
+    static void apply(final ZMQ.Socket socket, final WebXSocketConfiguration configuration) {
+        if (configuration == null) {
+            return;
+        }
+
+        if (configuration.getReceiveHighWaterMark() != null) {
+            socket.setRcvHWM(configuration.getReceiveHighWaterMark());
+        }
+        if (configuration.getSendHighWaterMark() != null) {
+            socket.setSndHWM(configuration.getSendHighWaterMark());
+        }
+        if (configuration.getReceiveBufferSize() != null) {
+            socket.setReceiveBufferSize(configuration.getReceiveBufferSize());
+        }
+        if (configuration.getSendBufferSize() != null) {
+            socket.setSendBufferSize(configuration.getSendBufferSize());
+        }
+        if (configuration.getTcpKeepAlive() != null) {
+            socket.setTCPKeepAlive(configuration.getTcpKeepAlive() ? 1 : 0);
+        }
+        if (configuration.getTcpKeepAliveIdleSeconds() != null) {
+            socket.setTCPKeepAliveIdle(configuration.getTcpKeepAliveIdleSeconds());
+        }
+        if (configuration.getTcpKeepAliveIntervalSeconds() != null) {
+            socket.setTCPKeepAliveInterval(configuration.getTcpKeepAliveIntervalSeconds());
+        }
+        if (configuration.getTcpKeepAliveCount() != null) {
+            socket.setTCPKeepAliveCount(configuration.getTcpKeepAliveCount());
+        }
+    }
+}
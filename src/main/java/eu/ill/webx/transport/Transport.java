@@ -19,26 +19,59 @@ package eu.ill.webx.transport;
 
 import eu.ill.webx.WebXClientConfiguration;
 import eu.ill.webx.WebXEngineConfiguration;
+import eu.ill.webx.WebXHostConfiguration;
+import eu.ill.webx.WebXSocketConfiguration;
 import eu.ill.webx.exceptions.WebXCommunicationException;
 import eu.ill.webx.exceptions.WebXConnectionException;
 import eu.ill.webx.exceptions.WebXDisconnectedException;
+import eu.ill.webx.model.ConnectTrace;
 import eu.ill.webx.model.ConnectionData;
+import eu.ill.webx.model.RequestType;
 import eu.ill.webx.model.SessionCreation;
+import eu.ill.webx.model.SessionId;
 import eu.ill.webx.model.SocketResponse;
+import eu.ill.webx.watchdog.StallWatchdog;
 import org.zeromq.ZContext;
 
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * Wraps all ZMQ sockets into a single interface.
  * Each WebX Host uses an individual Transport to communicate with the server.
+ * Access to the sockets is serialised with a lock rather than object monitors so that virtual threads blocking on
+ * socket requests are not pinned to their carrier thread.
  */
 public class Transport {
 
+    /**
+     * Interface used to observe the traffic of the transport (eg for metrics)
+     */
+    public interface Listener {
+        /**
+         * Called when a synchronous request has completed
+         * @param requestType the type of request
+         * @param durationNs the duration of the request in nanoseconds
+         * @param success false if the request failed
+         */
+        void onRequestCompleted(RequestType requestType, long durationNs, boolean success);
+
+        /**
+         * Called when an instruction is sent to the server
+         * @param length the length of the instruction in bytes
+         */
+        void onInstructionSent(int length);
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Listener listener;
+    private final StallWatchdog watchdog;
+
     private ZContext context;
     private boolean connected = false;
     private boolean isStandalone;
 
     private ClientConnector connector;
-    private MessageSubscriber messageSubscriber;
+    private volatile MessageSubscriber messageSubscriber;
     private InstructionPublisher instructionPublisher;
     private SessionChannel sessionChannel;
 
@@ -46,6 +79,33 @@ public class Transport {
      * Default constructor
      */
     public Transport() {
+        this(null);
+    }
+
+    /**
+     * Constructor taking a listener to observe the traffic of the transport
+     * @param listener the transport listener
+     */
+    public Transport(final Listener listener) {
+        this(listener, null);
+    }
+
+    /**
+     * Constructor taking a listener to observe the traffic of the transport and a watchdog monitoring the message subscriber and instruction publisher loops
+     * @param listener the transport listener
+     * @param watchdog the stall watchdog (null if the loops are not monitored)
+     */
+    public Transport(final Listener listener, final StallWatchdog watchdog) {
+        this.watchdog = watchdog != null ? watchdog : new StallWatchdog("transport", 0, Thread::new, null);
+        this.listener = listener != null ? listener : new Listener() {
+            @Override
+            public void onRequestCompleted(RequestType requestType, long durationNs, boolean success) {
+            }
+
+            @Override
+            public void onInstructionSent(int length) {
+            }
+        };
     }
 
     /**
@@ -65,44 +125,95 @@ public class Transport {
     }
 
     /**
-     * Starts the connection to the different ZQM sockets of the server.
+     * Starts the connection to the different ZQM sockets of the server with the default host configuration.
      * @param hostname the WebX host
      * @param port the port for the Client Connector on the host (other ports are obtained from here)
      * @param socketTimeoutMs the timeout in milliseconds for socket communication
      * @param isStandalone specified whether the server has a WebX Engine running in standalone mode
      * @param messageHandler a handler for all incoming messages from the server
      * @throws WebXDisconnectedException thrown in the connection fails
+     * @deprecated use {@link #connect(WebXHostConfiguration, MessageSubscriber.MessageHandler, MessageSubscriber.ReconnectionHandler)}
+     */
+    @Deprecated
+    public void connect(String hostname, int port, int socketTimeoutMs, boolean isStandalone, final MessageSubscriber.MessageHandler messageHandler) throws WebXDisconnectedException {
+        this.connect(new WebXHostConfiguration(hostname, port, socketTimeoutMs, isStandalone), messageHandler, null);
+    }
+
+    /**
+     * Starts the connection to the different ZQM sockets of the server.
+     * @param configuration the host configuration (hostname, client connector port, socket timeout, standalone, etc)
+     * @param messageHandler a handler for all incoming messages from the server
+     * @param reconnectionHandler a handler called when the message subscriber reconnects to the server (messages may have been lost)
+     * @throws WebXDisconnectedException thrown in the connection fails
      */
-    public synchronized void connect(String hostname, int port, int socketTimeoutMs, boolean isStandalone, final MessageSubscriber.MessageHandler messageHandler) throws WebXDisconnectedException {
+    public void connect(final WebXHostConfiguration configuration, final MessageSubscriber.MessageHandler messageHandler, final MessageSubscriber.ReconnectionHandler reconnectionHandler) throws WebXDisconnectedException {
+        this.lockTraced();
+        try {
+            this.doConnect(configuration, messageHandler, reconnectionHandler);
 
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Acquires the transport lock. If a connection trace is active on the current thread the time spent waiting for the lock
+     * is recorded in it (to identify contention between clients connecting or pinging the same host).
+     */
+    private void lockTraced() {
+        if (ConnectTrace.isActive()) {
+            final long startTime = System.nanoTime();
+            this.lock.lock();
+            ConnectTrace.record(ConnectTrace.TRANSPORT_LOCK_PHASE, System.nanoTime() - startTime);
+
+        } else {
+            this.lock.lock();
+        }
+    }
+
+    /**
+     * Connects all the sockets: called with the lock held
+     * @param configuration the host configuration
+     * @param messageHandler a handler for all incoming messages from the server
+     * @param reconnectionHandler a handler called when the message subscriber reconnects to the server
+     * @throws WebXDisconnectedException thrown in the connection fails
+     */
+    private void doConnect(final WebXHostConfiguration configuration, final MessageSubscriber.MessageHandler messageHandler, final MessageSubscriber.ReconnectionHandler reconnectionHandler) throws WebXDisconnectedException {
         if (this.context == null) {
+            final String hostname = configuration.getHostname();
+            final int port = configuration.getPort();
+            final int socketTimeoutMs = configuration.getSocketTimeoutMs();
+            final boolean isStandalone = configuration.isStandalone();
+            final WebXSocketConfiguration socketConfiguration = configuration.getSocketConfiguration();
+
             this.isStandalone = isStandalone;
             this.connected = false;
             this.context = new ZContext();
 
             try {
-                this.connector = new ClientConnector();
-                ConnectionData connectionData = this.connector.connect(this.context, "tcp://" + hostname + ":" + port, socketTimeoutMs, isStandalone);
+                this.connector = new ClientConnector(this.listener);
+                ConnectionData connectionData = this.connector.connect(this.context, "tcp://" + hostname + ":" + port, socketTimeoutMs, isStandalone, socketConfiguration);
 
-                this.messageSubscriber = new MessageSubscriber(messageHandler);
-                this.messageSubscriber.connect(this.context, "tcp://" + hostname + ":" + connectionData.publisherPort());
+                this.messageSubscriber = new MessageSubscriber(messageHandler, reconnectionHandler, configuration.getMessageBatchSize(), configuration.getThreadFactory(), this.watchdog.heartbeat("subscriber"));
+                final boolean subscribeAll = isStandalone || !configuration.isSessionSubscriptionFiltering();
+                this.messageSubscriber.connect(this.context, "tcp://" + hostname + ":" + connectionData.publisherPort(), "webx-subscriber-" + hostname + ":" + port, subscribeAll, socketConfiguration);
 
-                this.instructionPublisher = new InstructionPublisher();
-                this.instructionPublisher.connect(this.context, "tcp://" + hostname + ":" + connectionData.subscriberPort());
+                this.instructionPublisher = new InstructionPublisher(configuration.getThreadFactory(), this.watchdog.heartbeat("publisher"));
+                this.instructionPublisher.connect(this.context, "tcp://" + hostname + ":" + connectionData.subscriberPort(), "webx-publisher-" + hostname + ":" + port, socketConfiguration);
 
                 if (!isStandalone) {
-                    this.sessionChannel = new SessionChannel();
-                    this.sessionChannel.connect(this.context, "tcp://" + hostname + ":" + connectionData.sessionPort(), socketTimeoutMs, connectionData.serverPublicKey());
+                    this.sessionChannel = new SessionChannel(this.listener);
+                    this.sessionChannel.connect(this.context, "tcp://" + hostname + ":" + connectionData.sessionPort(), socketTimeoutMs, connectionData.serverPublicKey(), socketConfiguration);
                 }
 
                 this.connected = true;
 
             } catch (WebXDisconnectedException e) {
-                this.disconnect();
+                this.doDisconnect();
                 throw e;
 
             } catch (Exception e) {
-                this.disconnect();
+                this.doDisconnect();
                 throw new WebXDisconnectedException();
             }
 
@@ -112,7 +223,20 @@ public class Transport {
     /**
      * Disconnects all ZMQ sockets and waits for any associated threads to terminate.
      */
-    public synchronized void disconnect() {
+    public void disconnect() {
+        this.lock.lock();
+        try {
+            this.doDisconnect();
+
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Disconnects all the sockets: called with the lock held
+     */
+    private void doDisconnect() {
         if (this.context != null) {
             this.connected = false;
 
@@ -141,13 +265,44 @@ public class Transport {
         }
     }
 
+    /**
+     * Subscribes to the messages of a session: only messages of subscribed sessions are received from a WebX Router
+     * (in standalone mode all messages are received).
+     * This doesn't wait for any running request to terminate.
+     * @param sessionId the session Id
+     */
+    public void subscribe(final SessionId sessionId) {
+        final MessageSubscriber subscriber = this.messageSubscriber;
+        if (subscriber != null) {
+            subscriber.subscribe(sessionId.bytes());
+        }
+    }
+
+    /**
+     * Removes the subscription to the messages of a session.
+     * @param sessionId the session Id
+     */
+    public void unsubscribe(final SessionId sessionId) {
+        final MessageSubscriber subscriber = this.messageSubscriber;
+        if (subscriber != null) {
+            subscriber.unsubscribe(sessionId.bytes());
+        }
+    }
+
     /**
      * Sends an instruction to the WebX server
      * @param instructionData the instruction data
      */
-    public synchronized void sendInstruction(byte[] instructionData) {
-        if (this.connected) {
-            this.instructionPublisher.queueInstruction(instructionData);
+    public void sendInstruction(byte[] instructionData) {
+        this.lock.lock();
+        try {
+            if (this.connected) {
+                this.instructionPublisher.queueInstruction(instructionData);
+                this.listener.onInstructionSent(instructionData.length);
+            }
+
+        } finally {
+            this.lock.unlock();
         }
     }
 
@@ -159,16 +314,22 @@ public class Transport {
      * @throws WebXCommunicationException thrown if the communication fails
      * @throws WebXDisconnectedException thrown if the server is not connected
      */
-    public synchronized SocketResponse sendRequest(final String request) throws WebXCommunicationException, WebXDisconnectedException {
-        if (!this.connected) {
-             throw new WebXDisconnectedException();
-        }
+    public SocketResponse sendRequest(final String request) throws WebXCommunicationException, WebXDisconnectedException {
+        this.lockTraced();
+        try {
+            if (!this.connected) {
+                 throw new WebXDisconnectedException();
+            }
 
-        if (this.isStandalone) {
-            return this.connector.sendRequest(request);
+            if (this.isStandalone) {
+                return this.connector.sendRequest(request);
 
-        } else {
-            return this.sessionChannel.sendRequest(request);
+            } else {
+                return this.sessionChannel.sendRequest(request);
+            }
+
+        } finally {
+            this.lock.unlock();
         }
     }
 
@@ -181,12 +342,18 @@ public class Transport {
      * @throws WebXDisconnectedException thrown if the server is not running in standalone mode
      * @throws WebXConnectionException Thrown if the connection response is invalid or an error occurs with the handling
      */
-    public synchronized SessionCreation startSession(final WebXClientConfiguration configuration, final WebXEngineConfiguration engineConfiguration) throws WebXCommunicationException, WebXDisconnectedException, WebXConnectionException {
-        if (!this.isStandalone) {
-            return this.sessionChannel.startSession(configuration, engineConfiguration);
+    public SessionCreation startSession(final WebXClientConfiguration configuration, final WebXEngineConfiguration engineConfiguration) throws WebXCommunicationException, WebXDisconnectedException, WebXConnectionException {
+        this.lockTraced();
+        try {
+            if (!this.isStandalone) {
+                return this.sessionChannel.startSession(configuration, engineConfiguration);
 
-        } else {
-            throw new WebXDisconnectedException("Cannot start session in standalone mode");
+            } else {
+                throw new WebXDisconnectedException("Cannot start session in standalone mode");
+            }
+
+        } finally {
+            this.lock.unlock();
         }
     }
 }
@@ -0,0 +1,90 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.utils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Provides access to virtual threads when the relay runs on a Java runtime that supports them.
+ * The relay is compiled for Java 17 so Thread.ofVirtual() is looked up at runtime: virtual threads are available whenever the runtime
+ * is Java 21 or later, whichever JDK built the jar.
+ */
+public class VirtualThreads {
+
+    private static final MethodHandle OF_VIRTUAL;
+    private static final MethodHandle FACTORY;
+
+    static {
+        MethodHandle ofVirtual = null;
+        MethodHandle factory = null;
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            final Class<?> ofVirtualClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(ofVirtualClass));
+            factory = lookup.findVirtual(builderClass, "factory", MethodType.methodType(ThreadFactory.class));
+
+            // Virtual threads are a preview feature of Java 19 and 20: the call fails unless preview features are enabled
+            factory.invoke(ofVirtual.invoke());
+
+        } catch (Throwable error) {
+            ofVirtual = null;
+            factory = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        FACTORY = factory;
+    }
+
+    /**
+     * Default constructor
+     */
+    private VirtualThreads() {
+    }
+
+    /**
+     * Returns true if virtual threads are supported by the runtime
+     * @return true if virtual threads are supported
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Returns a thread factory creating virtual threads
+     * @return a virtual thread factory
+     * @throws UnsupportedOperationException thrown if virtual threads are not supported by the runtime
+     */
+    public static ThreadFactory factory() {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads require a Java 21 runtime");
+        }
+
+        try {
+            return (ThreadFactory) FACTORY.invoke(OF_VIRTUAL.invoke());
+
+        } catch (RuntimeException | Error error) {
+            throw error;
+
+        } catch (Throwable error) {
+            throw new UnsupportedOperationException("Failed to create a virtual thread factory", error);
+        }
+    }
+}
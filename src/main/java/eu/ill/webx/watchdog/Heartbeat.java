@@ -0,0 +1,114 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.watchdog;
+
+/**
+ * Records the progress of a relay loop (message subscriber, instruction publisher or session validator) so that it can be
+ * monitored by a StallWatchdog.
+ * A loop marks itself as idle before waiting for work (the wait can be arbitrarily long) and busy when it has work to do. A loop
+ * that stays busy for longer than the watchdog threshold is considered to be stalled.
+ * The heartbeat is updated with volatile writes only so it can be called on every iteration of the hot loops.
+ */
+public class Heartbeat {
+
+    private final StallWatchdog watchdog;
+    private final String name;
+    private volatile Thread thread;
+    private volatile boolean busy = false;
+    private volatile long lastProgressTime = System.nanoTime();
+
+    // Only accessed by the watchdog thread
+    boolean stallReported = false;
+    long reportedProgressTime;
+
+    /**
+     * Constructor taking the watchdog and the name of the loop
+     * @param watchdog the watchdog monitoring the loop
+     * @param name the name of the loop (eg subscriber)
+     */
+    Heartbeat(final StallWatchdog watchdog, final String name) {
+        this.watchdog = watchdog;
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of the loop
+     * @return the name of the loop
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the thread running the loop
+     * @return the thread of the loop (null if the loop is not running)
+     */
+    public Thread getThread() {
+        return thread;
+    }
+
+    /**
+     * Returns true if the loop is processing work
+     * @return true if the loop is busy
+     */
+    public boolean isBusy() {
+        return busy;
+    }
+
+    /**
+     * Returns the time of the last progress of the loop (System.nanoTime)
+     * @return the last progress time in nanoseconds
+     */
+    public long getLastProgressTime() {
+        return lastProgressTime;
+    }
+
+    /**
+     * Called from the thread of the loop when it starts: the loop is monitored by the watchdog until stop is called
+     */
+    public void start() {
+        this.thread = Thread.currentThread();
+        this.idle();
+        this.watchdog.register(this);
+    }
+
+    /**
+     * Called from the thread of the loop when it terminates: the loop is no longer monitored
+     */
+    public void stop() {
+        this.watchdog.unregister(this);
+        this.busy = false;
+        this.thread = null;
+    }
+
+    /**
+     * Marks the loop as processing work (called when the loop wakes up and after each unit of work)
+     */
+    public void busy() {
+        this.lastProgressTime = System.nanoTime();
+        this.busy = true;
+    }
+
+    /**
+     * Marks the loop as waiting for work (called before a blocking wait)
+     */
+    public void idle() {
+        this.lastProgressTime = System.nanoTime();
+        this.busy = false;
+    }
+}
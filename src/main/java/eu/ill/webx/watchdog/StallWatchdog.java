@@ -0,0 +1,228 @@
+/*
+ * WebX Relay
+ * Copyright (C) 2023 Institut Laue-Langevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.ill.webx.watchdog;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monitors the heartbeats of the relay loops of a host (message subscriber, instruction publisher and session validators) and reports
+ * the loops that have stopped making progress. A loop is stalled when it has been busy for longer than the threshold, for example when
+ * the message subscriber is blocked on a lock held during a network call: all the sessions of the host are then frozen.
+ * Each stall is reported once to the stall handler with the stack trace of the blocked thread, and again when the loop recovers.
+ * The watchdog is disabled if the threshold is zero or negative.
+ */
+public class StallWatchdog {
+
+    /**
+     * Interface used to handle stalls of the monitored loops (called from the watchdog thread)
+     */
+    public interface StallHandler {
+        /**
+         * Called when a loop has been busy for longer than the threshold
+         * @param heartbeat the heartbeat of the stalled loop
+         * @param stallNs the time since the last progress of the loop in nanoseconds
+         * @param stackTrace the stack trace of the stalled thread
+         */
+        void onStall(Heartbeat heartbeat, long stallNs, StackTraceElement[] stackTrace);
+
+        /**
+         * Called when a stalled loop has made progress again
+         * @param heartbeat the heartbeat of the loop
+         * @param stallNs the approximate duration of the stall in nanoseconds
+         */
+        void onRecovery(Heartbeat heartbeat, long stallNs);
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(StallWatchdog.class);
+    private static final long MIN_CHECK_INTERVAL_MS = 10;
+
+    private final String name;
+    private final long thresholdNs;
+    private final long checkIntervalMs;
+    private final ThreadFactory threadFactory;
+    private final StallHandler stallHandler;
+    private final List<Heartbeat> heartbeats = new CopyOnWriteArrayList<>();
+    private final AtomicLong stallCount = new AtomicLong();
+
+    private Thread thread;
+    private volatile boolean running = false;
+
+    /**
+     * Constructor
+     * @param name the name of the watchdog (used to name the watchdog thread)
+     * @param thresholdMs the time in milliseconds that a loop can be busy before being considered as stalled (disabled if zero or negative)
+     * @param threadFactory the factory used to create the watchdog thread
+     * @param stallHandler the handler called when a loop stalls and recovers
+     */
+    public StallWatchdog(final String name, long thresholdMs, final ThreadFactory threadFactory, final StallHandler stallHandler) {
+        this.name = name;
+        this.thresholdNs = thresholdMs * 1000000;
+        this.checkIntervalMs = Math.max(MIN_CHECK_INTERVAL_MS, thresholdMs / 4);
+        this.threadFactory = threadFactory;
+        this.stallHandler = stallHandler;
+    }
+
+    /**
+     * Returns true if the watchdog has a positive threshold
+     * @return true if enabled
+     */
+    public boolean isEnabled() {
+        return this.thresholdNs > 0;
+    }
+
+    /**
+     * Returns the number of stalls detected since the creation of the watchdog
+     * @return the number of stalls
+     */
+    public long getStallCount() {
+        return this.stallCount.get();
+    }
+
+    /**
+     * Returns the number of loops that are currently stalled
+     * @return the number of stalled loops
+     */
+    public int getStalledLoopCount() {
+        final long now = System.nanoTime();
+        int count = 0;
+        for (Heartbeat heartbeat : this.heartbeats) {
+            if (this.isStalled(heartbeat, now)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Creates a heartbeat for a loop. The loop is only monitored between calls to the start and stop methods of the heartbeat.
+     * @param loopName the name of the loop (eg subscriber)
+     * @return the heartbeat of the loop
+     */
+    public Heartbeat heartbeat(final String loopName) {
+        return new Heartbeat(this, loopName);
+    }
+
+    /**
+     * Starts the watchdog thread (ignored if the watchdog is disabled)
+     */
+    public synchronized void start() {
+        if (!this.running && this.isEnabled()) {
+            this.running = true;
+            this.thread = this.threadFactory.newThread(this::loop);
+            this.thread.setName("webx-watchdog-" + this.name);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+    }
+
+    /**
+     * Stops the watchdog thread and waits for it to terminate
+     */
+    public void stop() {
+        final Thread thread;
+        synchronized (this) {
+            if (!this.running) {
+                return;
+            }
+            this.running = false;
+            thread = this.thread;
+            this.thread = null;
+        }
+
+        thread.interrupt();
+        try {
+            thread.join();
+
+        } catch (InterruptedException exception) {
+            logger.warn("Stop of watchdog thread interrupted");
+        }
+    }
+
+    /**
+     * Adds a heartbeat to the monitored loops
+     * @param heartbeat the heartbeat
+     */
+    void register(final Heartbeat heartbeat) {
+        if (this.isEnabled()) {
+            this.heartbeats.add(heartbeat);
+        }
+    }
+
+    /**
+     * Removes a heartbeat from the monitored loops
+     * @param heartbeat the heartbeat
+     */
+    void unregister(final Heartbeat heartbeat) {
+        this.heartbeats.remove(heartbeat);
+    }
+
+    /**
+     * Returns true if a loop has been busy for longer than the threshold
+     * @param heartbeat the heartbeat of the loop
+     * @param now the current time (System.nanoTime)
+     * @return true if the loop is stalled
+     */
+    private boolean isStalled(final Heartbeat heartbeat, long now) {
+        return heartbeat.isBusy() && now - heartbeat.getLastProgressTime() > this.thresholdNs;
+    }
+
+    /**
+     * Checks all the heartbeats: a stall is reported once per blocked unit of work, the recovery is reported when the loop makes progress
+     */
+    private void check() {
+        final long now = System.nanoTime();
+        for (Heartbeat heartbeat : this.heartbeats) {
+            final long lastProgressTime = heartbeat.getLastProgressTime();
+            if (heartbeat.stallReported && heartbeat.reportedProgressTime != lastProgressTime) {
+                final long stallNs = lastProgressTime - heartbeat.reportedProgressTime;
+                heartbeat.stallReported = false;
+                this.stallHandler.onRecovery(heartbeat, stallNs);
+            }
+
+            if (!heartbeat.stallReported && this.isStalled(heartbeat, now)) {
+                final Thread thread = heartbeat.getThread();
+                heartbeat.stallReported = true;
+                heartbeat.reportedProgressTime = lastProgressTime;
+                this.stallCount.incrementAndGet();
+                this.stallHandler.onStall(heartbeat, now - lastProgressTime, thread != null ? thread.getStackTrace() : new StackTraceElement[0]);
+            }
+        }
+    }
+
+    /**
+     * The watchdog loop, checking the heartbeats periodically
+     */
+    private void loop() {
+        while (this.running) {
+            try {
+                Thread.sleep(this.checkIntervalMs);
+                this.check();
+
+            } catch (InterruptedException ignored) {
+            } catch (RuntimeException exception) {
+                logger.warn("Error while checking relay loops: {}", exception.getMessage());
+            }
+        }
+    }
+}